@@ -19,6 +19,7 @@
 package de.ensel.UCI4ChessEngine;
 
 import de.ensel.chessgui.ChessEngine;
+import de.ensel.tideeval.Bench;
 import de.ensel.tideeval.ChessBoard;
 import de.ensel.tideeval.ChessBoardController;
 
@@ -26,6 +27,7 @@ import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
 import java.util.Scanner;
 
 import static de.ensel.tideeval.ChessBasics.FENPOS_STARTPOS;
@@ -36,6 +38,13 @@ public class UCI4ChessEngine {
     BufferedOutputStream uciLog = null;
     boolean uciMode = true;
     Integer engineParam1 = null;
+    boolean ponder = false;             // UCI option Ponder: GUI allows pondering
+    volatile String ponderingBestMove = null;   // move found during "go ponder", held back until "ponderhit" or "stop"
+    Thread ponderSearch = null;         // runs the move selection of "go ponder" until "ponderhit" or "stop"
+    int multiPV = 1;                    // UCI option MultiPV: nr of best moves to report as "info multipv" lines
+    Thread analysis = null;             // runs the analysis of "go infinite" until "stop"
+    volatile boolean stopAnalysis = false;
+    volatile String analysisBestMove = null;
     public UCI4ChessEngine(Integer boardParam1) {
         initNewBoard(boardParam1);
     }
@@ -104,6 +113,8 @@ public class UCI4ChessEngine {
                     //uci4ce.answerUCI("option name minDepth type spin default "+wBoard.getSuggestedFurtherDepth()+" min 0 max 4");
                     //uci4ce.answerUCI("option name extraDepth type spin default "+(wBoard.getMaxFurtherDepth()-wBoard.getSuggestedFurtherDepth())+" min 0 max 8");
                     uci4ce.answerUCI("option name UCI_Chess960 type check default false");
+                    uci4ce.answerUCI("option name Ponder type check default false");
+                    uci4ce.answerUCI("option name MultiPV type spin default 1 min 1 max " + ChessBoard.NR_OF_RANKED_MOVES);
                     //uci4ce.answerUCI("info string Hello, I'm " + name);
                     uci4ce.answerUCI("uciok");
                     continue;
@@ -127,6 +138,17 @@ public class UCI4ChessEngine {
                     input = input.substring(14).trim();
                     String[] params = input.split(RE_ONEORMORE_BLANKS,2);
                     uci4ce.writelnComLog("=set option " + params[0] + " to " + params[1]);
+                    if (params[0].equals("Ponder"))
+                        uci4ce.ponder = params[1].trim().endsWith("true");
+                    else if (params[0].equals("MultiPV")) {
+                        try {
+                            // within the range the option line announces
+                            uci4ce.multiPV = Math.max(1, Math.min(ChessBoard.NR_OF_RANKED_MOVES,
+                                    Integer.parseInt(params[1].replace("value", "").trim())));
+                        } catch (NumberFormatException e) {
+                            uci4ce.writelnComLog("=ignoring invalid MultiPV " + params[1]);
+                        }
+                    }
                     uci4ce.engine.setParam(params[0], params[1]);
                 }
                 else if (input.matches("position moves" + RE_ONEORMORE_BLANKS + "(" + RE_MOVE + "+)")) {
@@ -135,11 +157,43 @@ public class UCI4ChessEngine {
                     uci4ce.writelnComLog("=fresh board + moves " + input);
                     uci4ce.playOrNewBoard(FENPOS_STARTPOS + " " + input);
                 }
+                else if (input.matches("go" + RE_ONEORMORE_BLANKS + "(.*\\s)?ponder(\\s.*)?")) {
+                    // the position already contains the predicted reply - think, but answer only after ponderhit or stop
+                    uci4ce.writelnComLog("=go ponder " + input);
+                    uci4ce.startPonderSearch();
+                }
+                else if (input.matches("ponderhit")) {
+                    // now it is my time, so wait for the move selection
+                    uci4ce.joinPonderSearch();
+                    if (uci4ce.ponderingBestMove != null) {
+                        uci4ce.answerMultiPVInfos();
+                        uci4ce.doUCIEngineMove(uci4ce.ponderingBestMove);
+                    }
+                    uci4ce.ponderingBestMove = null;
+                }
+                else if (input.matches("go" + RE_ONEORMORE_BLANKS + "(.*\\s)?infinite(\\s.*)?")) {
+                    uci4ce.writelnComLog("=go infinite " + input);
+                    uci4ce.startAnalysis();
+                }
+                else if (input.matches("stop") && uci4ce.analysis != null) {
+                    uci4ce.stopAnalysis();
+                }
+                else if (input.matches("stop") && uci4ce.ponderSearch != null) {
+                    // stop while pondering (the opponent did not play the predicted reply): discard the pondering and
+                    // answer at once - the GUI expects a bestmove, but ignores it and the move is not done
+                    uci4ce.engine.stopPondering();
+                    String move = uci4ce.ponderingBestMove;
+                    uci4ce.answerUCI("bestmove " + (move == null ? "0000" : move));
+                    // the discarded search ends soon, but must not run on into the next position
+                    uci4ce.joinPonderSearch();
+                    uci4ce.ponderingBestMove = null;
+                }
                 else if (input.matches("go((\\s)+.*)?")) {
                     uci4ce.writelnComLog("=go " + input);
                     String move = uci4ce.engine.getMove();
                     if (move!=null) {
                         //uci4ce.answerUCI("info pv " + move);
+                        uci4ce.answerMultiPVInfos();
                         uci4ce.doUCIEngineMove(move);
                     }
                     else {
@@ -192,6 +246,11 @@ public class UCI4ChessEngine {
                 else if (input.matches("board|show|fen")) {
                     System.out.println("Current board: " + uci4ce.engine.getBoard());
                 }
+                else if (input.matches("bench")) {
+                    // the bench counters are not atomic, nothing else may calculate meanwhile
+                    uci4ce.stopBackgroundSearches();
+                    Bench.run(System.out);
+                }
                 else if (input.matches("stats")) {
                     System.out.println("Board Statistics: " + uci4ce.engine.getBoardInfo());
                 }
@@ -211,6 +270,7 @@ public class UCI4ChessEngine {
                     uci4ce.nonUCIprint("Hmm, " + input + "?");
                     uci4ce.nonUCIprint("to move:        move A1A4*");
                     uci4ce.nonUCIprint("to print details:  stats|square E3, info a2a4, board|show|stats");
+                    uci4ce.nonUCIprint("to benchmark:   bench");
                     uci4ce.nonUCIprint("to initalize:   new");
                     uci4ce.nonUCIprint("or:             exit");
                 }
@@ -229,10 +289,89 @@ public class UCI4ChessEngine {
         //int eval = engine.getBoardEvaluation();
         //answerUCI("info score cp " + eval);
         //String suggestedmove = engine.getMove();
-        answerUCI("bestmove " + move);
+        String ponderMove = ponder ? engine.getPonderMove(move) : null;
+        answerUCI("bestmove " + move + (ponderMove == null ? "" : " ponder " + ponderMove));
+        if (ponder)
+            engine.startPondering(move);
         engine.doMove(move);
     }
 
+    /**
+     * runs the move selection of "go ponder" in the background, so "ponderhit" and "stop" are read meanwhile.
+     * The engine takes over the board it pondered for the predicted reply, as soon as it is calculated.
+     */
+    private void startPonderSearch() {
+        ponderingBestMove = null;
+        ponderSearch = new Thread(() -> ponderingBestMove = engine.getMove(), "go ponder");
+        ponderSearch.setDaemon(true);
+        ponderSearch.start();
+    }
+
+    private void joinPonderSearch() {
+        if (ponderSearch == null)
+            return;
+        try {
+            ponderSearch.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ponderSearch = null;
+    }
+
+    /**
+     * ends "go infinite" (with its bestmove) and discards the pondering, and waits until their calculations have ended
+     */
+    private void stopBackgroundSearches() {
+        if (analysis != null)
+            stopAnalysis();
+        engine.stopPonderingAndWait();
+        joinPonderSearch();
+        ponderingBestMove = null;
+    }
+
+    /**
+     * reports the best moves that were ranked together with the one just found, if MultiPV is set
+     */
+    private void answerMultiPVInfos() {
+        if (multiPV <= 1)
+            return;
+        int i = 1;
+        for (Map.Entry<String,Integer> moveAndEval : engine.getBestMoves(multiPV).entrySet())
+            answerUCI("info multipv " + (i++) + " score cp " + moveAndEval.getValue() + " pv " + moveAndEval.getKey());
+    }
+
+    /**
+     * analyses in the background and sends an "info depth" line for each depth, until the maximum depth is reached.
+     * The bestmove is only answered after "stop" (as UCI requires for "go infinite").
+     */
+    private void startAnalysis() {
+        if (analysis != null)
+            stopAnalysis();   // one bestmove per go
+        stopAnalysis = false;
+        analysisBestMove = null;
+        analysis = new Thread(() -> engine.analyse((depth, move, eval) -> {
+            analysisBestMove = move;
+            answerUCI("info depth " + depth + " score cp " + eval + " pv " + move);
+            return !stopAnalysis;
+        }), "analysis");
+        analysis.setDaemon(true);
+        analysis.start();
+    }
+
+    private void stopAnalysis() {
+        // the analysis stops after its current depth
+        stopAnalysis = true;
+        try {
+            analysis.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        analysis = null;
+        // the GUI waits for a bestmove, even if the analysis did not find one (game over or it failed)
+        String move = analysisBestMove != null ? analysisBestMove : engine.getMove();
+        answerUCI("bestmove " + (move == null || move.equals("-") ? "0000" : move));
+    }
+
     private void doMoves(String moveOrMoves) {
         String[] moves = moveOrMoves.split(RE_ONEORMORE_BLANKS);
         for (String move : moves) {
@@ -269,7 +408,7 @@ public class UCI4ChessEngine {
         writelnComLog("Log started at: " + (new Date()) );
     }
 
-    void answerUCI(String s)  {
+    synchronized void answerUCI(String s)  {
         System.out.println(s);
         if (uciLog==null)
             return;
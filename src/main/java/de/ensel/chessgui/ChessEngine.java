@@ -19,6 +19,7 @@
 package de.ensel.chessgui;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 public interface ChessEngine {
     /**
@@ -72,5 +73,72 @@ public interface ChessEngine {
 
     boolean setParam(String paramName, String value);
 
+    /**
+     * The best moves of the last move selection (the first is the one getMove() returns) with their evaluations.
+     * @param maxNr max nr of moves
+     * @return moves (format "a1b2") in ranked order, mapped to their evaluation in centipawns from the view of
+     *         the side to move; empty if not supported
+     */
+    default LinkedHashMap<String,Integer> getBestMoves(int maxNr) {
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * Receives the intermediate results of analyse()
+     */
+    interface DepthInfoListener {
+        /**
+         * @param depth depth reached
+         * @param bestMove best move so far (format "a1b2")
+         * @param eval its evaluation in centipawns from the view of the side to move
+         * @return false to stop the analysis
+         */
+        boolean depthDone(int depth, String bestMove, int eval);
+    }
+
+    /**
+     * Analyses the current position with increasing depth and reports the best move after each depth, until
+     * the maximum depth is reached or the listener stops it. Does not do the move.
+     * @param listener gets the best move after each depth
+     * @return the best move of the deepest depth reached, null if there is none
+     */
+    default String analyse(DepthInfoListener listener) {
+        String move = getMove();
+        if (move != null)
+            listener.depthDone(1, move, getBoardEvaluation());
+        return move;
+    }
+
+    /**
+     * What will the opponent most likely answer to my move?
+     * @param myMove move I am going to play
+     * @return the predicted reply, null if there is none
+     */
+    default String getPonderMove(String myMove) {
+        return null;
+    }
+
+    /**
+     * Starts to ponder in the background about the opponent's most likely replies to my move, while the opponent thinks.
+     * Must be called before myMove is done.
+     * @param myMove move I am going to play
+     */
+    default void startPondering(String myMove) {
+    }
+
+    /**
+     * Discards the pondering at once, e.g. if the opponent did not play the predicted reply. Does not wait for
+     * calculations that are still running.
+     */
+    default void stopPondering() {
+    }
+
+    /**
+     * Discards the pondering like stopPondering(), but also waits until its calculations have ended.
+     */
+    default void stopPonderingAndWait() {
+        stopPondering();
+    }
+
     // TODO: Callback-possibility for ChessEngine to UI, esp. for "info"s and end of calculation "bestmove".
 }
@@ -0,0 +1,147 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import static de.ensel.tideeval.ChessBasics.NR_SQUARES;
+
+/**
+ * Optional analysis cache in a memory-mapped file, shared by all engine processes on the host that use the same file:
+ * an open-addressing table from position key (see ChessBoard.positionCacheKey()) to best move and engine version.
+ * Only the header is checked resp. created under a file lock, so that processes starting at the same time do not
+ * see each other's half created file. The slots are used without locking: each slot consists of two longs, the
+ * data and the key xor-ed with the data, which are read and written atomically each. A slot that is half written
+ * (or written by two processes at the same time) therefore does not match its key any more and is simply a miss.
+ */
+final class AnalysisFileCache {
+    private static final long MAGIC = 0x5469646541433031L;   // "TideAC01"
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+    private static final int PROBES = 8;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer table;
+    private final int nrOfSlots;     // power of 2
+    private final int version;       // only 12 bits are stored
+    private final String fileName;
+    private long hits = 0;            // statistics of this process only
+    private long misses = 0;
+
+    /**
+     * opens the cache file, creates it if it does not exist yet
+     * @param fileName path of the cache file
+     * @param nrOfSlots size of a new file (rounded up to a power of 2), an existing file keeps its size
+     * @param version engine version - results of other versions are ignored
+     * @throws IOException if the file cannot be created, has a wrong format or cannot be mapped
+     */
+    AnalysisFileCache(final String fileName, final int nrOfSlots, final int version) throws IOException {
+        this.version = version & 0xFFF;
+        this.fileName = fileName;
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+             FileChannel channel = file.getChannel()) {
+            int slots = Integer.highestOneBit(Math.max(PROBES, nrOfSlots - 1) << 1);
+            // file locks are per process, so threads of this process also have to wait for each other
+            synchronized (AnalysisFileCache.class) {
+                try (FileLock ignored = channel.lock()) {
+                    if (file.length() >= HEADER_BYTES) {
+                        if (file.readLong() != MAGIC)
+                            throw new IOException("not an analysis cache file: " + fileName);
+                        slots = file.readInt();
+                    }
+                    else {
+                        file.setLength(HEADER_BYTES + (long) slots * SLOT_BYTES);
+                        file.writeLong(MAGIC);
+                        file.writeInt(slots);
+                    }
+                    if (Integer.bitCount(slots) != 1 || file.length() < HEADER_BYTES + (long) slots * SLOT_BYTES)
+                        throw new IOException("corrupt analysis cache file: " + fileName);
+                }
+            }
+            this.nrOfSlots = slots;
+            // the mapping stays valid after the channel is closed
+            table = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, (long) slots * SLOT_BYTES);
+        }
+    }
+
+    int getNrOfSlots() {
+        return nrOfSlots;
+    }
+
+    /**
+     * @return stored data of the position (see moveOf()) or 0 if unknown
+     */
+    long get(final long key) {
+        for (int i = 0; i < PROBES; i++) {
+            int slot = slotIndex(key, i);
+            long data = (long) LONGS.getVolatile(table, slot * SLOT_BYTES + 8);
+            long check = (long) LONGS.getVolatile(table, slot * SLOT_BYTES);
+            if (data != 0 && (check ^ data) == key && versionOf(data) == version) {
+                hits++;
+                return data;
+            }
+        }
+        misses++;
+        return 0L;
+    }
+
+    void put(final long key, final Move move) {
+        long data = ((long) (move.from() | move.to() << 6 | move.promotesTo << 12) << 44)
+                | ((long) version << 32);
+        // take the slot of this key, else the first empty one, else the home slot
+        int target = slotIndex(key, 0);
+        for (int i = 0; i < PROBES; i++) {
+            int slot = slotIndex(key, i);
+            long oldData = (long) LONGS.getVolatile(table, slot * SLOT_BYTES + 8);
+            if (oldData == 0
+                    || ((long) LONGS.getVolatile(table, slot * SLOT_BYTES) ^ oldData) == key) {
+                target = slot;
+                break;
+            }
+        }
+        LONGS.setVolatile(table, target * SLOT_BYTES + 8, data);
+        LONGS.setVolatile(table, target * SLOT_BYTES, key ^ data);
+    }
+
+    private int slotIndex(final long key, final int probe) {
+        return (int) ((key + probe) & (nrOfSlots - 1));
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisFileCache " + fileName + " (" + nrOfSlots + " slots) hits=" + hits + " misses=" + misses;
+    }
+
+    static Move moveOf(final long data) {
+        int m = (int) (data >>> 44);
+        return new Move(m & (NR_SQUARES - 1), (m >>> 6) & (NR_SQUARES - 1), m >>> 12);
+    }
+
+    private static int versionOf(final long data) {
+        return (int) (data >>> 32) & 0xFFF;
+    }
+}
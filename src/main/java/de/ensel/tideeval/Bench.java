@@ -0,0 +1,108 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * The "bench" command: evaluates a fixed set of positions and reports the nr of propagation steps
+ * (ChessPiece.debug_propagationCounter), the nr of clash evaluations, a signature of all best moves and evals
+ * and positions/sec. Builds that calculate the same have the same counts and signature, so one line tells
+ * whether a build on a host is functionally identical and how fast it is there.
+ * The boards do not use a position cache nor the parallel move reevaluation, so every
+ * position is calculated completely and the counters are exact.
+ */
+public class Bench {
+    static final String[] BENCH_POSITIONS = {
+            ChessBasics.FENPOS_STARTPOS,
+            "r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 3",
+            "2kr1bnr/pp1npppp/2p5/q7/3P2b1/2N2N2/PPP1BPPP/R1BQ1RK1 w - - 6 8",
+            "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP1BBPPP/R2QK2R w KQ - 2 9",
+            "r3brk1/5pp1/p1nqpn1p/P2pN3/2pP4/2P1PN2/5PPP/RB1QK2R b KQ - 4 16",
+            "1k1r4/ppp3p1/8/1P5p/8/P3n2P/2P1r1P1/B3NRK1 b - - 4 31",
+            "r6k/2q3pp/8/2p1n3/R1Qp4/7P/2PB1PP1/6K1 b - - 0 32",
+            "4r3/p5k1/2p2R1p/2Pp4/1P1pr1P1/P6P/8/3R3K w - - 1 35",
+            "8/4R1k1/p5pp/3B4/5q2/8/5P1P/6K1 b - - 5 40",
+            "8/R7/3P4/4p1p1/3rPp1k/5P2/5K2/8 b - - 0 46",
+            "8/8/8/1R3p2/1P6/6k1/r6p/7K w - - 2 50",
+            "8/8/4k3/8/2K5/3P4/8/8 w - - 0 60",
+    };
+
+    /**
+     * the counts of one bench run
+     */
+    public static final class Result {
+        final int nrOfPositions;
+        final long propagations;
+        final long clashEvals;
+        final String signature;
+        final long millis;
+
+        Result(int nrOfPositions, long propagations, long clashEvals, String signature, long millis) {
+            this.nrOfPositions = nrOfPositions;
+            this.propagations = propagations;
+            this.clashEvals = clashEvals;
+            this.signature = signature;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Bench: %d positions, %d propagations, %d clash evals, signature %s, "
+                                 + "%.2f positions/sec (%d ms)",
+                    nrOfPositions, propagations, clashEvals, signature,
+                    millis > 0 ? nrOfPositions * 1000.0 / millis : 0.0, millis);
+        }
+    }
+
+    /**
+     * runs the bench positions, prints one line per position and the result line to out
+     */
+    public static Result run(PrintStream out) {
+        return run(BENCH_POSITIONS, out);
+    }
+
+    static Result run(String[] fens, PrintStream out) {
+        final long startPropagations = ChessPiece.debug_propagationCounter;
+        final long startClashEvals = Square.debug_clashEvalCounter;
+        CRC32 signature = new CRC32();
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < fens.length; i++) {
+            final long t0 = System.nanoTime();
+            ChessBoard board = new ChessBoard("Bench " + (i + 1), fens[i], false);
+            Move bestMove = board.getBestMove();
+            final int eval = board.boardEvaluation();
+            final String result = (bestMove == null ? "-" : bestMove.toString()) + " " + eval;
+            signature.update((result + "\n").getBytes(StandardCharsets.US_ASCII));
+            if (out != null)
+                out.println("Position " + (i + 1) + "/" + fens.length + ": bestmove "
+                            + result.replace(" ", " eval ") + " (" + (System.nanoTime() - t0) / 1000000 + " ms)");
+        }
+        Result r = new Result(fens.length, ChessPiece.debug_propagationCounter - startPropagations,
+                              Square.debug_clashEvalCounter - startClashEvals,
+                              String.format("%08x", signature.getValue()),
+                              (System.nanoTime() - startNanos) / 1000000);
+        if (out != null)
+            out.println(r);
+        return r;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.ensel.tideeval.ChessBoard.DEBUG_CALCARENA_USE_AFTER_RESET;
+
+/**
+ * Per-board pool for the many short-lived temporaries of one move selection (calcBestMove() of a ChessBoard).
+ * All objects handed out here are only valid until the next reset(), which happens wholesale at the start of
+ * the next calculation. Then they are recycled instead of being left to the garbage collector.
+ * In debug mode (ChessBoard.DEBUG_CALCARENA_USE_AFTER_RESET) nothing is recycled, but all handed out
+ * Evaluations are marked as released at reset(), so that any use after the reset throws an exception.
+ */
+class CalcArena {
+    private final List<Evaluation> evaluations = new ArrayList<>();
+    private int nrOfUsedEvaluations = 0;
+
+    private final List<EvaluatedMove> evaluatedMoves = new ArrayList<>();
+    private int nrOfUsedEvaluatedMoves = 0;
+
+    private final List<List<EvaluatedMove>> evaluatedMoveLists = new ArrayList<>();
+    private int nrOfUsedEvaluatedMoveLists = 0;
+
+    /**
+     * gives back all objects at once. Nothing handed out before may be used any more afterwards.
+     */
+    void reset() {
+        if (DEBUG_CALCARENA_USE_AFTER_RESET) {
+            for (Evaluation e : evaluations)
+                e.markReleased();
+            for (EvaluatedMove em : evaluatedMoves)
+                em.eval().markReleased();
+            // do not recycle in debug mode, so stale references remain detectable
+            evaluations.clear();
+            evaluatedMoves.clear();
+            evaluatedMoveLists.clear();
+        }
+        nrOfUsedEvaluations = 0;
+        nrOfUsedEvaluatedMoves = 0;
+        nrOfUsedEvaluatedMoveLists = 0;
+    }
+
+    /**
+     * @return an Evaluation like new Evaluation(target)
+     */
+    Evaluation evaluation(final int target) {
+        if (nrOfUsedEvaluations < evaluations.size())
+            return evaluations.get(nrOfUsedEvaluations++).reinit(target);
+        Evaluation e = new Evaluation(target);
+        evaluations.add(e);
+        nrOfUsedEvaluations++;
+        return e;
+    }
+
+    /**
+     * @return an Evaluation like the copy new Evaluation(oeval)
+     */
+    Evaluation evaluationCopyOf(final Evaluation oeval) {
+        if (nrOfUsedEvaluations < evaluations.size())
+            return evaluations.get(nrOfUsedEvaluations++).reinitFrom(oeval);
+        Evaluation e = new Evaluation(oeval);
+        evaluations.add(e);
+        nrOfUsedEvaluations++;
+        return e;
+    }
+
+    /**
+     * @return an EvaluatedMove like new EvaluatedMove(from, to)
+     */
+    EvaluatedMove evaluatedMove(final int from, final int to) {
+        if (nrOfUsedEvaluatedMoves < evaluatedMoves.size())
+            return evaluatedMoves.get(nrOfUsedEvaluatedMoves++).reinit(from, to);
+        EvaluatedMove em = new EvaluatedMove(from, to);
+        evaluatedMoves.add(em);
+        nrOfUsedEvaluatedMoves++;
+        return em;
+    }
+
+    /**
+     * @return an EvaluatedMove like the copy new EvaluatedMove(evMove)
+     */
+    EvaluatedMove evaluatedMoveCopyOf(final EvaluatedMove evMove) {
+        if (nrOfUsedEvaluatedMoves < evaluatedMoves.size())
+            return evaluatedMoves.get(nrOfUsedEvaluatedMoves++).reinitFrom(evMove);
+        EvaluatedMove em = new EvaluatedMove(evMove);
+        evaluatedMoves.add(em);
+        nrOfUsedEvaluatedMoves++;
+        return em;
+    }
+
+    /**
+     * @return an empty List for EvaluatedMoves
+     */
+    List<EvaluatedMove> evaluatedMoveList() {
+        if (nrOfUsedEvaluatedMoveLists < evaluatedMoveLists.size()) {
+            List<EvaluatedMove> l = evaluatedMoveLists.get(nrOfUsedEvaluatedMoveLists++);
+            l.clear();
+            return l;
+        }
+        List<EvaluatedMove> l = new ArrayList<>();
+        evaluatedMoveLists.add(l);
+        nrOfUsedEvaluatedMoveLists++;
+        return l;
+    }
+
+    //// getter
+
+    int getNrOfHandedOutObjects() {
+        return nrOfUsedEvaluations + nrOfUsedEvaluatedMoves + nrOfUsedEvaluatedMoveLists;
+    }
+
+    int getNrOfPooledObjects() {
+        return evaluations.size() + evaluatedMoves.size() + evaluatedMoveLists.size();
+    }
+}
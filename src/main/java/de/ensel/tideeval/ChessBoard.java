@@ -22,6 +22,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
 import static de.ensel.tideeval.ChessBasics.*;
 import static de.ensel.tideeval.EvaluatedMove.addEvaluatedMoveToSortedListOfCol;
@@ -61,6 +64,23 @@ public class ChessBoard {
     // do not change here, only via the DEBUGMSG_* above.
     public static final boolean DEBUG_BOARD_COMPARE_FRESHBOARD = DEBUGMSG_BOARD_COMPARE_FRESHBOARD || DEBUGMSG_BOARD_COMPARE_FRESHBOARD_NONEQUAL;
 
+    // do not recycle temporaries of the CalcArena, but detect their use after they were given back
+    public static boolean DEBUG_CALCARENA_USE_AFTER_RESET = false;
+
+    // look up results of clash simulations without 2nd row pieces in Square.clashResultCache() (switch off to compare)
+    public static boolean USE_CLASH_RESULT_CACHE = true;
+
+    // nr of my best moves the move selection keeps ranked (the opponent's are kept up to 20), see getBestMoves()
+    public static final int NR_OF_RANKED_MOVES = 5;
+
+    // re-evaluate the candidate moves of the move selection on several threads (switch off to compare or profile)
+    // - default for new boards, see setParallelMoveReevaluation()
+    public static boolean PARALLEL_MOVE_REEVALUATION = true;
+    private static final int MIN_MOVES_FOR_PARALLEL_REEVALUATION = 8;
+
+    // skip re-evaluation of rest moves that cannot get into the list of best moves any more
+    public static boolean PRUNE_HOPELESS_REST_MOVES = true;
+
     public static int DEBUGFOCUS_SQ = coordinateString2Pos("e1");   // changeable globally, just for debug output and breakpoints+watches
     public static int DEBUGFOCUS_VP = 0;   // changeable globally, just for debug output and breakpoints+watches
     private final ChessBoard board = this;       // only exists to make naming in debug evaluations easier (unified across all classes)
@@ -72,12 +92,32 @@ public class ChessBoard {
     private int blackKingPos;
 
     private int currentDistanceCalcLimit;
+
+    // memo of the evaluation components of boardEvaluation() for the current position (see evalComponent())
+    private final int[] evalComponentsMemo = new int[EVAL_INSIGHT_LEVELS];
+    private int evalComponentsMemoValid = 0;    // bit per level
+    private long evalComponentsMemoClock = -1;  // update clock when the memo was filled
+
+    // king pins of the current position, calculated once after hop level 2 (see calcKingPinMap())
+    private boolean kingPinMapValid = false;
+    private final long[] kingPinnedPieces = new long[2];        // per colorindex: bits of the positions of pieces pinned to their own king
+    private final long[] kingPinAllowedRays = new long[NR_SQUARES];  // per pos of a pinned piece: bits of the positions it may still move to
     private int[][] nrOfKingAreaAttacks = new int[2][2];    // nr of direct (inkl. 2nd row) attacks to [king of colorindex] by [piece of colorindex]
  //   private int[] nrOfFutureKingAreaAttackDangers = new int[2];    // nr of future attacks to [king of colorindex]
 
     public static int MAX_INTERESTING_NROF_HOPS = 6; // sufficient for pawns to see their future as a nice queen :-)
     private int[] nrOfLegalMoves = new int[2];
-    protected EvaluatedMove bestMove;
+    protected EvaluatedMove bestMove;   // lives in the calcArena, i.e. is only valid until the next calcBestMove()
+    private List<EvaluatedMove> topMoves = new ArrayList<>();  // best moves of the last calcBestMove(), copies outside the calcArena
+    private List<EvaluatedMove> predictedOpponentMoves = new ArrayList<>();  // the opponent's best moves of the last calcBestMove(), dito
+    private final CalcArena calcArena = new CalcArena();
+    private CalcArena[] workerArenas = null;  // one per worker of the parallel move re-evaluation, created on first use
+    private long nrOfSkippedRestMoves = 0;       // statistics of the rest move pruning
+    private long nrOfReevaluatedRestMoves = 0;
+    private boolean isProvisional = false;  // results of a partial calculation, see analyseProgressively()
+    private PositionCache positionCache = null;      // optional, see setPositionCache()
+    private boolean moveSelectionFromCache = false;  // the last calcBestMove() was answered by the positionCache
+    private boolean parallelMoveReevaluation = PARALLEL_MOVE_REEVALUATION;
 
     //private int[] kingChecks  = new int[2];
     private boolean gameOver;
@@ -87,6 +127,10 @@ public class ChessBoard {
     private Square[] boardSquares;
     String fenPosAndMoves;
 
+    // journal of the changes of each doMove(), newest first, so that undoMove() can revert them
+    private final Deque<MoveJournalEntry> moveJournal = new ArrayDeque<>();
+    private MoveJournalEntry recordingJournalEntry = null;   // only set while doMove() is running
+
     private static int engineP1 = 0;  // engine option - used at varying places for optimization purposes.
 
     /**
@@ -117,11 +161,65 @@ public class ChessBoard {
     }
 
     public ChessBoard(String boardName, String fenBoard) {
+        this(boardName, fenBoard, PARALLEL_MOVE_REEVALUATION);
+    }
+
+    /**
+     * @param parallelMoveReevaluation see setParallelMoveReevaluation(), already used for the first move selection,
+     *                                 e.g. false if the boards themselves are calculated in parallel
+     */
+    public ChessBoard(String boardName, String fenBoard, boolean parallelMoveReevaluation) {
+        this.parallelMoveReevaluation = parallelMoveReevaluation;
         initChessBoard(new StringBuffer(boardName), fenBoard);
         if (fenBoard != FENPOS_STARTPOS)   // sic. string-pointer compare ok+wanted here
             debugPrintln(DEBUGMSG_BOARD_INIT, "with [" + fenBoard + "] ");
     }
 
+    private ChessBoard(StringBuffer boardName) {
+        this.boardName = boardName;
+        setCurrentDistanceCalcLimit(0);
+    }
+
+    /**
+     * Calculates a new board like new ChessBoard(boardName, fenPosAndMoves), but as an anytime algorithm:
+     * For the final position, after each hop level of the distance calculation from level 2 on, the move selection
+     * phases are run on a copy of the partially calculated board. That copy with its provisional best move
+     * (getMove(), getBestMoves(), boardEvaluation()) is passed to afterLevel. The board itself continues
+     * undisturbed, so its final result is the same as usual. It is passed to afterLevel at MAX_INTERESTING_NROF_HOPS.
+     * @param boardName name of the board
+     * @param fenPosAndMoves position to analyse, the moves leading there are done with the usual complete calculation
+     * @param afterLevel gets the hop level and the (provisional) board, returns false to stop the calculation
+     * @return the completely calculated board or null if afterLevel stopped the calculation
+     */
+    public static ChessBoard analyseProgressively(String boardName, String fenPosAndMoves,
+                                                  BiPredicate<Integer,ChessBoard> afterLevel) {
+        ChessBoard board = new ChessBoard(new StringBuffer(boardName));
+        board.updateBoardFromFEN(fenPosAndMoves, afterLevel);
+        if (board.currentDistanceCalcLimit() < MAX_INTERESTING_NROF_HOPS)
+            return null;
+        board.calcBestMove();
+        afterLevel.test(MAX_INTERESTING_NROF_HOPS, board);
+        return board;
+    }
+
+    /**
+     * @return a copy of this board, whose move selection is finished on the results of the hop levels up
+     * to now (i.e. currentDistanceCalcLimit())
+     */
+    private ChessBoard provisionalCopy() {
+        ChessBoard provisional = copy();
+        provisional.isProvisional = true;
+        if (currentDistanceCalcLimit < 3) {
+            // moves are usually prepared after hop level 3
+            for (ChessPiece pce : provisional.piecesOnBoard)
+                if (pce != null)
+                    pce.prepareMoves(false);
+        }
+        provisional.completeMoveEvaluation();
+        provisional.calcBestMove();
+        return provisional;
+    }
+
     public static int engineP1() {
         return engineP1;
     }
@@ -141,6 +239,103 @@ public class ChessBoard {
         calcBestMove();
     }
 
+    /**
+     * Creates an independent deep copy of this board in its current state - without any recalculation.
+     * All Pieces, Squares, vPces and distances (incl. the still pending propagations) are copied and their
+     * references are re-targeted to the copy. So moves can be tried out on copies, e.g. in parallel threads,
+     * while this board remains untouched.
+     * The copy starts with an empty move journal, i.e. undoMove() cannot go back behind the copy.
+     * @return the copy
+     */
+    public ChessBoard copy() {
+        return new ChessBoard(this);
+    }
+
+    private ChessBoard(ChessBoard o) {
+        boardName = new StringBuffer(o.boardName);
+        boardHash = o.boardHash;
+        boardHashHistory = new ArrayList<>(2);
+        for (List<Long> colHistory : o.boardHashHistory)
+            boardHashHistory.add(new ArrayList<>(colHistory));
+        repetitions = o.repetitions;
+        whiteKingPos = o.whiteKingPos;
+        blackKingPos = o.blackKingPos;
+        currentDistanceCalcLimit = o.currentDistanceCalcLimit;
+        System.arraycopy(o.evalComponentsMemo, 0, evalComponentsMemo, 0, evalComponentsMemo.length);
+        evalComponentsMemoValid = o.evalComponentsMemoValid;
+        evalComponentsMemoClock = o.evalComponentsMemoClock;
+        kingPinMapValid = o.kingPinMapValid;
+        System.arraycopy(o.kingPinnedPieces, 0, kingPinnedPieces, 0, kingPinnedPieces.length);
+        System.arraycopy(o.kingPinAllowedRays, 0, kingPinAllowedRays, 0, kingPinAllowedRays.length);
+        nrOfKingAreaAttacks = new int[][] { o.nrOfKingAreaAttacks[0].clone(), o.nrOfKingAreaAttacks[1].clone() };
+        nrOfLegalMoves = o.nrOfLegalMoves.clone();
+        bestMove = o.bestMove == null ? null : new EvaluatedMove(o.bestMove);
+        topMoves = copyOfMoves(o.topMoves);
+        predictedOpponentMoves = copyOfMoves(o.predictedOpponentMoves);
+        gameOver = o.gameOver;
+        isProvisional = o.isProvisional;
+        positionCache = o.positionCache;
+        moveSelectionFromCache = o.moveSelectionFromCache;
+        parallelMoveReevaluation = o.parallelMoveReevaluation;
+        fenPosAndMoves = o.fenPosAndMoves;
+        nextFreePceID = o.nextFreePceID;
+        countOfWhitePieces = o.countOfWhitePieces;
+        countOfBlackPieces = o.countOfBlackPieces;
+        countBishops = o.countBishops.clone();
+        countKnights = o.countKnights.clone();
+        countPawnsInFile = new int[][] { o.countPawnsInFile[0].clone(), o.countPawnsInFile[1].clone() };
+        turn = o.turn;
+        kingsideCastlingAllowed = o.kingsideCastlingAllowed.clone();
+        queensideCastlingAllowed = o.queensideCastlingAllowed.clone();
+        enPassantFile = o.enPassantFile;
+        countBoringMoves = o.countBoringMoves;
+        fullMoves = o.fullMoves;
+        updateClockFineTicks = o.updateClockFineTicks;
+
+        // first create all objects, then let them take over their references to each other
+        piecesOnBoard = new ChessPiece[MAX_PIECES];
+        for (int pid = 0; pid < o.piecesOnBoard.length; pid++) {
+            if (o.piecesOnBoard[pid] != null)
+                piecesOnBoard[pid] = new ChessPiece(this, o.piecesOnBoard[pid]);
+        }
+        boardSquares = new Square[NR_SQUARES];
+        for (int p = 0; p < NR_SQUARES; p++)
+            boardSquares[p] = new Square(this, o.boardSquares[p]);
+        Map<ConditionalDistance, ConditionalDistance> copiedDistances = new IdentityHashMap<>(1 << 14);
+        for (int p = 0; p < NR_SQUARES; p++)
+            boardSquares[p].copyReferencesFrom(o.boardSquares[p], copiedDistances);
+        for (int pid = 0; pid < piecesOnBoard.length; pid++) {
+            if (piecesOnBoard[pid] != null)
+                piecesOnBoard[pid].copyQuesFrom(o.piecesOnBoard[pid]);
+        }
+    }
+
+    /**
+     * @param o a vPce of another board (see copy())
+     * @return the vPce of the same piece on the same square on this board, null if o was null or does not exist here
+     */
+    VirtualPieceOnSquare copiedVPce(VirtualPieceOnSquare o) {
+        if (o == null)
+            return null;
+        return boardSquares[o.getMyPos()].getvPiece(o.getPieceID());
+    }
+
+    /**
+     * @param os a set of vPces of another board (see copy())
+     * @return a new set of the corresponding vPces on this board, null if os was null
+     */
+    Set<VirtualPieceOnSquare> copiedVPces(Set<VirtualPieceOnSquare> os) {
+        if (os == null)
+            return null;
+        Set<VirtualPieceOnSquare> copies = new LinkedHashSet<>(os.size()*2);  // keeps the iteration order of the original
+        for (VirtualPieceOnSquare vPce : os) {
+            VirtualPieceOnSquare copy = copiedVPce(vPce);
+            if (copy != null)
+                copies.add(copy);
+        }
+        return copies;
+    }
+
 
     private void emptyBoard() {
         piecesOnBoard = new ChessPiece[MAX_PIECES];
@@ -284,37 +479,12 @@ public class ChessBoard {
         if (levelOfInsight == 0)
             return eval[0];
         // even for gameOver we try to calculate the other evaluations "as if"
-        int l = 0;
-        eval[++l] = evaluateAllPiecesBasicValueSum(); /*1*/
-        if (levelOfInsight == l)
-            return eval[l];
-        eval[++l] = evaluateAllPiecesBasicMobility();
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
-        eval[++l] = evaluateMaxClashes();
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
-        eval[++l] = evaluateAllPiecesMobility();
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
-        eval[++l] = evaluateOpponentSideAttack();
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
-        eval[++l] = evaluateOpponentKingAreaAttack();
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
-        eval[++l] = evaluateOwnKingAreaDefense();
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
-        eval[++l] = (int) (eval[3] * 1.2) + eval[4] + eval[5] + eval[6] + eval[7];
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
-        eval[++l] = getBestEvaluatedMove() != null ? (getBestEvaluatedMove()).getEvalAt(0)/10 : 0;
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
-        eval[++l] = eval[l-1] + ( getBestEvaluatedMove() != null ? ( (getBestEvaluatedMove()).getEvalAt(1)/32) : 0);
-        if (levelOfInsight == l)
-            return eval[1] + eval[l];
+        if (levelOfInsight == 1)
+            return evalComponent(1);
+        if (levelOfInsight <= 8)
+            return evalComponent(1) + evalComponent(levelOfInsight);
+        if (levelOfInsight <= 10)
+            return evalComponent(1) + bestMoveEvalComponent(getBestEvaluatedMove(), levelOfInsight);
 
         // hier one should not be able to end up, according to the parameter restriction/correction at the beginning
         // - but javac does not see it like that...
@@ -322,6 +492,70 @@ public class ChessBoard {
         return 0;
     }
 
+    /**
+     * the position dependent parts of boardEvaluation() that scan all pieces or squares - memorized, as they are
+     * asked for several times per position. (Only levels 1-8, levels 9 and 10 depend on the best move.)
+     * @param level insight level 1-8
+     * @return evaluation of this level without the piece values of level 1 (except for level 1 itself)
+     */
+    private int evalComponent(final int level) {
+        if (evalComponentsMemoClock != getUpdateClock()) {
+            evalComponentsMemoValid = 0;
+            evalComponentsMemoClock = getUpdateClock();
+        }
+        if ((evalComponentsMemoValid & (1 << level)) == 0) {
+            evalComponentsMemo[level] = switch (level) {
+                case 1 -> evaluateAllPiecesBasicValueSum();
+                case 2 -> evaluateAllPiecesBasicMobility();
+                case 3 -> evaluateMaxClashes();
+                case 4 -> evaluateAllPiecesMobility();
+                case 5 -> evaluateOpponentSideAttack();
+                case 6 -> evaluateOpponentKingAreaAttack();
+                case 7 -> evaluateOwnKingAreaDefense();
+                case 8 -> (int) (evalComponent(3) * 1.2) + evalComponent(4) + evalComponent(5)
+                          + evalComponent(6) + evalComponent(7);
+                default -> throw new IllegalArgumentException("no memorized evaluation for insight level " + level);
+            };
+            evalComponentsMemoValid |= 1 << level;
+        }
+        return evalComponentsMemo[level];
+    }
+
+    /**
+     * the parts of boardEvaluation() levels 9 and 10 that come from the best move
+     */
+    private static int bestMoveEvalComponent(final EvaluatedMove m, final int level) {
+        if (m == null)
+            return 0;
+        int eval = m.getEvalAt(0)/10;
+        if (level >= 10)
+            eval += m.getEvalAt(1)/32;
+        return eval;
+    }
+
+    static final int NR_OF_EVAL_TERMS = 9;
+
+    /**
+     * the raw terms boardEvaluation() combines with its hard-coded weights - for tuning them (see EvalTuner)
+     * @return the components of insight levels 1-7 and the best move's evaluation at 0 and 1 (as used in the
+     *         levels 9 and 10)
+     */
+    int[] getEvalTerms() {
+        int[] terms = new int[NR_OF_EVAL_TERMS];
+        for (int level = 1; level <= 7; level++)
+            terms[level - 1] = evalComponent(level);
+        EvaluatedMove m = getBestEvaluatedMove();
+        if (m != null) {
+            terms[7] = m.getEvalAt(0);
+            terms[8] = m.getEvalAt(1);
+        }
+        return terms;
+    }
+
+    private void invalidateEvalComponentsMemo() {
+        evalComponentsMemoValid = 0;
+    }
+
     public int boardEvaluation() {
         // for a game that has ended, the official evaluation is in level 0 (so that the others remain available "as if")
         if (isGameOver())
@@ -346,6 +580,14 @@ public class ChessBoard {
     // idea: could become an adapdable parameter later
     private static int EVALPARAM_CP_PER_MOBILITYSQUARE = 4;
 
+    public static int getEVALPARAM_CP_PER_MOBILITYSQUARE() {
+        return EVALPARAM_CP_PER_MOBILITYSQUARE;
+    }
+
+    public static void setEVALPARAM_CP_PER_MOBILITYSQUARE(int cp) {
+        EVALPARAM_CP_PER_MOBILITYSQUARE = cp;
+    }
+
     private int evaluateAllPiecesBasicMobility() {
         // this is not using streams, but a loop, as the return-type int[] is to complex to "just sum up"
         int[] mobSumPerHops = new int[MAX_INTERESTING_NROF_HOPS];
@@ -482,6 +724,16 @@ public class ChessBoard {
      * @param toLimit final value of currentDistanceCalcLimit.
      */
     private void continueDistanceCalcUpTo(int toLimit) {
+        continueDistanceCalcUpTo(toLimit, null);
+    }
+
+    /**
+     * like continueDistanceCalcUpTo(toLimit), but calls afterLevel after each hop level
+     * @param toLimit final value of currentDistanceCalcLimit.
+     * @param afterLevel gets the hop level just finished, returns false to stop there, may be null
+     * @return false, if afterLevel stopped the calculation
+     */
+    private boolean continueDistanceCalcUpTo(int toLimit, IntPredicate afterLevel) {
         debugPrintln(DEBUGMSG_DISTANCE_REPETITION, "---" );
         debugPrintln(DEBUGMSG_DISTANCE_REPETITION, "Distance calculation for board: " + getBoardFEN() );
 
@@ -514,6 +766,7 @@ public class ChessBoard {
 
             if (currentLimit == 2) {
                 markCheckBlockingSquares();
+                calcKingPinMap();
             }
             if (currentLimit == 2) {
                 // collect legal moves
@@ -527,8 +780,10 @@ public class ChessBoard {
                     if (pce != null)
                         pce.prepareMoves( currentLimit == MAX_INTERESTING_NROF_HOPS );
             }
+            if (afterLevel != null && !afterLevel.test(currentLimit))
+                return false;
         }
-
+        return true;
     }
 
 
@@ -770,14 +1025,66 @@ public class ChessBoard {
         }
     }
 
+    /**
+     * collects the pieces pinned to their king (and where they can still move to), so that
+     * moveIsNotBlockedByKingPin() does not need to look through the king square's vPieces for every call.
+     * Like the check blocking squares, pins are known from hop level 2 on.
+     */
+    private void calcKingPinMap() {
+        for (int ci = 0; ci <= 1; ci++) {
+            kingPinnedPieces[ci] = 0L;
+            boolean col = colorFromColorIndex(ci);
+            int kingpos = getKingPos(col);
+            if (kingpos < 0)
+                continue;          // in some test-cases boards without kings are used
+            for (int pinnedPos : boardSquares[kingpos].getPositionsOfPiecesThatBlockWayAndAreOfColor(col)) {
+                kingPinnedPieces[ci] |= 1L << pinnedPos;
+                long allowedRay = 0L;
+                if (colorlessPieceType(getPieceTypeAt(pinnedPos)) != KNIGHT) {
+                    // a pinned piece may only move along the axis between its king and itself
+                    int king2PceDir = calcDirFromTo(kingpos, pinnedPos);
+                    for (int pos = 0; pos < NR_SQUARES; pos++)
+                        if (calcDirFromTo(kingpos, pos) == king2PceDir)
+                            allowedRay |= 1L << pos;
+                }
+                kingPinAllowedRays[pinnedPos] = allowedRay;
+            }
+        }
+        kingPinMapValid = true;
+    }
+
+    private void invalidateKingPinMap() {
+        kingPinMapValid = false;
+    }
+
     /**
      * triggers all open distance calculation for all pieces
      */
     void completeCalc() {
+        completeCalc(null);
+    }
+
+    /**
+     * like completeCalc(), but after each hop level from 2 on (except the last) afterLevel gets a provisionalCopy()
+     * @param afterLevel may be null
+     * @return false, if afterLevel stopped the calculation
+     */
+    private boolean completeCalc(final BiPredicate<Integer,ChessBoard> afterLevel) {
+        invalidateEvalComponentsMemo();
         resetBestMoves();
 
-        continueDistanceCalcUpTo(MAX_INTERESTING_NROF_HOPS);
+        if (!continueDistanceCalcUpTo(MAX_INTERESTING_NROF_HOPS, afterLevel == null ? null
+                : level -> level < 2 || level >= MAX_INTERESTING_NROF_HOPS
+                           || afterLevel.test(level, provisionalCopy())))
+            return false;
+        completeMoveEvaluation();
+        return true;
+    }
 
+    /**
+     * the phases of completeCalc() after the distance calculation
+     */
+    private void completeMoveEvaluation() {
         for (ChessPiece pce : piecesOnBoard)
             if (pce!=null) {
                 pce.preparePredecessors();
@@ -906,7 +1213,19 @@ public class ChessBoard {
     int spawnPieceAt(final int pceType, final int pos) {
         final int newPceID = nextFreePceID++;
         assert (nextFreePceID <= MAX_PIECES);
+        spawnPieceWithIdAt(pceType, newPceID, pos);
+        return newPceID;
+    }
+
+    /**
+     * create a Piece with a given (unused) pieceID on the board - also to bring back a piece that was taken.
+     */
+    private void spawnPieceWithIdAt(final int pceType, final int newPceID, final int pos) {
+        invalidateKingPinMap();
+        invalidateEvalComponentsMemo();
         assert (pos >= 0 && pos < NR_SQUARES);
+        if (recordingJournalEntry != null)
+            recordingJournalEntry.record(MoveJournalEntry.SPAWN, newPceID, pceType, pos, NOWHERE);
         if (isPieceTypeWhite(pceType)) {
             countOfWhitePieces++;
             if (pceType == KING)
@@ -949,7 +1268,6 @@ public class ChessBoard {
         // finally, add the new piece at its place
         boardSquares[pos].spawnPiece(newPceID);
         //updateHash
-        return newPceID;
     }
 
     /*private void establishSingleNeighbourship4PieceID(int pid, int pos, int neighboursDir) {
@@ -984,6 +1302,13 @@ public class ChessBoard {
     }
 
     protected boolean updateBoardFromFEN(String fenString) {
+        return updateBoardFromFEN(fenString, null);
+    }
+
+    /**
+     * like updateBoardFromFEN(fenString), but the final completeCalc() reports to afterLevel, see analyseProgressively()
+     */
+    private boolean updateBoardFromFEN(String fenString, BiPredicate<Integer,ChessBoard> afterLevel) {
         if (fenString == null || fenString.length() == 0)
             fenString = FENPOS_STARTPOS;
         Move[] movesToDo = null;
@@ -993,6 +1318,20 @@ public class ChessBoard {
             if (fenString.equals(fenPosAndMoves))
                 changed = false; // it seems we are called with the same fenString again!
             movesToDo = getMoves(fenString.substring(fenPosAndMoves.length()));
+        } else if (fenPosAndMoves != null
+                && fenPosAndMoves.startsWith(fenString)
+                && fenPosAndMoves.charAt(fenString.length()) == ' ') {
+            // an earlier position of my current game (a take-back) -> undo the moves since then, if journaled
+            Move[] movesToTakeBack = getMoves(fenPosAndMoves.substring(fenString.length()));
+            int nrOfMovesToTakeBack = movesToTakeBack == null ? 0
+                    : (int) Arrays.stream(movesToTakeBack).filter(Objects::nonNull).count();
+            if (nrOfMovesToTakeBack > 0 && nrOfMovesToTakeBack <= moveJournal.size()) {
+                for (int i = 0; i < nrOfMovesToTakeBack; i++)
+                    undoMove();
+                fenPosAndMoves = fenString;
+                return true;
+            }
+            movesToDo = initBoardFromFEN(fenString);
         } else {
             // it seems the fenString is a later position of my current position or a totally different one
             movesToDo = initBoardFromFEN(fenString);
@@ -1013,7 +1352,7 @@ public class ChessBoard {
             // still we continue...
         }
         fenPosAndMoves = fenString;
-        completeCalc();
+        completeCalc(afterLevel);
         return changed;
     }
 
@@ -1027,6 +1366,7 @@ public class ChessBoard {
         //fenPosAndMoves = fenString;
         setDefaultBoardState();
         emptyBoard();
+        moveJournal.clear();
         int figNr;
         int i = 0;
         int rank = 0;
@@ -1237,6 +1577,69 @@ public class ChessBoard {
     }
 
 
+    /**
+     * My best moves as ranked by the same move selection that chose getBestMove() - so they come at no extra cost.
+     * does calcBestMove() when necessary
+     * @param maxNr max nr of moves, the move selection ranks at most NR_OF_RANKED_MOVES
+     * @return ranked list of my best moves, best first, empty if the game is over
+     */
+    public List<EvaluatedMove> getBestMoves(final int maxNr) {
+        if (bestMove==null)
+            calcBestMove();
+        if (bestMove==null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(topMoves.subList(0, min(maxNr, topMoves.size())));
+    }
+
+    /**
+     * The board evaluation (like boardEvaluation()), but as if m was chosen instead of the best move.
+     * @param m one of my moves, see getBestMoves()
+     * @return evaluation in centipawns, pro-white = pos, pro-black = neg
+     */
+    public int boardEvaluationWithMove(final EvaluatedMove m) {
+        return evalComponent(1) + bestMoveEvalComponent(m, EVAL_INSIGHT_LEVELS - 1);
+    }
+
+    /**
+     * The opponent's best moves, as they were taken into account for the selection of my best move.
+     * So they are its most likely replies to my move (as long as my move does not prevent them).
+     * does calcBestMove() when necessary
+     * @return ranked list of the opponent's best moves, best first
+     */
+    List<EvaluatedMove> getPredictedOpponentMoves() {
+        if (bestMove==null)
+            calcBestMove();
+        return Collections.unmodifiableList(predictedOpponentMoves);
+    }
+
+    /**
+     * the opponent's most likely replies to one of my moves: its predicted best moves (see getPredictedOpponentMoves())
+     * except those my move hinders. If my move gives check, only king moves and taking my piece remain.
+     * @param myMove one of my moves
+     * @param maxNr max nr of replies
+     * @return ranked list of replies, best first
+     */
+    List<Move> getPredictedReplies(final Move myMove, final int maxNr) {
+        final EvaluatedMove myEvMove = new EvaluatedMove(myMove);
+        boolean givesCheck = false;
+        for (EvaluatedMove m : topMoves)
+            if (m.equals(myMove))
+                givesCheck = m.isCheckGiving();
+        List<Move> replies = new ArrayList<>(maxNr);
+        for (EvaluatedMove oppMove : getPredictedOpponentMoves()) {
+            if (replies.size() >= maxNr)
+                break;
+            if (moveIsReallyHinderingMove(myEvMove, oppMove)
+                    || (givesCheck && oppMove.from() != getKingPos(opponentColor(getTurnCol()))
+                                   && oppMove.to() != myMove.to()))
+                continue;
+            Move reply = new Move(oppMove);
+            if (!replies.contains(reply))
+                replies.add(reply);
+        }
+        return replies;
+    }
+
     private EvaluatedMove getBestEvaluatedMove() {
         if (bestMove==null)
             calcBestMove();
@@ -1244,10 +1647,76 @@ public class ChessBoard {
     }
 
 
+    /**
+     * lets calcBestMove() look up its results for positions that were already calculated in cache and store new
+     * ones there (null: no cache, the default). Copies of this board share the cache.
+     * After a cache hit only the results of the move selection are set: best move, top moves, predicted opponent
+     * moves and the nr of legal moves. The pieces' chances and move lists are not calculated then, see
+     * isMoveSelectionFromCache() and recalcMoveSelectionWithoutCache().
+     */
+    void setPositionCache(final PositionCache cache) {
+        positionCache = cache;
+    }
+
+    /**
+     * re-evaluate the candidate moves of the move selection of this board on several threads or not.
+     * Defaults to PARALLEL_MOVE_REEVALUATION, copies of this board take it over.
+     */
+    public void setParallelMoveReevaluation(final boolean parallelMoveReevaluation) {
+        this.parallelMoveReevaluation = parallelMoveReevaluation;
+    }
+
+    public boolean isParallelMoveReevaluation() {
+        return parallelMoveReevaluation;
+    }
+
+    /**
+     * @return true if the current move selection came from the position cache, so the pieces' chances and move
+     *         lists are not calculated
+     */
+    boolean isMoveSelectionFromCache() {
+        return moveSelectionFromCache;
+    }
+
+    /**
+     * repeats a move selection that came from the position cache, so that also the pieces' chances and move
+     * lists are available (e.g. to show them)
+     */
+    void recalcMoveSelectionWithoutCache() {
+        if (moveSelectionFromCache)
+            calcBestMove(false);
+    }
+
     /**
      * the actual calculation... includes checkAndEvaluateGameOver()
      */
     private void calcBestMove() {
+        calcBestMove(positionCache != null && !isProvisional);
+    }
+
+    private void calcBestMove(final boolean useCache) {
+        // all temporaries of the previous move selection (incl. the old bestMove) are given back here
+        bestMove = null;
+        moveSelectionFromCache = false;
+        calcArena.reset();
+        if (workerArenas != null)
+            for (CalcArena arena : workerArenas)
+                arena.reset();
+        final String cachePosition = useCache ? getPositionCacheDescription() : null;
+        final long cacheKey = useCache ? positionCacheKey(cachePosition) : 0L;
+        if (useCache) {
+            PositionCache.Entry cached = positionCache.get(cacheKey, cachePosition);
+            if (cached != null) {
+                bestMove = cached.bestMove == null ? null : new EvaluatedMove(cached.bestMove);
+                topMoves = copyOfMoves(cached.topMoves);
+                predictedOpponentMoves = copyOfMoves(cached.opponentMoves);
+                nrOfLegalMoves[colorIndex(WHITE)] = cached.nrOfLegalMovesWhite;
+                nrOfLegalMoves[colorIndex(BLACK)] = cached.nrOfLegalMovesBlack;
+                moveSelectionFromCache = true;
+                checkAndEvaluateGameOver();
+                return;
+            }
+        }
         final int lowest = (getTurnCol() ? WHITE_IS_CHECKMATE : BLACK_IS_CHECKMATE);
         int[] bestEvalSoFar = new int[MAX_INTERESTING_NROF_HOPS + 1];
         int[] bestOpponentEval = new int[MAX_INTERESTING_NROF_HOPS + 1];
@@ -1279,54 +1748,249 @@ public class ChessBoard {
             debugPrintln(DEBUGMSG_MOVESELECTION, "(opponents best moves: " + bestOpponentMoves + ").");
         }
         bestMove = bestMovesSoFar.size()>0 ?bestMovesSoFar.get(0) : null;
+        topMoves = copyOfMoves(bestMovesSoFar);
+        predictedOpponentMoves = copyOfMoves(bestOpponentMoves);
         checkAndEvaluateGameOver();
+        if (useCache)
+            positionCache.put(new PositionCache.Entry(cacheKey, cachePosition,
+                    bestMove == null ? null : new EvaluatedMove(bestMove), copyOfMoves(topMoves),
+                    copyOfMoves(predictedOpponentMoves),
+                    nrOfLegalMoves[colorIndex(WHITE)], nrOfLegalMoves[colorIndex(BLACK)]));
+    }
+
+    static List<EvaluatedMove> copyOfMoves(final List<EvaluatedMove> moves) {
+        List<EvaluatedMove> copies = new ArrayList<>(moves.size());
+        for (EvaluatedMove m : moves)
+            copies.add(new EvaluatedMove(m));
+        return copies;
+    }
+
+    /**
+     * describes everything the result of calcBestMove() depends on: the position incl. counters, the engine
+     * parameters and the hashes of the positions since the last irreversible move (for the repetition checks)
+     */
+    String getPositionCacheDescription() {
+        StringBuilder d = new StringBuilder(getBoardFEN())
+                .append('|').append(MAX_INTERESTING_NROF_HOPS)
+                .append('|').append(engineP1())
+                .append('|').append(EVALPARAM_CP_PER_MOBILITYSQUARE);
+        for (List<Long> colHistory : boardHashHistory) {
+            d.append('|');
+            for (Long h : colHistory)
+                d.append(Long.toHexString(h)).append(',');
+        }
+        return d.toString();
+    }
+
+    /**
+     * 64-bit key for the positionCache (the boardHash is not enough, it does neither include the turn, the counters
+     * nor the castling rights and is not made for collision safety)
+     * @param d result of getPositionCacheDescription()
+     */
+    static long positionCacheKey(final String d) {
+        long h = 0xcbf29ce484222325L;   // FNV-1a
+        for (int i = 0; i < d.length(); i++) {
+            h ^= d.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // spread the bits (finalizer of splitmix64)
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
     }
 
     private List<EvaluatedMove> getBestMoveForColWhileAvoiding(final boolean col, final List<EvaluatedMove> bestOpponentMoves) {
-        final int maxBestMoves = col==getTurnCol() ? 5 : 20;
-        List<EvaluatedMove> bestMoves = new ArrayList<>(maxBestMoves);
-        List<EvaluatedMove> restMoves = new ArrayList<>(maxBestMoves);
+        final int maxBestMoves = col==getTurnCol() ? NR_OF_RANKED_MOVES : 20;
+        List<EvaluatedMove> bestMoves = calcArena.evaluatedMoveList();
+        List<EvaluatedMove> restMoves = calcArena.evaluatedMoveList();
         nrOfLegalMoves[colorIndex(col)] = 0;
+        List<ChessPiece> movers = new ArrayList<>();
+        List<EvaluatedMove> candidates = calcArena.evaluatedMoveList();
         for (ChessPiece p : piecesOnBoard) {
             if (p != null && p.color() == col) {
                 for (EvaluatedMove pEvMove : p.getBestEvaluatedMoves()) {
-                    EvaluatedMove reevaluatedPEvMove = reevaluateMove(col, bestOpponentMoves, p, pEvMove);
-                    if (reevaluatedPEvMove == null)
+                    if (pEvMove == null)
                         continue;
-                    if (DEBUGMSG_MOVESELECTION)
-                        debugPrintln(DEBUGMSG_MOVESELECTION, "  so my move reevaluates to " + reevaluatedPEvMove + ".");
-                    addEvaluatedMoveToSortedListOfCol(reevaluatedPEvMove, bestMoves, col, maxBestMoves, restMoves);
+                    movers.add(p);
+                    candidates.add(pEvMove);
                 }
             }
         }
+        nrOfLegalMoves[colorIndex(col)] += candidates.size();  // well it's not really counting the truth, but more for more :-)
+        EvaluatedMove[] reevaluatedMoves = reevaluateMoves(col, bestOpponentMoves, movers, candidates);
+        for (EvaluatedMove reevaluatedPEvMove : reevaluatedMoves) {
+            if (DEBUGMSG_MOVESELECTION)
+                debugPrintln(DEBUGMSG_MOVESELECTION, "  so my move reevaluates to " + reevaluatedPEvMove + ".");
+            addEvaluatedMoveToSortedListOfCol(reevaluatedPEvMove, bestMoves, col, maxBestMoves, restMoves);
+        }
+
         // after the best moves run again with the rest of the moves - just to be sure to not overlook something
+        List<ChessPiece> restMovers = new ArrayList<>();
+        List<EvaluatedMove> restCandidates = calcArena.evaluatedMoveList();
         for (ChessPiece p : piecesOnBoard) {
             if (p != null && p.color() == col) {
                 for (EvaluatedMove pEvMove : p.getEvaluatedRestMoves()) {
-                    EvaluatedMove reevaluatedPEvMove = reevaluateMove(col, bestOpponentMoves, p, pEvMove);
-                    if (reevaluatedPEvMove == null)
+                    if (pEvMove == null)
                         continue;
+                    restMovers.add(p);
+                    restCandidates.add(pEvMove);
+                }
+            }
+        }
+        nrOfLegalMoves[colorIndex(col)] += restCandidates.size();
+        // but a rest move can be skipped, if even the most optimistic outcome of its reevaluation could not
+        // get it into the (already full) list of best moves. The moves are processed in chunks (of the size that
+        // can be reevaluated in parallel) and each move of a chunk is checked against the list as it was before the
+        // chunk. That is safe, as the last entry of a full list only gets better while moves are sorted in.
+        final boolean mayPrune = PRUNE_HOPELESS_REST_MOVES
+                && !( bestOpponentMoves != null   // opponent might have no moves left -> check/stalemate corrections in reevaluateMove()
+                      && nrOfLegalMoves(opponentColor(col)) <= bestOpponentMoves.size() );
+        final int maxOppMoveBonus = mayPrune ? maxReevaluationBonusFromOppMoves(col, bestOpponentMoves) : 0;
+        final int chunkSize = reevaluationChunkSize(restCandidates.size());
+        int i = 0;
+        while (i < restCandidates.size()) {
+            movers.clear();
+            candidates.clear();
+            while (i < restCandidates.size() && candidates.size() < chunkSize) {
+                if ( mayPrune && bestMoves.size() >= maxBestMoves
+                        && cannotBeBetterThan(col,
+                                    reevaluationUpperBound0(col, bestOpponentMoves, restMovers.get(i),
+                                                            restCandidates.get(i), maxOppMoveBonus),
+                                    bestMoves.get(bestMoves.size() - 1)) ) {
                     if (DEBUGMSG_MOVESELECTION)
-                        debugPrintln(DEBUGMSG_MOVESELECTION, "  so my (rest)move reevaluates to " + reevaluatedPEvMove + ".");
-                    addEvaluatedMoveToSortedListOfCol(reevaluatedPEvMove, bestMoves, col, maxBestMoves, restMoves);
+                        debugPrintln(DEBUGMSG_MOVESELECTION, "  skipping hopeless (rest)move " + restCandidates.get(i) + ".");
+                    nrOfSkippedRestMoves++;
                 }
+                else {
+                    movers.add(restMovers.get(i));
+                    candidates.add(restCandidates.get(i));
+                }
+                i++;
+            }
+            nrOfReevaluatedRestMoves += candidates.size();
+            reevaluatedMoves = reevaluateMoves(col, bestOpponentMoves, movers, candidates);
+            for (EvaluatedMove reevaluatedPEvMove : reevaluatedMoves) {
+                if (DEBUGMSG_MOVESELECTION)
+                    debugPrintln(DEBUGMSG_MOVESELECTION, "  so my (rest)move reevaluates to " + reevaluatedPEvMove + ".");
+                addEvaluatedMoveToSortedListOfCol(reevaluatedPEvMove, bestMoves, col, maxBestMoves, restMoves);
             }
         }
         return bestMoves;
     }
 
+    /**
+     * the most reevaluateMove() can improve eval[0] of any move for col due to the opponent's best moves
+     * (in favour of col, so positive for white and negative for black).
+     * Namely the opponent's best remaining move is still counted, if it is less than EVAL_DELTAS_I_CARE_ABOUT
+     * against the opponent and if it is check giving, half of the next best move is added twice.
+     */
+    private int maxReevaluationBonusFromOppMoves(final boolean col, final List<EvaluatedMove> bestOpponentMoves) {
+        if (bestOpponentMoves == null)
+            return 0;
+        int maxFavourableOppEval0 = 0;
+        for (EvaluatedMove oppMove : bestOpponentMoves)
+            if (oppMove != null)
+                maxFavourableOppEval0 = max(maxFavourableOppEval0,
+                                            isWhite(col) ? oppMove.getEvalAt(0) : -oppMove.getEvalAt(0));
+        return EVAL_DELTAS_I_CARE_ABOUT + maxFavourableOppEval0 + 1;   // +1 for rounding when halving
+    }
+
+    /**
+     * admissible estimation: eval[0] of pEvMove after reevaluateMove() can not be better for col than this.
+     * (apart from the check and stalemate corrections, which are only applied if the opponent has hardly any moves,
+     * see mayPrune in getBestMoveForColWhileAvoiding()).
+     */
+    private int reevaluationUpperBound0(final boolean col, final List<EvaluatedMove> bestOpponentMoves,
+                                        final ChessPiece p, final EvaluatedMove pEvMove,
+                                        final int maxOppMoveBonus) {
+        int bonus = maxOppMoveBonus;
+        if (bestOpponentMoves != null) {
+            // leaving behind the contribution at the target of the opponent's best move
+            int maxFavourableContrib = 0;
+            for (EvaluatedMove oppMove : bestOpponentMoves)
+                if (oppMove != null) {
+                    int contrib = getBoardSquare(oppMove.to()).getvPiece(p.getPieceID()).getClashContribOrZero();
+                    maxFavourableContrib = max(maxFavourableContrib, isWhite(col) ? -contrib : contrib);
+                }
+            bonus += maxFavourableContrib;
+        }
+        return pEvMove.getEvalAt(0) + (isWhite(col) ? bonus : -bonus);
+    }
+
+    /**
+     * @return true if a move with eval[0]==eval0 is for sure not better for col than lastTopMove
+     * (i.e. isBetterForColorThan() would already decide so at level 0)
+     */
+    private static boolean cannotBeBetterThan(final boolean col, final int eval0, final EvaluatedMove lastTopMove) {
+        final int bias = isWhite(col) ? -4 : +4;   // same as in Evaluation.isBetterForColorThan()
+        final int halfThreshold = 36 >> 1;
+        return isWhite(col) ? eval0 + bias - lastTopMove.getEvalAt(0) < -halfThreshold
+                            : eval0 + bias - lastTopMove.getEvalAt(0) > halfThreshold;
+    }
+
+    private int reevaluationChunkSize(final int n) {
+        if ( !parallelMoveReevaluation || DEBUGMSG_MOVESELECTION
+                || n < MIN_MOVES_FOR_PARALLEL_REEVALUATION )
+            return 1;
+        return max(MIN_MOVES_FOR_PARALLEL_REEVALUATION, Runtime.getRuntime().availableProcessors());
+    }
+
+    long getNrOfSkippedRestMoves() {
+        return nrOfSkippedRestMoves;
+    }
+
+    long getNrOfReevaluatedRestMoves() {
+        return nrOfReevaluatedRestMoves;
+    }
+
+    /**
+     * reevaluates all candidates (candidates.get(i) is a move of movers.get(i)). The results are in the same order
+     * as the candidates, so sorting them in afterwards gives the same result, no matter if calculated in parallel or not.
+     * Reevaluation only reads the settled board, so if there are enough candidates, it is distributed over several
+     * workers, each with its own CalcArena.
+     */
+    private EvaluatedMove[] reevaluateMoves(final boolean col,
+                                            final List<EvaluatedMove> bestOpponentMoves,
+                                            final List<ChessPiece> movers,
+                                            final List<EvaluatedMove> candidates) {
+        final int n = candidates.size();
+        EvaluatedMove[] results = new EvaluatedMove[n];
+        if ( !parallelMoveReevaluation || DEBUGMSG_MOVESELECTION   // keep debug output in order
+                || n < MIN_MOVES_FOR_PARALLEL_REEVALUATION ) {
+            for (int i = 0; i < n; i++)
+                results[i] = reevaluateMove(col, bestOpponentMoves, movers.get(i), candidates.get(i), calcArena);
+            return results;
+        }
+        if (workerArenas == null) {
+            workerArenas = new CalcArena[Runtime.getRuntime().availableProcessors()];
+            for (int w = 0; w < workerArenas.length; w++)
+                workerArenas[w] = new CalcArena();
+        }
+        // aggregated chances are calculated lazily, so do it here once, before several threads read them
+        if (bestOpponentMoves != null)
+            for (EvaluatedMove oppMove : bestOpponentMoves)
+                if (oppMove != null && getPieceAt(oppMove.from()) != null)
+                    getBoardSquare(oppMove.to()).getvPiece(getPieceAt(oppMove.from()).getPieceID()).getChance();
+        final int nrOfWorkers = min(workerArenas.length, n);
+        IntStream.range(0, nrOfWorkers).parallel().forEach( w -> {
+            for (int i = w; i < n; i += nrOfWorkers)
+                results[i] = reevaluateMove(col, bestOpponentMoves, movers.get(i), candidates.get(i), workerArenas[w]);
+        });
+        return results;
+    }
+
     class BestOppMoveResult {
         protected EvaluatedMove evMove = null;
         protected Evaluation evalAfterPrevMoves = null;
     }
     
     @Nullable
-    private EvaluatedMove reevaluateMove(boolean col, List<EvaluatedMove> bestOpponentMoves, ChessPiece p, EvaluatedMove pEvMove) {
+    private EvaluatedMove reevaluateMove(boolean col, List<EvaluatedMove> bestOpponentMoves, ChessPiece p, EvaluatedMove pEvMove,
+                                         CalcArena arena) {
         if (pEvMove == null)
             return null;
         if (DEBUGMSG_MOVESELECTION)
             debugPrintln(DEBUGMSG_MOVESELECTION, "---- checking " + p + " with stayEval=" + p.staysEval() + " with move " + pEvMove + ": ");
-        nrOfLegalMoves[colorIndex(col)]++;  // well it's not really counting the truth, but more for more :-)
         ChessPiece beatenPiece = board.getPieceAt(pEvMove.to());
         Square toSq = board.getBoardSquare(pEvMove.to());
         int opponentMoveCorrection = 0;
@@ -1350,8 +2014,8 @@ public class ChessBoard {
                     + " would formerly have had correction of " + toSq.getvPiece(p.getPieceID()).getValue() + ".");
 
         BestOppMoveResult bestOppMove
-             = getBestOppMoveResult(col, bestOpponentMoves, pEvMove, opponentMoveCorrection);
-        EvaluatedMove reevaluatedPEvMove = new EvaluatedMove(pEvMove);
+             = getBestOppMoveResult(col, bestOpponentMoves, pEvMove, opponentMoveCorrection, arena);
+        EvaluatedMove reevaluatedPEvMove = arena.evaluatedMoveCopyOf(pEvMove);
 
         if (bestOppMove.evalAfterPrevMoves != null)
             reevaluatedPEvMove.addEval(bestOppMove.evalAfterPrevMoves);
@@ -1397,7 +2061,7 @@ public class ChessBoard {
                     // but this could lead to totally overestimated moves, e.g. moving unprotected Q next to k, just because all bestOppMoves are hindered (but there would be other moves, that are just do not part of the sub set of considered best moves)
             }
             else {  // it could be stalemate!
-                int deltaToDraw = -board.boardEvaluation(1);
+                int deltaToDraw = -evaluateAllPiecesBasicValueSum();  // = boardEvaluation(1), but without re-checking gameOver while still counting legal moves
                 if (DEBUGMSG_MOVESELECTION)
                     debugPrintln(DEBUGMSG_MOVESELECTION, "  stalemateish move? " + reevaluatedPEvMove
                         + " changing eval half way towards " + deltaToDraw + ".");
@@ -1411,7 +2075,8 @@ public class ChessBoard {
     private BestOppMoveResult getBestOppMoveResult(boolean col,
                                                    List<EvaluatedMove> bestOpponentMoves,
                                                    EvaluatedMove pEvMove,
-                                                   int opponentMoveCorrection) {
+                                                   int opponentMoveCorrection,
+                                                   CalcArena arena) {
         int nrOfBestOpponentMoves = 0;
         BestOppMoveResult bestOppMove;
         Evaluation bestOppMoveEvalAfterPrevMoves;
@@ -1440,7 +2105,7 @@ public class ChessBoard {
                                                              && pEvMove.from() == oppMove.to() ) // it cannot take and thus also not trigger Abzugschach
                                                         || //48h75  moveIsReallyHinderingMove(pEvMove,
                                                            moveIsMoreOrLessHinderingMove(pEvMove,  //48h75c+<75
-                                                                new EvaluatedMove(oppMoveTargetVPce.getAbzugChecker().getMyPiecePos(),
+                                                                arena.evaluatedMove(oppMoveTargetVPce.getAbzugChecker().getMyPiecePos(),
                                                                 getKingPos(col)));
                     if ( (  moveIsReallyHinderingMove(pEvMove, oppMove) //48h75
                             //48h75c+<75 moveIsMoreOrLessHinderingMove(pEvMove, oppMove)
@@ -1466,7 +2131,7 @@ public class ChessBoard {
                     }
                     else if ( ( pEvMove.isCheckGiving()
                                 && !moveIsMoreOrLessHinderingMove(oppMove,
-                            new EvaluatedMove(pEvMove.to(), getKingPos(oppPiece.color()))) )
+                            arena.evaluatedMove(pEvMove.to(), getKingPos(oppPiece.color()))) )
                               && pEvMoveHindersOrNoAbzugschach ) {
                         // I check, but oppMove does not block the check, but he has to deal with the check first.
                         // still we grant some bonus, because this oppMove could still be unavoidable after the check
@@ -1478,7 +2143,7 @@ public class ChessBoard {
                                         + oppMove
                                         + "as I am check giving=" + pEvMove.isCheckGiving()  // I check, but opponent can block the check, so his move is taken into account
                                         + "&& !opp hindering check=" + (!moveIsMoreOrLessHinderingMove(oppMove,
-                                                                                   new EvaluatedMove(pEvMove.to(),
+                                                                                   arena.evaluatedMove(pEvMove.to(),
                                                                                     getKingPos(oppPiece.color()))))
                                         + ".");
                         }
@@ -1551,7 +2216,7 @@ public class ChessBoard {
                         }
 
                         // sum up final evaluation of oppMove
-                        Evaluation corrOppMoveEval = new Evaluation(oppMove.eval());
+                        Evaluation corrOppMoveEval = arena.evaluationCopyOf(oppMove.eval());
                         // first consider assumed effect on eval0 of moving out of the way
                         boolean changedDueToMovingAway = false;
                         // 48h75
@@ -1588,7 +2253,7 @@ public class ChessBoard {
                               ||  corrOppMoveEval.isBetterForColorThan(opponentColor(col), bestOppMove.evalAfterPrevMoves)
                         ) {
                             if (oppMove.isCheckGiving() && !oppMoveIsStillCheckGiving) {  // if checkgiving changed, we have to instantiate a new changed move
-                                bestOppMove.evMove = new EvaluatedMove(oppMove);
+                                bestOppMove.evMove = arena.evaluatedMoveCopyOf(oppMove);
                                 bestOppMove.evMove.setIsCheckGiving(false);
                             }
                             else {
@@ -1632,7 +2297,7 @@ public class ChessBoard {
         if (bestOppMove.evMove != null) {
             if ( !evalIsOkForColByMin(bestOppMove.evalAfterPrevMoves.getEvalAt(0), opponentColor(col) ) ) {
                 // TODO: try if this is still needed or even bad -> tried in v0.48h43b - was much worse, but why?
-                bestOppMove.evalAfterPrevMoves = new Evaluation(ANYWHERE);  // set eval to 0 if opponent has only bad moves for himself.
+                bestOppMove.evalAfterPrevMoves = arena.evaluation(ANYWHERE);  // set eval to 0 if opponent has only bad moves for himself.
                 if (DEBUGMSG_MOVESELECTION)
                     debugPrintln(DEBUGMSG_MOVESELECTION, " only bad moves for opponent -> " + bestOppMove.evalAfterPrevMoves);
             }
@@ -1643,7 +2308,7 @@ public class ChessBoard {
                     EvaluatedMove nextBestOppMove = bestOpponentMoves.get(oppMoveIndex+1);
                     // if this move is checking, add the half of the next best move to it
                     if (evalIsOkForColByMin(nextBestOppMove.getEvalAt(0), col, -EVAL_TENTH)) {
-                        Evaluation nbOppMoveEvalHalf = new Evaluation(nextBestOppMove.eval())
+                        Evaluation nbOppMoveEvalHalf = arena.evaluationCopyOf(nextBestOppMove.eval())
                                 .devideBy(2);
                         if (DEBUGMSG_MOVESELECTION)
                             debugPrintln(DEBUGMSG_MOVESELECTION, "  opponent's check giving move is awarded half of : " + nextBestOppMove + ".");
@@ -1660,7 +2325,7 @@ public class ChessBoard {
 
         if ( bestNextOppMoveEval0 != 0) {
             if ( bestOppMove.evalAfterPrevMoves == null )  // there was no evaluation, mostly/surely because bestOppMove is also null, but still we signal the secondOppMoves result (as oppMoveList might have been incomplete at this point)
-                bestOppMove.evalAfterPrevMoves = new Evaluation(ANYWHERE);
+                bestOppMove.evalAfterPrevMoves = arena.evaluation(ANYWHERE);
             if (DEBUGMSG_MOVESELECTION)
                 debugPrintln(DEBUGMSG_MOVESELECTION, " Adding 1/2 of propable next best move " + bestNextOppMoveEval0);
 //                debugPrintln(DEBUGMSG_MOVESELECTION, " Adding 3/4 of propable next best move " + bestNextOppMoveEval0);
@@ -1706,6 +2371,20 @@ public class ChessBoard {
     }
 
     boolean doMove ( int frompos, int topos, int promoteToPceType){
+        MoveJournalEntry journalEntry = new MoveJournalEntry(this);
+        recordingJournalEntry = journalEntry;
+        boolean done;
+        try {
+            done = doMoveAndRecordChanges(frompos, topos, promoteToPceType);
+        } finally {
+            recordingJournalEntry = null;
+        }
+        if (done)
+            moveJournal.push(journalEntry);
+        return done;
+    }
+
+    private boolean doMoveAndRecordChanges(int frompos, int topos, int promoteToPceType){
         debugPrintln(DEBUGMSG_BOARD_MOVES, "DOING MOVE " + squareName(frompos) + squareName(topos) + ". ");
         // sanity/range checks for move
         if (frompos < 0 || topos < 0
@@ -1965,6 +2644,128 @@ public class ChessBoard {
     }
 
 
+    /**
+     * takes back the latest move done by doMove() - by reverting the journaled piece movements, captures and
+     * promotions (the distances of the vPces follow incrementally, like in doMove()) and restoring the
+     * remembered game state (castling rights, en passant, counters, hash history...).
+     * Like doMove(), this ends with a completeCalc(), but it saves rebuilding the board from a FEN string.
+     * @return false if there is no move to take back
+     */
+    public boolean undoMove() {
+        MoveJournalEntry entry = moveJournal.poll();
+        if (entry == null)
+            return false;
+        debugPrintln(DEBUGMSG_BOARD_MOVES, "UNDOING MOVE " + entry + ". ");
+        for (int i = entry.nrOfChanges - 1; i >= 0; i--) {
+            final int[] change = entry.changes[i];
+            switch (change[0]) {
+                case MoveJournalEntry.MOVE -> basicMoveFromTo(change[2], change[1], change[4], change[3], false);
+                case MoveJournalEntry.TAKE -> spawnPieceWithIdAt(change[2], change[1], change[3]);
+                case MoveJournalEntry.SPAWN -> {
+                    takePieceAway(change[3]);
+                    if (change[1] == nextFreePceID - 1)
+                        nextFreePceID--;
+                }
+            }
+        }
+        final long clockBeforeUndo = getUpdateClock();
+        entry.restore(this);
+        // the update clock must never run backwards, although the nr of plys does
+        if (getUpdateClock() <= clockBeforeUndo)
+            updateClockFineTicks += clockBeforeUndo - getUpdateClock() + 1;
+        completeCalc();
+        return true;
+    }
+
+    /**
+     * @return nr of moves that can be taken back by undoMove()
+     */
+    public int getNrOfUndoableMoves() {
+        return moveJournal.size();
+    }
+
+    /**
+     * the changes of one doMove(): the game state before the move and the list of basic changes to the pieces
+     * (each {kind, pceID, pceType, pos, topos}) in the order they were done.
+     */
+    private static final class MoveJournalEntry {
+        static final int MOVE = 1;
+        static final int TAKE = 2;
+        static final int SPAWN = 3;
+
+        int[][] changes = new int[4][];
+        int nrOfChanges = 0;
+
+        private final boolean turn;
+        private final boolean[] kingsideCastlingAllowed;
+        private final boolean[] queensideCastlingAllowed;
+        private final int enPassantFile;
+        private final int countBoringMoves;
+        private final int fullMoves;
+        private final int[][] countPawnsInFile;
+        private final long boardHash;
+        // not copied: a move either only appends one hash per color list or replaces the lists (see
+        // resetHashHistory()), so the lists and their sizes are enough to restore the history
+        private final List<List<Long>> boardHashHistory;
+        private final int[] boardHashHistorySizes;
+        private final int repetitions;
+
+        MoveJournalEntry(final ChessBoard b) {
+            turn = b.turn;
+            kingsideCastlingAllowed = b.kingsideCastlingAllowed.clone();
+            queensideCastlingAllowed = b.queensideCastlingAllowed.clone();
+            enPassantFile = b.enPassantFile;
+            countBoringMoves = b.countBoringMoves;
+            fullMoves = b.fullMoves;
+            countPawnsInFile = new int[][] { b.countPawnsInFile[0].clone(), b.countPawnsInFile[1].clone() };
+            boardHash = b.boardHash;
+            boardHashHistory = b.boardHashHistory;
+            boardHashHistorySizes = new int[] { boardHashHistory.get(0).size(), boardHashHistory.get(1).size() };
+            repetitions = b.repetitions;
+        }
+
+        void record(final int kind, final int pceID, final int pceType, final int pos, final int topos) {
+            if (nrOfChanges == changes.length)
+                changes = Arrays.copyOf(changes, nrOfChanges * 2);
+            changes[nrOfChanges++] = new int[] { kind, pceID, pceType, pos, topos };
+        }
+
+        void restore(final ChessBoard b) {
+            b.turn = turn;
+            b.kingsideCastlingAllowed = kingsideCastlingAllowed;
+            b.queensideCastlingAllowed = queensideCastlingAllowed;
+            b.enPassantFile = enPassantFile;
+            b.countBoringMoves = countBoringMoves;
+            b.fullMoves = fullMoves;
+            b.countPawnsInFile = countPawnsInFile;
+            b.boardHash = boardHash;
+            b.boardHashHistory = boardHashHistory;
+            for (int ci = 0; ci < 2; ci++) {
+                List<Long> colHistory = boardHashHistory.get(ci);
+                colHistory.subList(boardHashHistorySizes[ci], colHistory.size()).clear();
+            }
+            b.repetitions = repetitions;
+            // doMove() appended the move
+            int lastMoveStart = b.fenPosAndMoves == null ? -1 : b.fenPosAndMoves.lastIndexOf(' ');
+            if (lastMoveStart > 0)
+                b.fenPosAndMoves = b.fenPosAndMoves.substring(0, lastMoveStart);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < nrOfChanges; i++) {
+                int[] c = changes[i];
+                sb.append(switch (c[0]) {
+                    case MOVE -> "" + c[1] + ":" + squareName(c[3]) + squareName(c[4]);
+                    case TAKE -> "x" + c[1] + "@" + squareName(c[3]);
+                    default -> "+" + c[1] + "@" + squareName(c[3]);
+                }).append(' ');
+            }
+            return sb.toString().trim();
+        }
+    }
+
     public boolean isKingsideCastlingPossible(boolean color) {
         int kingPos = getKingPos(color);
         int ci = colorIndex(color);
@@ -2183,6 +2984,12 @@ public class ChessBoard {
         int sameColorKingPos = p.isWhite() ? whiteKingPos : blackKingPos;
         if (sameColorKingPos < 0)
             return true;  // king does not exist... should not happen, but is part of some test-positions
+        if (kingPinMapValid) {
+            int pPos = p.getPos();
+            if ((kingPinnedPieces[colorIndex(p.color())] & (1L << pPos)) == 0)
+                return true;   // p is not king-pinned
+            return (kingPinAllowedRays[pPos] & (1L << topos)) != 0;
+        }
         if (!isPiecePinnedToPos(p, sameColorKingPos))
             return true;   // p is not king-pinned
         if (colorlessPieceType(p.getPieceType()) == KNIGHT)
@@ -2197,6 +3004,8 @@ public class ChessBoard {
 
     public boolean isPiecePinnedToPos(ChessPiece p,int pos){
         int pPos = p.getPos();
+        if (kingPinMapValid && pos == getKingPos(p.color()))
+            return (kingPinnedPieces[colorIndex(p.color())] & (1L << pPos)) != 0;
         List<Integer> listOfSquarePositionsCoveringPos = boardSquares[pos].getPositionsOfPiecesThatBlockWayAndAreOfColor(p.color());
         for (Integer covpos : listOfSquarePositionsCoveringPos)
             if (covpos == pPos)
@@ -2226,7 +3035,11 @@ public class ChessBoard {
     private void takePieceAway ( int topos){
         //decreasePieceNrCounter(takenFigNr);
         //updateHash(takenFigNr, topos);
+        invalidateKingPinMap();
+        invalidateEvalComponentsMemo();
         ChessPiece p = getPieceAt(topos);
+        if (recordingJournalEntry != null)
+            recordingJournalEntry.record(MoveJournalEntry.TAKE, p.getPieceID(), p.getPieceType(), topos, NOWHERE);
         p.startNextUpdate();
         piecesOnBoard[p.getPieceID()] = null;
         if (p.isWhite())
@@ -2248,8 +3061,17 @@ public class ChessBoard {
     }
 
     private void basicMoveFromTo(final int pceType, final int pceID, final int frompos, final int topos){
+        basicMoveFromTo(pceType, pceID, frompos, topos, true);
+    }
+
+    private void basicMoveFromTo(final int pceType, final int pceID, final int frompos, final int topos,
+                                 final boolean thenCompleteCalc){
         if (frompos==topos)
             return;  // this is ok, e.g. in chess960 castling, a rook or king might end up in the exact same square again...
+        invalidateKingPinMap();
+        invalidateEvalComponentsMemo();
+        if (recordingJournalEntry != null)
+            recordingJournalEntry.record(MoveJournalEntry.MOVE, pceID, pceType, frompos, topos);
         if (pceType == KING)
             whiteKingPos = topos;
         else if (pceType == KING_BLACK)
@@ -2271,7 +3093,8 @@ public class ChessBoard {
         // for Test: "deactivation of recalc eval in doMove-methods in ChessBoard
         //           for manual tests with full Board reconstruction of every position, instead of evolving evaluations per move (just to compare speed)"
         // deactivate the following (correct) code:
-        completeCalc();
+        if (thenCompleteCalc)
+            completeCalc();
     /* setCurrentDistanceCalcLimit(0);
     boardSquares[frompos].pieceHasMovedAway();
     completeDistanceCalc();
@@ -2411,6 +3234,8 @@ $2    $3
     }
 
     private void setCurrentDistanceCalcLimit ( int newLimit){
+        if (newLimit <= 2)
+            invalidateKingPinMap();  // is recalculated after hop level 2
         currentDistanceCalcLimit = min(MAX_INTERESTING_NROF_HOPS, newLimit);
     }
 
@@ -2513,11 +3338,13 @@ $2    $3
 
     //// Hash methods
 
-    // initialize random values once at startup
+    // initialize random values once at startup - with a fixed seed, so that hashes (and thus the keys of the
+    // analysis file cache, see ChessBoardController) are the same in every engine process
     static private final long[] randomSquareValues = new long[70];
     static {
+        Random randomGenerator = new Random(0x71DE_E5A1L);
         for (int i=0; i<randomSquareValues.length; i++)
-            randomSquareValues[i] = (long)(random()*((double)(Long.MAX_VALUE>>1)));
+            randomSquareValues[i] = (long)(randomGenerator.nextDouble()*((double)(Long.MAX_VALUE>>1)));
     }
 
     private void resetHashHistory() {
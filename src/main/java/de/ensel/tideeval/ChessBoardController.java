@@ -20,10 +20,9 @@ package de.ensel.tideeval;
 
 import de.ensel.chessgui.ChessEngine;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Locale;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static de.ensel.tideeval.ChessBasics.*;
 import static de.ensel.tideeval.ChessBoard.MAX_INTERESTING_NROF_HOPS;
@@ -33,30 +32,79 @@ import static java.lang.Math.abs;
 public class ChessBoardController implements ChessEngine {
     ChessBoard board;
 
+    // results of the move selection of positions seen before, shared by the boards of this controller
+    static final int POSITION_CACHE_SLOTS = 1<<12;
+    private final PositionCache positionCache = new PositionCache(POSITION_CACHE_SLOTS);
+
+    // optional analysis cache file shared with other engine processes, see setParam("analysisCache", fileName)
+    static final int ANALYSIS_CACHE_VERSION = 1;   // increase whenever the move selection changes its results
+    static final int ANALYSIS_CACHE_SLOTS = 1<<20;
+    private AnalysisFileCache analysisFileCache = null;
+
+    // pondering (if allowed by setParam("Ponder", "true")): the boards after the opponent's most likely replies
+    // to my move are calculated in the background on board copies, see startPondering()
+    static final int PONDER_MAX_REPLIES = 3;
+    private boolean ponderingAllowed = false;
+    private ExecutorService ponderExecutor = null;
+    private String ponderBase = null;    // position + moves after my move, the replies are pondered on
+    private final Map<String, Future<ChessBoard>> ponderedReplies = new HashMap<>();  // K: reply move
+    private Future<ChessBoard> pendingBoard = null;  // pondered board set by setBoard(), but still being calculated
+    private String pendingFen = null;                // dito its position + moves, see takePendingBoard()
+    private boolean pendingBoardDiscarded = false;   // by stopPondering(), until the next setBoard()
+    private long ponderHits = 0;
+    private long ponderMisses = 0;
+
     @Override
     public boolean doMove(String move) {
+        takePendingBoard();
+        if (ponderBase != null && ponderBase.equals(board.fenPosAndMoves)
+                && takePonderedBoard(ponderBase + " " + move))
+            return true;
         return board.doMove(move);
     }
 
     @Override
     public String getMove() {
+        if (!takePendingBoard())
+            return null;   // the pondered position was discarded meanwhile
         if (board.isGameOver())
             return null;
         //TODO: chessBoard.go();
         // should be replaced by async functions, see interface
-        return board.getMove();
+        if (analysisFileCache == null)
+            return board.getMove();
+        long key = ChessBoard.positionCacheKey(board.getPositionCacheDescription());
+        long cached = analysisFileCache.get(key);
+        if (cached != 0L)
+            return AnalysisFileCache.moveOf(cached).toString();
+        String move = board.getMove();
+        if (!move.equals("-"))
+            analysisFileCache.put(key, new Move(move));
+        return move;
     }
 
     @Override
-    public void setBoard(String fen) {
+    public synchronized void setBoard(String fen) {
+        if (pendingBoard != null && fen.equals(pendingFen))
+            return;
+        if (!takePonderedBoard(fen)) {
+            stopPondering();
+            updateBoard(fen);
+        }
+        pendingBoardDiscarded = false;
+    }
+
+    private void updateBoard(String fen) {
         if (board==null) {
             board = new ChessBoard(chessBasicRes.getString("chessboard.initialName"), fen);
+            board.setPositionCache(positionCache);
         }
         else {
             if (!board.updateBoardFromFEN(fen) && !fen.equals(FENPOS_STARTPOS)) {
                 // seems the fen ins repeated - maybe I answered with an illegal move? try a board reset.
                 System.err.println("Board " + board.getBoardFEN() + " was called to update with equal FEN string: " + fen + ".");
                 board = new ChessBoard(chessBasicRes.getString("chessboard.initialName"), board.getBoardFEN());
+                board.setPositionCache(positionCache);
             }
         }
     }
@@ -73,17 +121,217 @@ public class ChessBoardController implements ChessEngine {
                 ChessBoard.setEngineP1(Integer.parseInt(value));
                 return true;
             }
+            case "Ponder" -> {
+                // UCI sends "value true" or "value false"
+                ponderingAllowed = value.trim().endsWith("true");
+                if (!ponderingAllowed)
+                    stopPondering();
+                return true;
+            }
+            case "analysisCache" -> {
+                if (value.isBlank() || value.equals("none")) {
+                    analysisFileCache = null;
+                    return true;
+                }
+                try {
+                    analysisFileCache = new AnalysisFileCache(value, ANALYSIS_CACHE_SLOTS, ANALYSIS_CACHE_VERSION);
+                    return true;
+                } catch (IOException e) {
+                    System.err.println("Cannot use analysis cache file " + value + ": " + e.getMessage());
+                    analysisFileCache = null;
+                    return false;
+                }
+            }
         }
         return false;
     }
 
+    @Override
+    public String getPonderMove(String myMove) {
+        takePendingBoard();
+        if (board.isGameOver())
+            return null;
+        List<Move> replies = board.getPredictedReplies(new Move(myMove), 1);
+        return replies.isEmpty() ? null : replies.get(0).toString();
+    }
+
+    /**
+     * Starts pondering while the opponent thinks: On a copy of the board my move is done, and on further copies the
+     * opponent's most likely replies (see ChessBoard.getPredictedReplies()) incl. my best move selection
+     * there - all in the background. If the opponent then plays one of them, setBoard() or doMove() just take over
+     * the already calculated board. Otherwise, the pondered boards are discarded.
+     * Does nothing, unless pondering is allowed by setParam("Ponder", "true").
+     * @param myMove move I am going to play, must be called before it is done on the board
+     */
+    @Override
+    public void startPondering(String myMove) {
+        takePendingBoard();
+        stopPondering();
+        if (!ponderingAllowed || board.isGameOver())
+            return;
+        List<Move> replies = board.getPredictedReplies(new Move(myMove), PONDER_MAX_REPLIES);
+        if (replies.isEmpty())
+            return;
+        if (ponderExecutor == null)
+            ponderExecutor = Executors.newFixedThreadPool(PONDER_MAX_REPLIES, r -> {
+                Thread t = new Thread(r, "ponder");
+                t.setDaemon(true);
+                return t;
+            });
+        final String base = board.fenPosAndMoves + " " + new Move(myMove);
+        ponderBase = base;
+        final ChessBoard boardAfterMyMove = board.copy();
+        final Future<ChessBoard> afterMyMove = ponderExecutor.submit(
+                () -> boardAfterMyMove.doMove(myMove) ? boardAfterMyMove : null );
+        for (Move reply : replies) {
+            ponderedReplies.put(reply.toString(), ponderExecutor.submit(() -> {
+                ChessBoard baseBoard = afterMyMove.get();
+                if (baseBoard == null)
+                    return null;
+                ChessBoard replyBoard = baseBoard.copy();
+                // exactly like setBoard() would do it, so the result does not depend on pondering
+                replyBoard.updateBoardFromFEN(base + " " + reply);
+                if (replyBoard.getNrOfUndoableMoves() == 0)   // reply was not possible
+                    return null;
+                replyBoard.getMove();   // do the move selection now
+                return replyBoard;
+            }));
+        }
+    }
+
+    /**
+     * discards all pondered boards, incl. a pending one that setBoard() has not taken over yet, without waiting for
+     * them (calculations still running are just left alone and their results dropped)
+     */
+    @Override
+    public synchronized void stopPondering() {
+        for (Future<ChessBoard> pondered : ponderedReplies.values())
+            pondered.cancel(false);
+        ponderedReplies.clear();
+        ponderBase = null;
+        if (pendingBoard != null) {
+            pendingBoard.cancel(false);
+            pendingBoardDiscarded = true;
+        }
+        pendingBoard = null;
+        pendingFen = null;
+    }
+
+    /**
+     * discards all pondered boards like stopPondering() and waits until the calculations still running for them have
+     * ended, e.g. before something that must not run in parallel (like the bench with its debug counters)
+     */
+    @Override
+    public void stopPonderingAndWait() {
+        final ExecutorService executor;
+        synchronized (this) {
+            stopPondering();
+            executor = ponderExecutor;
+            ponderExecutor = null;   // the next startPondering() creates a new one
+        }
+        if (executor == null)
+            return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * uses the pondered board, if fen is the position after my move plus one of the pondered replies.
+     * If the pondering of that reply is still running, it does not wait, but the board is taken over later by
+     * takePendingBoard() (so e.g. UCI "go ponder" can wait for it in the background).
+     * The other pondered boards are kept (until the next startPondering()), in case the reply is taken back
+     * (like after "go ponder" + "stop" in UCI).
+     * @param fen position + moves to be set
+     * @return true if the board was replaced by the pondered one (or will be)
+     */
+    private synchronized boolean takePonderedBoard(String fen) {
+        if (ponderBase == null || board == null || fen.equals(board.fenPosAndMoves)
+                || !fen.startsWith(ponderBase + " "))
+            return false;
+        Move[] moves = Move.getMoves(fen.substring(ponderBase.length()));
+        if (moves == null || moves.length != 1 || moves[0] == null)
+            return false;
+        Future<ChessBoard> pondered = ponderedReplies.remove(moves[0].toString());
+        if (pondered != null && !pondered.isDone()) {
+            pendingBoard = pondered;
+            pendingFen = fen;
+            return true;
+        }
+        ChessBoard ponderedBoard = null;
+        if (pondered != null) {
+            try {
+                ponderedBoard = pondered.get();
+            } catch (InterruptedException | ExecutionException | CancellationException e) {
+                ponderedBoard = null;
+            }
+        }
+        if (ponderedBoard == null) {
+            ponderMisses++;
+            return false;
+        }
+        ponderHits++;
+        ponderedBoard.fenPosAndMoves = fen;
+        board = ponderedBoard;
+        return true;
+    }
+
+    /**
+     * takes over the pondered board that setBoard() did not wait for, waits for its calculation to finish if necessary
+     * @return false if the pondered board was discarded meanwhile by stopPondering() (then the board is unchanged)
+     */
+    private boolean takePendingBoard() {
+        final Future<ChessBoard> pending;
+        final String fen;
+        synchronized (this) {
+            if (pendingBoardDiscarded)
+                return false;
+            pending = pendingBoard;
+            fen = pendingFen;
+        }
+        if (pending == null)
+            return true;
+        ChessBoard ponderedBoard;
+        try {
+            ponderedBoard = pending.get();
+        } catch (CancellationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ponderedBoard = null;
+        } catch (ExecutionException e) {
+            ponderedBoard = null;
+        }
+        synchronized (this) {
+            if (pendingBoard != pending)
+                return false;
+            pendingBoard = null;
+            pendingFen = null;
+            if (ponderedBoard != null) {
+                ponderHits++;
+                ponderedBoard.fenPosAndMoves = fen;
+                board = ponderedBoard;
+                return true;
+            }
+            ponderMisses++;
+            stopPondering();
+        }
+        updateBoard(fen);
+        return true;
+    }
+
     @Override
     public String getBoard() {
+        takePendingBoard();
         return board.getBoardFEN();
     }
 
     @Override
     public HashMap<String,String > getBoardInfo() {
+        takePendingBoard();
         HashMap<String,String> boardInfo = new HashMap<>();
         boardInfo.put("BoardInfo of:", board.getBoardName().toString() + " {"+board.getBoardHash()+"}");
         //boardInfo.put("Nr. of moves & turn:", ""+chessBoard.getFullMoves()  );
@@ -101,17 +349,58 @@ public class ChessBoardController implements ChessEngine {
                 + board.evaluateMaxClashes() + ", "
                 + board.boardEvaluation(4)
                 + " -> " + board.getBestMove() );
+        boardInfo.put("Clash cache:", Square.clashResultCache().toString());
+        boardInfo.put("Position cache:", positionCache.toString());
+        boardInfo.put("Analysis file cache:", analysisFileCache == null ? "-" : analysisFileCache.toString());
+        boardInfo.put("Pondering hits / misses:", ponderingAllowed ? ponderHits + " / " + ponderMisses : "-");
+        boardInfo.put("Rest moves skipped / reevaluated:", ""
+                + board.getNrOfSkippedRestMoves() + " / " + board.getNrOfReevaluatedRestMoves());
         return boardInfo;
     }
 
+    @Override
+    public LinkedHashMap<String,Integer> getBestMoves(int maxNr) {
+        takePendingBoard();
+        LinkedHashMap<String,Integer> bestMoves = new LinkedHashMap<>();
+        for (EvaluatedMove m : board.getBestMoves(maxNr)) {
+            int eval = board.boardEvaluationWithMove(m);
+            bestMoves.put(new Move(m).toString(), isWhite(board.getTurnCol()) ? eval : -eval);
+        }
+        return bestMoves;
+    }
+
+    /**
+     * Analyses the current position on a separate board, which is calculated from scratch, hop level by hop level
+     * (see ChessBoard.analyseProgressively()). Repetitions from the history of the game are not considered there.
+     * The depth reported is the hop level.
+     */
+    @Override
+    public String analyse(DepthInfoListener listener) {
+        takePendingBoard();
+        // no check of board.isGameOver() here, it is only up to date after a move selection on the board
+        final String[] bestMoveSoFar = { null };
+        ChessBoard.analyseProgressively("Analysis", board.getBoardFEN(), (depth, provisionalBoard) -> {
+            String move = provisionalBoard.getMove();
+            if (move.equals("-"))
+                return true;
+            bestMoveSoFar[0] = move;
+            int eval = provisionalBoard.boardEvaluation();
+            return listener.depthDone(depth, move, isWhite(provisionalBoard.getTurnCol()) ? eval : -eval);
+        });
+        return bestMoveSoFar[0];
+    }
+
     @Override
     public int getBoardEvaluation() {
+        takePendingBoard();
         return board.boardEvaluation();
     }
 
     @Override
     public HashMap<String,String> getSquareInfo(String square, String squareFrom) {
+        takePendingBoard();
         HashMap<String,String> squareInfo = new HashMap<>();
+        board.recalcMoveSelectionWithoutCache();   // the pieces' moves and chances are shown
         int pos = coordinateString2Pos(square);
         int squareFromPos = squareFrom.length()<2 ? pos : coordinateString2Pos(squareFrom);
         int squareFromPceId = board.getPieceIdAt(squareFromPos);
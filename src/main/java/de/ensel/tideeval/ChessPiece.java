@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import static de.ensel.tideeval.ChessBasics.*;
@@ -68,6 +69,25 @@ public class ChessPiece {
         resetPieceBasics();
     }
 
+    /**
+     * copy constructor for ChessBoard.copy(), the pending propagations follow in copyQuesFrom()
+     */
+    ChessPiece(ChessBoard myChessBoard, ChessPiece o) {
+        this.board = myChessBoard;
+        myPceType = o.myPceType;
+        myPceID = o.myPceID;
+        myPos = o.myPos;
+        latestUpdate = o.latestUpdate;
+        mobilityFor3Hops = o.mobilityFor3Hops.clone();
+        movesAwayChances = new EvaluatedMovesCollection(o.movesAwayChances);
+        bestRelEvalAt = o.bestRelEvalAt;
+        bestMoves = copyOfMoves(o.bestMoves);
+        restMoves = copyOfMoves(o.restMoves);
+        legalMovesAndChances = new EvaluatedMovesCollection(o.legalMovesAndChances);
+        soonLegalMovesAndChances = new EvaluatedMovesCollection(o.soonLegalMovesAndChances);
+        kingAreaAttacker = o.kingAreaAttacker;
+    }
+
     int movingAwayDistPenalty() {
         // make further calculation depending on whether mySquarePiece can move away
         if ( canMoveAwayReasonably() )
@@ -673,7 +693,7 @@ public class ChessPiece {
     /** ordered que  - to implement a breadth search for propagation **/
 
     private static final int QUE_MAX_DEPTH = MAX_INTERESTING_NROF_HOPS+3;
-    private final List<List<Runnable>> searchPropagationQues = new ArrayList<>();
+    private final List<List<QuedPropagation>> searchPropagationQues = new ArrayList<>();
     {
         // prepare List of HashSets
         for (int i=0; i<QUE_MAX_DEPTH+1; i++) {
@@ -681,8 +701,43 @@ public class ChessPiece {
         }
     }
 
-    void quePropagation(final int queIndex, final Runnable function) {
-        searchPropagationQues.get(Math.min(queIndex, QUE_MAX_DEPTH)).add(function);
+    /**
+     * one waiting propagation step: the vPce and what to do on it.
+     * The step itself must not capture any vPce, so that copy() can re-target the entry to the copied board.
+     */
+    private static final class QuedPropagation {
+        final VirtualPieceOnSquare vPce;
+        final Consumer<VirtualPieceOnSquare> step;
+
+        QuedPropagation(VirtualPieceOnSquare vPce, Consumer<VirtualPieceOnSquare> step) {
+            this.vPce = vPce;
+            this.step = step;
+        }
+
+        void run() {
+            step.accept(vPce);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    <V extends VirtualPieceOnSquare> void quePropagation(final int queIndex, final V vPce, final Consumer<V> step) {
+        searchPropagationQues.get(Math.min(queIndex, QUE_MAX_DEPTH))
+                .add(new QuedPropagation(vPce, (Consumer<VirtualPieceOnSquare>)(Consumer<?>)step));
+    }
+
+    /**
+     * second step of ChessBoard.copy(): takes over the not yet executed propagations of the original,
+     * re-targeted to the corresponding vPces of the copied board
+     */
+    void copyQuesFrom(ChessPiece o) {
+        for (int i = 0; i < searchPropagationQues.size(); i++) {
+            List<QuedPropagation> que = searchPropagationQues.get(i);
+            for (QuedPropagation qp : o.searchPropagationQues.get(i)) {
+                VirtualPieceOnSquare vPce = board.copiedVPce(qp.vPce);
+                if (vPce != null)
+                    que.add(new QuedPropagation(vPce, qp.step));
+            }
+        }
     }
 
     /**
@@ -698,7 +753,7 @@ public class ChessPiece {
             System.err.println("");
             System.err.print("pce.queCallNext@"+depth + ": ");
         }*/
-        List<Runnable> searchPropagationQue;
+        List<QuedPropagation> searchPropagationQue;
         for (int i = 0, quesSize = Math.min(depth, searchPropagationQues.size());
              i <= quesSize; i++) {
             searchPropagationQue = searchPropagationQues.get(i);
@@ -0,0 +1,148 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache for results of pure clash simulations (see Square.calcClashResultExcludingOne()).
+ * Many squares - in one position, over the hop-level iterations and also across positions - see
+ * the very same ordered sequences of attacker and defender values, so their exchange does not need
+ * to be simulated again and again.
+ * Key is a compact signature of everything the simulation depends on, i.e. the value of the piece on the
+ * square, the side to move, the ordered values of the white and black attackers (incl. whether they are
+ * kings or excluded from the clash) and the king-pin-coverage flags of the square.
+ * Eldest entries are dropped when the capacity is reached. Not synchronized: each thread has its own cache for
+ * all the boards it calculates, see Square.clashResultCache().
+ */
+final class ClashResultCache {
+    private final int capacity;
+    private final Map<Signature, Integer> results;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    ClashResultCache(final int capacity) {
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<>(capacity + (capacity >> 1), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Signature, Integer> eldest) {
+                if (size() > ClashResultCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return cached clash result for this signature or null if it is not (or no longer) known.
+     */
+    Integer get(final Signature signature) {
+        Integer result = results.get(signature);
+        if (result == null)
+            misses++;
+        else
+            hits++;
+        return result;
+    }
+
+    void put(final Signature signature, final int result) {
+        results.put(signature, result);
+    }
+
+    void clear() {
+        results.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    int size() {
+        return results.size();
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return hit rate in percent (0 if nothing was looked up yet)
+     */
+    int getHitRatePercent() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (int) (hits * 100 / lookups);
+    }
+
+    @Override
+    public String toString() {
+        return "ClashResultCache " + size() + "/" + capacity
+                + " hits=" + hits + " misses=" + misses + " (" + getHitRatePercent() + "%)"
+                + " evictions=" + evictions;
+    }
+
+
+    //// signature of a clash
+
+    /**
+     * immutable key of a clash simulation. The caller fills all the ints that the simulation
+     * depends on, see Square.clashSignature().
+     */
+    static final class Signature {
+        private final int[] content;
+        private final int hash;
+
+        Signature(final int[] content) {
+            this.content = content;
+            this.hash = Arrays.hashCode(content);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Signature))
+                return false;
+            Signature other = (Signature) o;
+            return hash == other.hash && Arrays.equals(content, other.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(content);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static de.ensel.tideeval.ChessBasics.*;
@@ -110,7 +111,7 @@ public class ConditionalDistance {
         updateFrom(baseDistance);
         inc(inc);
         if (fromCond!= ANYWHERE || toCond!= ANYWHERE)
-            conds.add(new MoveCondition(fromCond,toCond,colorCond));
+            conds.add(MoveCondition.of(fromCond,toCond,colorCond));
     }
 
     public ConditionalDistance(final VirtualPieceOnSquare lastMoveOrigin,
@@ -119,7 +120,7 @@ public class ConditionalDistance {
         updateFrom(baseDistance);
         inc(inc);
         if (fromCond!= ANYWHERE || toCond!= ANYWHERE)
-            conds.add(new MoveCondition(fromCond,toCond,colorCond));
+            conds.add(MoveCondition.of(fromCond,toCond,colorCond));
         setSingleLastMoveOrigin(lastMoveOrigin);
     }
 
@@ -147,6 +148,36 @@ public class ConditionalDistance {
         setSingleLastMoveOrigin(lastMoveOrigin);
     }
 
+    private ConditionalDistance() {
+        // only for copyFor()
+    }
+
+    /**
+     * copy for ChessBoard.copy(): like the copy constructor, but the lastMoveOrigins are replaced by the
+     * corresponding vPces on the copied board.
+     * Every ConditionalDistance is only copied once per board copy (remembered in copiedDistances),
+     * so that distance objects shared between vPces are also shared in the copy.
+     * @param o original distance, may be null
+     * @param board the copied board, where all vPces already exist
+     * @param copiedDistances originals -> copies, compared by identity
+     * @return the copy or null if o was null
+     */
+    static ConditionalDistance copyFor(final ConditionalDistance o, final ChessBoard board,
+                                       final Map<ConditionalDistance, ConditionalDistance> copiedDistances) {
+        if (o == null)
+            return null;
+        ConditionalDistance copy = copiedDistances.get(o);
+        if (copy != null)
+            return copy;
+        copy = new ConditionalDistance();
+        copy.dist = o.dist;
+        copy.conds.addAll(o.conds);  // MoveConditions are immutable and can be shared
+        copy.nogo = o.nogo;
+        copy.lastMoveOrigins = board.copiedVPces(o.lastMoveOrigins);
+        copiedDistances.put(o, copy);
+        return copy;
+    }
+
     public void updateFrom(ConditionalDistance baseDistance) {
         if (baseDistance==null) {
             reset();
@@ -154,8 +185,7 @@ public class ConditionalDistance {
         }
         setDistance(baseDistance.dist);
         resetConditions();
-        for( MoveCondition c : baseDistance.conds )
-            conds.add(new MoveCondition(c));
+        conds.addAll(baseDistance.conds);  // MoveConditions are immutable and can be shared
         this.nogo = baseDistance.nogo;
         setLastMoveOrigins(baseDistance.lastMoveOrigins);
     }
@@ -210,13 +240,13 @@ public class ConditionalDistance {
     }
 
     public void addCondition(final int fromCond, final int toCond) {
-        this.conds.add(new MoveCondition(fromCond, toCond));
+        this.conds.add(MoveCondition.of(fromCond, toCond));
     }
 
     public void addCondition(final int fromCond,
                              final int toCond,
                              final boolean colorCond) {
-        this.conds.add(new MoveCondition(fromCond, toCond, colorCond));
+        this.conds.add(MoveCondition.of(fromCond, toCond, colorCond));
     }
 
 
@@ -325,7 +355,7 @@ public class ConditionalDistance {
         setDistance(dist);
         resetConditions();
         if (fromCond!= ANYWHERE || toCond!= ANYWHERE)
-            this.conds.add(new MoveCondition(fromCond, toCond, colorCond));
+            this.conds.add(MoveCondition.of(fromCond, toCond, colorCond));
         this.nogo = nogo;
     }
 
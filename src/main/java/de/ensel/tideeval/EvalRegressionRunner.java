@@ -0,0 +1,229 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static de.ensel.tideeval.ChessBoard.EVAL_INSIGHT_LEVELS;
+import static de.ensel.tideeval.ChessBoard.getEvaluationLevelLabel;
+import static java.lang.Math.abs;
+import static java.lang.System.exit;
+
+/**
+ * Parallel version of FinalChessBoardEvalTest.boardEvaluation_Test() for game files with evals (.cts or PGN with
+ * [%eval] comments): the games are replayed move by move, each on its own board, and boardEvaluation() of every
+ * insight level is compared with the eval from the file. The games of a file are sharded across a pool of
+ * threads (see PgnGameReader.splitAtGameBoundaries()) and the statistics of the shards are merged.
+ * Reports evals/sec, the average evaluation deltas per file and the quality tables per insight level.
+ */
+public class EvalRegressionRunner {
+    static final int SKIP_OPENING_MOVES = 10;
+    static final int MIN_NROF_PIECES = 6;
+    private static final int SHARDS_PER_THREAD = 4;
+
+    /**
+     * the statistics of FinalChessBoardEvalTest, per insight level
+     */
+    static final class EvalStatistics {
+        long nrOfPositions = 0;
+        final long[] evalDeltaSum = new long[EVAL_INSIGHT_LEVELS];
+        final int[] countEvalSame = new int[EVAL_INSIGHT_LEVELS];
+        final int[] countEvalRightTendency = new int[EVAL_INSIGHT_LEVELS];
+        final int[] countEvalRightTendencyButTooMuch = new int[EVAL_INSIGHT_LEVELS];
+        final int[] countEvalWrongTendency = new int[EVAL_INSIGHT_LEVELS];
+        final long[] sumEvalRightTendency = new long[EVAL_INSIGHT_LEVELS];
+        final long[] sumEvalRightTendencyButTooMuch = new long[EVAL_INSIGHT_LEVELS];
+        final long[] sumEvalWrongTendency = new long[EVAL_INSIGHT_LEVELS];
+
+        void add(EvalStatistics o) {
+            nrOfPositions += o.nrOfPositions;
+            for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++) {
+                evalDeltaSum[i] += o.evalDeltaSum[i];
+                countEvalSame[i] += o.countEvalSame[i];
+                countEvalRightTendency[i] += o.countEvalRightTendency[i];
+                countEvalRightTendencyButTooMuch[i] += o.countEvalRightTendencyButTooMuch[i];
+                countEvalWrongTendency[i] += o.countEvalWrongTendency[i];
+                sumEvalRightTendency[i] += o.sumEvalRightTendency[i];
+                sumEvalRightTendencyButTooMuch[i] += o.sumEvalRightTendencyButTooMuch[i];
+                sumEvalWrongTendency[i] += o.sumEvalWrongTendency[i];
+            }
+        }
+
+        /**
+         * @return average abs. delta between boardEvaluation(level) and the expected evals
+         */
+        long evalDeltaAvg(int level) {
+            return nrOfPositions == 0 ? 0 : evalDeltaSum[level] / nrOfPositions;
+        }
+    }
+
+    private final int nrOfThreads;
+    private final PrintStream out;
+
+    public EvalRegressionRunner(int nrOfThreads, PrintStream out) {
+        this.nrOfThreads = nrOfThreads;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: EvalRegressionRunner [-t nrOfThreads] <games.cts|games.pgn> ...");
+            exit(3);
+        }
+        int nrOfThreads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        if (args[0].equals("-t") && args.length > 2) {
+            nrOfThreads = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        List<Path> files = new ArrayList<>();
+        for (int i = first; i < args.length; i++)
+            files.add(Path.of(args[i]));
+        new EvalRegressionRunner(nrOfThreads, System.out).run(files);
+    }
+
+    /**
+     * evaluates all files and prints the results
+     * @return the statistics of all files together
+     */
+    public EvalStatistics run(List<Path> files) throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(nrOfThreads);
+        EvalStatistics total = new EvalStatistics();
+        final long startNanos = System.nanoTime();
+        try {
+            for (Path file : files) {
+                EvalStatistics fileStats = evaluateFile(workers, file);
+                out.print("Finished test of " + fileStats.nrOfPositions + " positions from Test set "
+                          + file.getFileName() + ". Evaluation deltas:");
+                for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++)
+                    out.print(" " + fileStats.evalDeltaAvg(i) + (i < EVAL_INSIGHT_LEVELS - 1 ? "," : "."));
+                out.println();
+                total.add(fileStats);
+            }
+        } finally {
+            workers.shutdown();
+        }
+        final double seconds = (System.nanoTime() - startNanos) / 1e9;
+        out.println("Total Nr. of board evaluations: " + total.nrOfPositions
+                    + String.format(" in %.1f s = %.1f evals/sec with %d threads.",
+                                    seconds, seconds > 0 ? total.nrOfPositions / seconds : 0.0, nrOfThreads));
+        printQuality(total);
+        return total;
+    }
+
+    private EvalStatistics evaluateFile(ExecutorService workers, Path file) throws IOException, InterruptedException {
+        long[] offsets = PgnGameReader.splitAtGameBoundaries(file, nrOfThreads * SHARDS_PER_THREAD);
+        List<Future<EvalStatistics>> shards = new ArrayList<>();
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            if (offsets[i] == offsets[i + 1])
+                continue;
+            final long from = offsets[i];
+            final long to = offsets[i + 1];
+            shards.add(workers.submit(() -> evaluateShard(file, from, to)));
+        }
+        EvalStatistics fileStats = new EvalStatistics();
+        for (Future<EvalStatistics> shard : shards) {
+            try {
+                fileStats.add(shard.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Evaluation of " + file + " failed", e.getCause());
+            }
+        }
+        return fileStats;
+    }
+
+    private static EvalStatistics evaluateShard(Path file, long from, long to) throws IOException {
+        EvalStatistics stats = new EvalStatistics();
+        try (PgnGameReader reader = new PgnGameReader(file, from, to)) {
+            while (reader.hasNext())
+                evaluateGame(reader.next(), stats);
+        }
+        return stats;
+    }
+
+    /**
+     * like FinalChessBoardEvalTest.boardEvaluation_Test_testOneGame(): skips SKIP_OPENING_MOVES moves and stops
+     * at an expected eval beyond 2000, when less than MIN_NROF_PIECES are left or the eval is missing.
+     */
+    static void evaluateGame(PgnGameReader.Game game, EvalStatistics stats) {
+        // the shards already run in parallel
+        ChessBoard chessBoard = new ChessBoard("Eval " + game.getOffset(), FENPOS_STARTPOS, false);
+        int m = 0;
+        for (; m < SKIP_OPENING_MOVES && m < game.getNrOfMoves(); m++)
+            chessBoard.doMove(game.getMove(m));
+        for (; m < game.getNrOfMoves(); m++) {
+            if (!chessBoard.doMove(game.getMove(m)) || chessBoard.getPieceCounter() < MIN_NROF_PIECES)
+                break;
+            int expectedEval = game.getEval(m);
+            if (expectedEval == NOT_EVALUATED)
+                break;
+            if (expectedEval == OPPONENT_IS_CHECKMATE)
+                expectedEval = isWhite(chessBoard.getTurnCol()) ? BLACK_IS_CHECKMATE : WHITE_IS_CHECKMATE;
+            if (abs(expectedEval) > 2000)
+                break;
+            stats.nrOfPositions++;
+            int basicPieceValueDeviation = 0;
+            for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++) {
+                int delta = chessBoard.boardEvaluation(i) - expectedEval;
+                stats.evalDeltaSum[i] += abs(delta);
+                if (i == 1) {  // basic piece value sum
+                    basicPieceValueDeviation = delta;
+                }
+                if (i > 1) {
+                    if (abs(delta) == abs(basicPieceValueDeviation)) {
+                        stats.countEvalSame[i]++;
+                    } else if (abs(delta) < abs(basicPieceValueDeviation)) {
+                        stats.countEvalRightTendency[i]++;
+                        stats.sumEvalRightTendency[i] += abs(delta) - abs(basicPieceValueDeviation);
+                    } else if (delta > 0 && basicPieceValueDeviation < 0
+                               || delta < 0 && basicPieceValueDeviation > 0) {
+                        stats.countEvalRightTendencyButTooMuch[i]++;
+                        stats.sumEvalRightTendencyButTooMuch[i] += abs(delta) - abs(basicPieceValueDeviation);
+                    } else {
+                        stats.countEvalWrongTendency[i]++;
+                        stats.sumEvalWrongTendency[i] += abs(delta) - abs(basicPieceValueDeviation);
+                    }
+                }
+            }
+        }
+    }
+
+    private void printQuality(EvalStatistics s) {
+        for (int i = 2; i < EVAL_INSIGHT_LEVELS; i++) {
+            out.print("Quality of level " + getEvaluationLevelLabel(i) + " (" + i + "): ");
+            out.println(" (same as basic piece value: " + s.countEvalSame[i] + ")");
+            out.println("  - improvements: " + s.countEvalRightTendency[i] + " ("
+                        + avg(s.sumEvalRightTendency[i], s.countEvalRightTendency[i]) + ")");
+            out.print("  - totally wrong: " + s.countEvalWrongTendency[i] + " ("
+                      + avg(s.sumEvalWrongTendency[i], s.countEvalWrongTendency[i]) + ")");
+            out.println("; - overdone: " + s.countEvalRightTendencyButTooMuch[i] + " ("
+                        + avg(s.sumEvalRightTendencyButTooMuch[i], s.countEvalRightTendencyButTooMuch[i]) + ")");
+        }
+    }
+
+    private static String avg(long sum, int count) {
+        return count <= 0 ? "-" : Long.toString(sum / count);
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+import static de.ensel.tideeval.ChessBasics.NOT_EVALUATED;
+import static de.ensel.tideeval.ChessBoard.NR_OF_EVAL_TERMS;
+import static java.lang.System.exit;
+
+/**
+ * Texel-style tuning of the weights boardEvaluation() gives its terms (see ChessBoard.getEvalTerms()).
+ * "extract" calculates every position of a corpus with reference evals (see PositionCorpus.convertGames()) once
+ * and caches its raw terms in a feature file. "tune" then only works on that matrix: a local search changes one
+ * weight at a time by a step that moves the eval by stepCp on average (halved when nothing improves anymore) and
+ * keeps it if the mean squared error between the win probabilities of the weighted sum and the reference eval
+ * gets smaller. The error sums are calculated by several threads, each over a part of the positions.
+ */
+public class EvalTuner {
+    private static final long MAGIC = 0x5469646554756e31L;   // "TideTun1"
+    private static final int POSITIONS_PER_TASK = 64;
+
+    static final String[] TERM_NAMES = new String[NR_OF_EVAL_TERMS];
+    static {
+        for (int level = 1; level <= 7; level++)
+            TERM_NAMES[level - 1] = ChessBoard.getEvaluationLevelLabel(level);
+        TERM_NAMES[7] = "best move eval[0]";
+        TERM_NAMES[8] = "best move eval[1]";
+    }
+
+    /**
+     * the weights boardEvaluation() currently uses (insight level 10): piece values + best move [0]/10 + [1]/32
+     */
+    static double[] currentWeights() {
+        double[] w = new double[NR_OF_EVAL_TERMS];
+        w[0] = 1.0;
+        w[7] = 1.0 / 10;
+        w[8] = 1.0 / 32;
+        return w;
+    }
+
+    /**
+     * the feature matrix: reference eval and the raw eval terms per position
+     */
+    public static final class Features {
+        final int nrOfTerms;
+        final int[] targets;
+        final int[] terms;     // nrOfTerms per position
+
+        Features(int nrOfTerms, int[] targets, int[] terms) {
+            this.nrOfTerms = nrOfTerms;
+            this.targets = targets;
+            this.terms = terms;
+        }
+
+        int size() {
+            return targets.length;
+        }
+
+        void write(Path file) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeLong(MAGIC);
+                out.writeInt(nrOfTerms);
+                out.writeInt(size());
+                for (int i = 0; i < size(); i++) {
+                    out.writeInt(targets[i]);
+                    for (int t = 0; t < nrOfTerms; t++)
+                        out.writeInt(terms[i * nrOfTerms + t]);
+                }
+            }
+        }
+
+        static Features read(Path file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readLong() != MAGIC)
+                    throw new IOException("Not a feature file of EvalTuner: " + file);
+                final int nrOfTerms = in.readInt();
+                final int n = in.readInt();
+                int[] targets = new int[n];
+                int[] terms = new int[n * nrOfTerms];
+                for (int i = 0; i < n; i++) {
+                    targets[i] = in.readInt();
+                    for (int t = 0; t < nrOfTerms; t++)
+                        terms[i * nrOfTerms + t] = in.readInt();
+                }
+                return new Features(nrOfTerms, targets, terms);
+            }
+        }
+    }
+
+    private final Features features;
+    private final int nrOfThreads;
+    private final double[] targetProbabilities;
+    private final double[] termRms;    // root mean square of each term, to give the steps the same effect
+
+    public EvalTuner(Features features, int nrOfThreads) {
+        this.features = features;
+        this.nrOfThreads = nrOfThreads;
+        targetProbabilities = new double[features.size()];
+        termRms = new double[features.nrOfTerms];
+        for (int i = 0; i < features.size(); i++) {
+            targetProbabilities[i] = winProbability(features.targets[i]);
+            for (int t = 0; t < features.nrOfTerms; t++) {
+                final double v = features.terms[i * features.nrOfTerms + t];
+                termRms[t] += v * v;
+            }
+        }
+        for (int t = 0; t < features.nrOfTerms; t++)
+            termRms[t] = features.size() == 0 ? 0 : Math.sqrt(termRms[t] / features.size());
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int nrOfThreads = Runtime.getRuntime().availableProcessors();
+        int maxIterations = 200;
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+            switch (args[i]) {
+                case "-t" -> nrOfThreads = Integer.parseInt(args[i + 1]);
+                case "-i" -> maxIterations = Integer.parseInt(args[i + 1]);
+                default -> i = args.length;
+            }
+        }
+        if (args.length - i == 3 && args[i].equals("extract")) {
+            final long t0 = System.nanoTime();
+            Features f;
+            try (PositionCorpus corpus = new PositionCorpus(Path.of(args[i + 1]))) {
+                f = extract(corpus, nrOfThreads);
+            }
+            f.write(Path.of(args[i + 2]));
+            System.out.printf(Locale.ROOT, "Extracted %d positions in %.1f s.%n",
+                              f.size(), (System.nanoTime() - t0) / 1e9);
+            return;
+        }
+        if (args.length - i != 2 || !args[i].equals("tune")) {
+            System.out.println("Usage: EvalTuner [-t nrOfThreads] extract <position corpus> <featureFile>\n"
+                               + "       EvalTuner [-t nrOfThreads] [-i maxIterations] tune <featureFile>");
+            exit(3);
+        }
+        EvalTuner tuner = new EvalTuner(Features.read(Path.of(args[i + 1])), nrOfThreads);
+        double[] w = tuner.tune(currentWeights(), maxIterations, System.out);
+        System.out.println("Tuned weights:");
+        for (int t = 0; t < w.length; t++)
+            System.out.printf(Locale.ROOT, "  %-28s %9.4f%n", TERM_NAMES[t], w[t]);
+        System.out.printf(Locale.ROOT, "  (%s %.4f corresponds to EVALPARAM_CP_PER_MOBILITYSQUARE=%.2f)%n",
+                          TERM_NAMES[1], w[1], w[1] * ChessBoard.getEVALPARAM_CP_PER_MOBILITYSQUARE());
+    }
+
+    /**
+     * calculates the eval terms of all positions of the corpus that have a reference eval, in parallel
+     */
+    public static Features extract(PositionCorpus corpus, int nrOfThreads) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(nrOfThreads);
+        final ThreadLocal<ChessBoard> boards = new ThreadLocal<>();   // one reused board per thread
+        Deque<Future<int[]>> pending = new ArrayDeque<>();
+        List<int[]> rowBlocks = new ArrayList<>();
+        try {
+            for (long from = 0; from < corpus.size(); from += POSITIONS_PER_TASK) {
+                final long start = from;
+                final long end = Math.min(corpus.size(), from + POSITIONS_PER_TASK);
+                pending.add(workers.submit(() -> extractRange(corpus, start, end, boards)));
+                if (pending.size() > nrOfThreads * 4)
+                    rowBlocks.add(resultOf(pending.poll()));
+            }
+            while (!pending.isEmpty())
+                rowBlocks.add(resultOf(pending.poll()));
+        } finally {
+            workers.shutdownNow();
+        }
+        // each row: the reference eval, followed by the terms
+        final int n = rowBlocks.stream().mapToInt(rows -> rows.length / (1 + NR_OF_EVAL_TERMS)).sum();
+        int[] targets = new int[n];
+        int[] terms = new int[n * NR_OF_EVAL_TERMS];
+        int i = 0;
+        for (int[] rows : rowBlocks) {
+            for (int r = 0; r < rows.length; r += 1 + NR_OF_EVAL_TERMS, i++) {
+                targets[i] = rows[r];
+                System.arraycopy(rows, r + 1, terms, i * NR_OF_EVAL_TERMS, NR_OF_EVAL_TERMS);
+            }
+        }
+        return new Features(NR_OF_EVAL_TERMS, targets, terms);
+    }
+
+    private static int[] resultOf(Future<int[]> rows) throws InterruptedException {
+        try {
+            return rows.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Extraction of eval terms failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return per position with reference eval (and game not over): the reference eval and the eval terms
+     */
+    private static int[] extractRange(PositionCorpus corpus, long start, long end, ThreadLocal<ChessBoard> boards) {
+        int[] rows = new int[(int) (end - start) * (1 + NR_OF_EVAL_TERMS)];
+        int r = 0;
+        for (long i = start; i < end; i++) {
+            PositionCorpus.Position p = corpus.get(i);
+            if (p.getEval() == NOT_EVALUATED)
+                continue;
+            final String fen = p.getFEN();
+            ChessBoard board = boards.get();
+            if (board == null) {
+                board = new ChessBoard("EvalTuner", fen, false);   // the positions already run in parallel
+                boards.set(board);
+            }
+            else
+                board.updateBoardFromFEN(fen);
+            Move preMove = p.getPreMove();
+            if (preMove != null && !board.doMove(preMove.toString()))
+                continue;
+            int[] terms = board.getEvalTerms();
+            if (board.isGameOver())
+                continue;   // the eval of a finished game does not come from the terms
+            rows[r++] = p.getEval();
+            System.arraycopy(terms, 0, rows, r, NR_OF_EVAL_TERMS);
+            r += NR_OF_EVAL_TERMS;
+        }
+        return Arrays.copyOf(rows, r);
+    }
+
+    /**
+     * the logistic curve of the elo formula, so that large evals (e.g. of won positions) do not dominate the error
+     */
+    static double winProbability(double eval) {
+        return 1.0 / (1.0 + Math.pow(10.0, -eval / 400.0));
+    }
+
+    /**
+     * local search starting from the given weights
+     * @param out progress is printed here after each iteration, may be null
+     * @return the tuned weights
+     */
+    public double[] tune(double[] startWeights, int maxIterations, PrintStream out) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(nrOfThreads);
+        double[] w = startWeights.clone();
+        try {
+            final long t0 = System.nanoTime();
+            double bestError = error(w, workers);
+            long nrOfTrials = 1;
+            if (out != null)
+                out.printf(Locale.ROOT, "%d positions, error with start weights %.8f%n", features.size(), bestError);
+            double stepCp = 32;
+            for (int iteration = 1; iteration <= maxIterations && stepCp >= 1; iteration++) {
+                boolean improved = false;
+                for (int t = 0; t < w.length; t++) {
+                    if (termRms[t] == 0)
+                        continue;   // the term is always 0, its weight does not matter
+                    final double step = stepCp / termRms[t];
+                    w[t] += step;
+                    double e = error(w, workers);
+                    nrOfTrials++;
+                    if (e >= bestError) {
+                        w[t] -= 2 * step;
+                        e = error(w, workers);
+                        nrOfTrials++;
+                    }
+                    if (e < bestError) {
+                        bestError = e;
+                        improved = true;
+                    }
+                    else
+                        w[t] += step;
+                }
+                if (out != null)
+                    out.printf(Locale.ROOT, "Iteration %d: step %.1f cp, error %.8f, %.1f trials/sec%n",
+                               iteration, stepCp, bestError,
+                               nrOfTrials * 1e9 / Math.max(1, System.nanoTime() - t0));
+                if (!improved)
+                    stepCp /= 2;
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return w;
+    }
+
+    /**
+     * @return mean squared error of the win probabilities of the weighted terms against those of the reference evals
+     */
+    double error(double[] w, ExecutorService workers) throws InterruptedException {
+        final int n = features.size();
+        if (n == 0)
+            return 0.0;
+        final int nrOfTasks = Math.min(n, nrOfThreads * 4);
+        List<Callable<Double>> parts = new ArrayList<>(nrOfTasks);
+        for (int p = 0; p < nrOfTasks; p++) {
+            final int start = (int) ((long) n * p / nrOfTasks);
+            final int end = (int) ((long) n * (p + 1) / nrOfTasks);
+            parts.add(() -> squaredErrorSum(w, start, end));
+        }
+        double sum = 0;
+        for (Future<Double> part : workers.invokeAll(parts)) {
+            try {
+                sum += part.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Error calculation failed", e.getCause());
+            }
+        }
+        return sum / n;
+    }
+
+    private double squaredErrorSum(double[] w, int start, int end) {
+        final int nrOfTerms = features.nrOfTerms;
+        double sum = 0;
+        for (int i = start; i < end; i++) {
+            double eval = 0;
+            for (int t = 0; t < nrOfTerms; t++)
+                eval += w[t] * features.terms[i * nrOfTerms + t];
+            final double d = winProbability(eval) - targetProbabilities[i];
+            sum += d * d;
+        }
+        return sum;
+    }
+}
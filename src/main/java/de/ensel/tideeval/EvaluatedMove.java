@@ -70,6 +70,30 @@ public class EvaluatedMove extends Move {
         eval = new Evaluation(m.to());
     }
 
+    //// recycling by CalcArena
+
+    /**
+     * re-initializes a recycled EvaluatedMove to be like a fresh new EvaluatedMove(from, to)
+     * @return itself (but changed)
+     */
+    EvaluatedMove reinit(final int from, final int to) {
+        reinitMove(from, to);
+        eval.reinit(to);
+        isCheckGiving = false;
+        return this;
+    }
+
+    /**
+     * re-initializes a recycled EvaluatedMove to be like a fresh copy new EvaluatedMove(evMove)
+     * @return itself (but changed)
+     */
+    EvaluatedMove reinitFrom(final EvaluatedMove evMove) {
+        reinitMoveFrom(evMove);
+        eval.reinitFrom(evMove.eval());
+        isCheckGiving = evMove.isCheckGiving;
+        return this;
+    }
+
     /**
      * adds or substracts to/from an eval on a certain future level (passthrough to Evaluation)
      * beware: is unchecked
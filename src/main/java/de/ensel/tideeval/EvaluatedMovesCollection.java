@@ -22,6 +22,7 @@ import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 public class EvaluatedMovesCollection extends AbstractCollection<EvaluatedMove> {
     /**
@@ -40,6 +41,14 @@ public class EvaluatedMovesCollection extends AbstractCollection<EvaluatedMove>
     }
     // larger number are better for white, smaller is better for black)
 
+    public EvaluatedMovesCollection(EvaluatedMovesCollection o) {
+        this.evMoves = new HashMap<>(8);
+        for (Map.Entry<Integer, EvaluatedMove> e : o.evMoves.entrySet()) {
+            evMoves.put(e.getKey(), new EvaluatedMove(e.getValue()) );  // copy values
+        }
+        this.color = o.color;
+    }
+
     Collection<EvaluatedMove> getAllEvMoves() {
         if (evMoves == null || evMoves.isEmpty())
             return null;
@@ -37,7 +37,13 @@ public class Evaluation {
     public static final int MAX_EVALDEPTH = ChessBoard.MAX_INTERESTING_NROF_HOPS + 1;
     private int[] rawEval;
 
-    private final int target;
+    private int target;   // only changed when recycled by the CalcArena
+
+    /** set by the CalcArena (in debug mode only) to detect use of this Evaluation after the arena was reset */
+    private boolean released = false;
+
+    /** used for comparisons against "nothing", so no new Evaluation needs to be created for that */
+    private static final Evaluation ZERO_EVAL = new Evaluation(ANYWHERE);
 
     //// Constructors
     public Evaluation(int target) {
@@ -75,10 +81,12 @@ public class Evaluation {
 
     ////
     boolean isGoodForColor(boolean color) {
-        return isBetterForColorThan(color,new Evaluation(-1));
+        return isBetterForColorThan(color, ZERO_EVAL);
     }
 
     boolean isBetterForColorThan(boolean color, Evaluation oEval) {
+        checkNotReleased();
+        oEval.checkNotReleased();
         int i = 0;
         //if (DEBUGMSG_MOVESELECTION)
         //    debugPrint(DEBUGMSG_MOVESELECTION, "  comparing move eval " + this + " at "+i + " with " + oEval +": ");
@@ -149,6 +157,37 @@ public class Evaluation {
         return probablyBetter;
     }
 
+    //// recycling by CalcArena
+
+    /**
+     * re-initializes a recycled Evaluation to be like a fresh new Evaluation(target)
+     * @return itself (but changed)
+     */
+    Evaluation reinit(int target) {
+        this.target = target;
+        Arrays.fill(rawEval, 0);
+        return this;
+    }
+
+    /**
+     * re-initializes a recycled Evaluation to be like a fresh copy new Evaluation(oeval)
+     * @return itself (but changed)
+     */
+    Evaluation reinitFrom(Evaluation oeval) {
+        this.target = oeval.target;
+        System.arraycopy(oeval.rawEval, 0, rawEval, 0, MAX_EVALDEPTH);
+        return this;
+    }
+
+    void markReleased() {
+        released = true;
+    }
+
+    private void checkNotReleased() {
+        if (released)
+            throw new IllegalStateException("Evaluation used after its CalcArena was reset.");
+    }
+
     private void copy(Evaluation oeval) {
         assert (this.target == oeval.target);
         this.rawEval = Arrays.copyOf(oeval.rawEval, MAX_EVALDEPTH);
@@ -156,6 +195,7 @@ public class Evaluation {
 
     //// getter
     public int getEvalAt(int futureLevel) {
+        checkNotReleased();
         return rawEval[futureLevel];
     }
 
@@ -187,11 +227,13 @@ public class Evaluation {
      * @param futureLevel the future level from 0..max
      */
     public Evaluation addEval(int evalValue, int futureLevel) {
+        checkNotReleased();
         rawEval[futureLevel] += evalValue;
         return this;
     }
 
     public Evaluation addEval(Evaluation addEval) {
+        checkNotReleased();
         if (addEval != null) {
             for (int i = 0; i < MAX_EVALDEPTH; i++)
                 this.rawEval[i] += addEval.rawEval[i];
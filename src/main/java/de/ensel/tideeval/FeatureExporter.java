@@ -0,0 +1,477 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static de.ensel.tideeval.ChessBoard.EVAL_INSIGHT_LEVELS;
+import static de.ensel.tideeval.ConditionalDistance.INFINITE_DISTANCE;
+import static java.lang.System.exit;
+
+/**
+ * Exports what the boards know after their calculation (per position the evals of all insight levels and the
+ * best move, per square piece, clash eval, future clash evals, attacks and check blocking, per piece its type,
+ * position and mobility, and optionally per piece and square distance incl. nogo, relEval, clash contribution
+ * and mobility) for all positions of a PositionCorpus into a binary file for offline tuning.
+ * The positions are calculated by a pool of producer threads, each reusing one board. Every block of positions
+ * is stored column by column (so all values of one feature lie together) and optionally deflate-compressed;
+ * blocks are written in the order of the corpus. Reader reads such a file.
+ * File: header (magic, flags, schema: column names, types and values per position), the blocks (nr of
+ * positions, raw and stored length, data) and finally an index of the block offsets and its offset.
+ */
+public class FeatureExporter {
+    static final long MAGIC = 0x5469646546656131L;  // "TideFea1"
+    static final int DEFAULT_BLOCK_SIZE = 256;
+    static final int MAX_EXPORTED_PIECES = 32;       // the pieces with these ids, later promoted pieces are left out
+    static final int FUTURE_CLASH_LEVELS = 4;
+    static final int NO_VALUE = Short.MIN_VALUE;     // for short and int columns, like no relEval
+    static final int NO_DISTANCE = Byte.MAX_VALUE;
+
+    public enum ColumnType {
+        BYTE(1), SHORT(2), INT(4);
+
+        final int bytes;
+
+        ColumnType(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * a feature with valuesPerPosition values for each position (like 64 for per square features)
+     */
+    public static final class Column {
+        private final String name;
+        private final ColumnType type;
+        private final int valuesPerPosition;
+
+        Column(String name, ColumnType type, int valuesPerPosition) {
+            this.name = name;
+            this.type = type;
+            this.valuesPerPosition = valuesPerPosition;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ColumnType getType() {
+            return type;
+        }
+
+        public int getValuesPerPosition() {
+            return valuesPerPosition;
+        }
+    }
+
+    private final int nrOfThreads;
+    private final int blockSize;
+    private final boolean withVPieces;
+    private final int compressionLevel;     // 0: not compressed
+    private final List<Column> columns;
+    private final ThreadLocal<ChessBoard> boards = new ThreadLocal<>();
+
+    public FeatureExporter(int nrOfThreads, int blockSize, boolean withVPieces, int compressionLevel) {
+        this.nrOfThreads = nrOfThreads;
+        this.blockSize = blockSize;
+        this.withVPieces = withVPieces;
+        this.compressionLevel = compressionLevel;
+        columns = schema(withVPieces);
+    }
+
+    static List<Column> schema(boolean withVPieces) {
+        List<Column> c = new ArrayList<>();
+        for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++)
+            c.add(new Column("eval" + i, ColumnType.INT, 1));
+        c.add(new Column("expectedEval", ColumnType.INT, 1));
+        c.add(new Column("turn", ColumnType.BYTE, 1));              // 0: white, 1: black
+        c.add(new Column("bestMove", ColumnType.SHORT, 1));         // encoded like in PositionCorpus
+        c.add(new Column("expectedMove", ColumnType.SHORT, 1));
+        c.add(new Column("sqPiece", ColumnType.BYTE, NR_SQUARES));
+        c.add(new Column("sqClashEval", ColumnType.SHORT, NR_SQUARES));
+        for (int l = 0; l < FUTURE_CLASH_LEVELS; l++)
+            c.add(new Column("sqFutureClash" + l, ColumnType.SHORT, NR_SQUARES));
+        c.add(new Column("sqAttacksWhite", ColumnType.BYTE, NR_SQUARES));
+        c.add(new Column("sqAttacksBlack", ColumnType.BYTE, NR_SQUARES));
+        c.add(new Column("sqBlocksCheck", ColumnType.BYTE, NR_SQUARES));  // bit 0: for white, bit 1: for black
+        c.add(new Column("pcType", ColumnType.BYTE, MAX_EXPORTED_PIECES));
+        c.add(new Column("pcPos", ColumnType.BYTE, MAX_EXPORTED_PIECES));  // -1: not on the board
+        c.add(new Column("pcMobility", ColumnType.SHORT, MAX_EXPORTED_PIECES));
+        if (withVPieces) {
+            // per piece id, for each of its vPces on the 64 squares
+            c.add(new Column("vpDistance", ColumnType.BYTE, MAX_EXPORTED_PIECES * NR_SQUARES));  // <0: nogo
+            c.add(new Column("vpRelEval", ColumnType.SHORT, MAX_EXPORTED_PIECES * NR_SQUARES));
+            c.add(new Column("vpClashContrib", ColumnType.SHORT, MAX_EXPORTED_PIECES * NR_SQUARES));
+            c.add(new Column("vpMobility", ColumnType.SHORT, MAX_EXPORTED_PIECES * NR_SQUARES));
+        }
+        return c;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int nrOfThreads = Runtime.getRuntime().availableProcessors();
+        int blockSize = DEFAULT_BLOCK_SIZE;
+        boolean withVPieces = false;
+        int compressionLevel = Deflater.BEST_SPEED;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            switch (args[i]) {
+                case "-t" -> nrOfThreads = Integer.parseInt(args[++i]);
+                case "-b" -> blockSize = Integer.parseInt(args[++i]);
+                case "-c" -> compressionLevel = Integer.parseInt(args[++i]);
+                case "-v" -> withVPieces = true;
+                default -> i = args.length;
+            }
+        }
+        if (args.length - i != 2) {
+            System.out.println("Usage: FeatureExporter [-t nrOfThreads] [-b positionsPerBlock] "
+                               + "[-c compressionLevel 0-9] [-v (incl. per vPce features)] <corpusFile> <outFile>");
+            exit(3);
+        }
+        try (PositionCorpus corpus = new PositionCorpus(Path.of(args[i]))) {
+            final long t0 = System.nanoTime();
+            long n = new FeatureExporter(nrOfThreads, blockSize, withVPieces, compressionLevel)
+                    .export(corpus, Path.of(args[i + 1]));
+            final double seconds = (System.nanoTime() - t0) / 1e9;
+            System.out.printf("Exported %d positions in %.1f s = %.1f positions/sec with %d threads.%n",
+                              n, seconds, seconds > 0 ? n / seconds : 0.0, nrOfThreads);
+        }
+    }
+
+    /**
+     * exports the features of all positions of the corpus
+     * @return nr of exported positions
+     */
+    public long export(PositionCorpus corpus, Path outFile) throws IOException, InterruptedException {
+        ExecutorService producers = Executors.newFixedThreadPool(nrOfThreads);
+        Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+        List<Long> blockOffsets = new ArrayList<>();
+        try (FileChannel out = FileChannel.open(outFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, header());
+            for (long from = 0; from < corpus.size(); from += blockSize) {
+                final long start = from;
+                final long end = Math.min(corpus.size(), from + blockSize);
+                pending.add(producers.submit(() -> produceBlock(corpus, start, end)));
+                if (pending.size() > nrOfThreads * 2) {
+                    blockOffsets.add(out.position());
+                    writeFully(out, resultOf(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                blockOffsets.add(out.position());
+                writeFully(out, resultOf(pending.poll()));
+            }
+            final long indexOffset = out.position();
+            ByteBuffer index = ByteBuffer.allocate(4 + blockOffsets.size() * Long.BYTES + Long.BYTES);
+            index.putInt(blockOffsets.size());
+            for (long offset : blockOffsets)
+                index.putLong(offset);
+            index.putLong(indexOffset);
+            writeFully(out, index.flip());
+        } finally {
+            producers.shutdownNow();
+        }
+        return corpus.size();
+    }
+
+    private static ByteBuffer resultOf(Future<ByteBuffer> block) throws InterruptedException {
+        try {
+            return block.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Feature export failed", e.getCause());
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer b) throws IOException {
+        while (b.hasRemaining())
+            out.write(b);
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer h = ByteBuffer.allocate(16 + columns.size() * 64);
+        h.putLong(MAGIC).putInt(compressionLevel > 0 ? 1 : 0).putInt(columns.size());
+        for (Column c : columns) {
+            byte[] name = c.getName().getBytes(StandardCharsets.UTF_8);
+            h.put((byte) name.length).put(name).put((byte) c.getType().ordinal()).putInt(c.getValuesPerPosition());
+        }
+        return h.flip();
+    }
+
+    //// producing
+
+    private ByteBuffer produceBlock(PositionCorpus corpus, long from, long to) {
+        final int n = (int) (to - from);
+        ByteBuffer[] data = new ByteBuffer[columns.size()];
+        int rawLength = 0;
+        for (int c = 0; c < data.length; c++) {
+            Column col = columns.get(c);
+            data[c] = ByteBuffer.allocate(n * col.getValuesPerPosition() * col.getType().bytes);
+            rawLength += data[c].capacity();
+        }
+        for (long i = from; i < to; i++)
+            addPosition(corpus.get(i), data);
+        ByteBuffer raw = ByteBuffer.allocate(rawLength);
+        for (ByteBuffer d : data)
+            raw.put(d.array());
+        byte[] stored = raw.array();
+        int storedLength = rawLength;
+        if (compressionLevel > 0) {
+            Deflater deflater = new Deflater(compressionLevel);
+            deflater.setInput(raw.array());
+            deflater.finish();
+            stored = new byte[rawLength + 64];
+            storedLength = 0;
+            while (!deflater.finished()) {
+                if (storedLength == stored.length)
+                    stored = Arrays.copyOf(stored, stored.length * 2);
+                storedLength += deflater.deflate(stored, storedLength, stored.length - storedLength);
+            }
+            deflater.end();
+        }
+        ByteBuffer block = ByteBuffer.allocate(12 + storedLength);
+        block.putInt(n).putInt(rawLength).putInt(storedLength).put(stored, 0, storedLength);
+        return block.flip();
+    }
+
+    private ChessBoard settledBoard(PositionCorpus.Position p) {
+        final String fen = p.getFEN();
+        ChessBoard board = boards.get();
+        if (board == null) {
+            board = new ChessBoard("Features", fen, false);   // the producers already run in parallel
+            boards.set(board);
+        }
+        else
+            board.updateBoardFromFEN(fen);
+        Move preMove = p.getPreMove();
+        if (preMove != null)
+            board.doMove(preMove.toString());
+        return board;
+    }
+
+    /**
+     * appends the features of the position to the columns
+     */
+    private void addPosition(PositionCorpus.Position p, ByteBuffer[] data) {
+        ChessBoard board;
+        Move bestMove;
+        try {
+            board = settledBoard(p);
+            bestMove = board.getBestMove();
+        } catch (RuntimeException e) {
+            boards.remove();    // a broken board must not be reused
+            throw e;
+        }
+        int c = 0;
+        for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++)
+            data[c++].putInt(board.boardEvaluation(i));
+        data[c++].putInt(p.getEval());
+        data[c++].put((byte) (isWhite(board.getTurnCol()) ? 0 : 1));
+        data[c++].putShort(bestMove == null ? PositionCorpus.NO_MOVE
+                                            : PositionCorpus.encodeMove(bestMove.from(), bestMove.to(),
+                                                                        bestMove.promotesTo));
+        Move expectedMove = p.getExpectedMove();
+        data[c++].putShort(expectedMove == null ? PositionCorpus.NO_MOVE
+                                                : PositionCorpus.encodeMove(expectedMove.from(), expectedMove.to(),
+                                                                            expectedMove.promotesTo));
+        for (int pos = 0; pos < NR_SQUARES; pos++) {
+            Square sq = board.getBoardSquare(pos);
+            int sc = c;
+            data[sc++].put((byte) board.getPieceTypeAt(pos));
+            data[sc++].putShort(toShort(sq.clashEval()));
+            int[] futureClashEval = sq.futureClashEval();
+            for (int l = 0; l < FUTURE_CLASH_LEVELS; l++)
+                data[sc++].putShort(toShort(l < futureClashEval.length ? futureClashEval[l] : 0));
+            data[sc++].put((byte) sq.countDirectAttacksWithColor(WHITE));
+            data[sc++].put((byte) sq.countDirectAttacksWithColor(BLACK));
+            data[sc].put((byte) ((sq.blocksCheckFor(WHITE) ? 1 : 0) | (sq.blocksCheckFor(BLACK) ? 2 : 0)));
+        }
+        c += 5 + FUTURE_CLASH_LEVELS;
+        ChessPiece[] pieces = new ChessPiece[MAX_EXPORTED_PIECES];
+        for (Iterator<ChessPiece> it = board.getPiecesIterator(); it.hasNext(); ) {
+            ChessPiece pce = it.next();
+            if (pce != null && pce.getPieceID() < MAX_EXPORTED_PIECES)
+                pieces[pce.getPieceID()] = pce;
+        }
+        for (ChessPiece pce : pieces) {
+            data[c].put((byte) (pce == null ? EMPTY : pce.getPieceType()));
+            data[c + 1].put((byte) (pce == null ? -1 : pce.getPos()));
+            data[c + 2].putShort(toShort(pce == null ? 0 : pce.getMobilities()));
+        }
+        c += 3;
+        if (!withVPieces)
+            return;
+        for (int pid = 0; pid < MAX_EXPORTED_PIECES; pid++) {
+            for (int pos = 0; pos < NR_SQUARES; pos++) {
+                final Square sq = board.getBoardSquare(pos);
+                VirtualPieceOnSquare vPce = pieces[pid] == null ? null : sq.getvPiece(pid);
+                if (vPce == null) {
+                    data[c].put((byte) NO_DISTANCE);
+                    data[c + 1].putShort((short) NO_VALUE);
+                    data[c + 2].putShort((short) 0);
+                    data[c + 3].putShort((short) 0);
+                    continue;
+                }
+                final int d = sq.getDistanceToPieceId(pid);
+                final int distance = d >= INFINITE_DISTANCE ? NO_DISTANCE : Math.min(d, NO_DISTANCE - 1);
+                data[c].put((byte) (sq.hasNoGoFromPieceId(pid) && distance != NO_DISTANCE ? -distance
+                                                                                          : distance));
+                data[c + 1].putShort(vPce.hasRelEval() ? toShort(vPce.getRelEval()) : (short) NO_VALUE);
+                data[c + 2].putShort(toShort(vPce.getClashContribOrZero()));
+                data[c + 3].putShort(toShort(vPce.getMobility()));
+            }
+        }
+    }
+
+    private static short toShort(int v) {
+        return (short) Math.max(NO_VALUE + 1, Math.min(Short.MAX_VALUE, v));
+    }
+
+    //// reading
+
+    /**
+     * Reads the files written by FeatureExporter, block by block.
+     */
+    public static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final boolean compressed;
+        private final List<Column> columns = new ArrayList<>();
+        private final long[] blockOffsets;
+
+        public Reader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            ByteBuffer h = read(0, (int) Math.min(channel.size(), 1 << 16));
+            if (h.getLong() != MAGIC) {
+                channel.close();
+                throw new IOException("Not a feature file: " + file);
+            }
+            compressed = h.getInt() != 0;
+            int nrOfColumns = h.getInt();
+            for (int i = 0; i < nrOfColumns; i++) {
+                byte[] name = new byte[h.get()];
+                h.get(name);
+                columns.add(new Column(new String(name, StandardCharsets.UTF_8),
+                                       ColumnType.values()[h.get()], h.getInt()));
+            }
+            long indexOffset = read(channel.size() - Long.BYTES, Long.BYTES).getLong();
+            ByteBuffer index = read(indexOffset, (int) (channel.size() - indexOffset));
+            blockOffsets = new long[index.getInt()];
+            for (int b = 0; b < blockOffsets.length; b++)
+                blockOffsets[b] = index.getLong();
+        }
+
+        private ByteBuffer read(long offset, int length) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(length);
+            while (b.hasRemaining())
+                if (channel.read(b, offset + b.position()) < 0)
+                    throw new IOException("Feature file is truncated");
+            return b.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        public List<Column> getColumns() {
+            return Collections.unmodifiableList(columns);
+        }
+
+        public int getNrOfBlocks() {
+            return blockOffsets.length;
+        }
+
+        public Block readBlock(int b) throws IOException {
+            ByteBuffer head = read(blockOffsets[b], 12);
+            final int n = head.getInt();
+            final int rawLength = head.getInt();
+            final int storedLength = head.getInt();
+            ByteBuffer stored = read(blockOffsets[b] + 12, storedLength);
+            byte[] raw = stored.array();
+            if (compressed) {
+                raw = new byte[rawLength];
+                Inflater inflater = new Inflater();
+                inflater.setInput(stored.array());
+                try {
+                    int len = 0;
+                    while (len < rawLength && !inflater.finished())
+                        len += inflater.inflate(raw, len, rawLength - len);
+                } catch (DataFormatException e) {
+                    throw new IOException("Broken block " + b, e);
+                } finally {
+                    inflater.end();
+                }
+            }
+            return new Block(n, ByteBuffer.wrap(raw));
+        }
+
+        /**
+         * The positions of one block, with the values of each column stored together.
+         */
+        public final class Block {
+            private final int nrOfPositions;
+            private final ByteBuffer data;
+            private final int[] columnStarts;
+
+            private Block(int nrOfPositions, ByteBuffer data) {
+                this.nrOfPositions = nrOfPositions;
+                this.data = data;
+                columnStarts = new int[columns.size()];
+                int start = 0;
+                for (int c = 0; c < columns.size(); c++) {
+                    columnStarts[c] = start;
+                    start += nrOfPositions * columns.get(c).getValuesPerPosition() * columns.get(c).getType().bytes;
+                }
+            }
+
+            public int getNrOfPositions() {
+                return nrOfPositions;
+            }
+
+            /**
+             * @return i-th value of the column for the position (0..getNrOfPositions()-1 in this block)
+             */
+            public int get(String columnName, int position, int i) {
+                for (int c = 0; c < columns.size(); c++) {
+                    Column col = columns.get(c);
+                    if (!col.getName().equals(columnName))
+                        continue;
+                    final int at = columnStarts[c] + (position * col.getValuesPerPosition() + i) * col.getType().bytes;
+                    return switch (col.getType()) {
+                        case BYTE -> data.get(at);
+                        case SHORT -> data.getShort(at);
+                        case INT -> data.getInt(at);
+                    };
+                }
+                throw new IllegalArgumentException("No column " + columnName);
+            }
+        }
+    }
+}
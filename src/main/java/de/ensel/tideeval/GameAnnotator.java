@@ -0,0 +1,190 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static de.ensel.tideeval.ChessBoard.EVAL_INSIGHT_LEVELS;
+import static java.lang.System.exit;
+
+/**
+ * Annotates whole games: each game of a PGN (or .cts) file is replayed on one board with doMove(), and for every
+ * ply the engine's best move and alternatives for the position before the move (see ChessBoard.getBestMoves())
+ * and boardEvaluation() of all insight levels for the position after the move are recorded.
+ * Games are annotated concurrently, but written in the order of the input file, as annotated PGN (the comment
+ * after each move contains [%eval], the evals of all levels and the engine's choice) or as tab-separated
+ * columns (one line per ply).
+ */
+public class GameAnnotator {
+    public enum Format { PGN, TSV }
+
+    private final int nrOfThreads;
+    private final int nrOfAlternatives;
+    private final Format format;
+
+    public GameAnnotator(int nrOfThreads, int nrOfAlternatives, Format format) {
+        this.nrOfThreads = nrOfThreads;
+        this.nrOfAlternatives = nrOfAlternatives;
+        this.format = format;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int nrOfThreads = Runtime.getRuntime().availableProcessors();
+        int nrOfAlternatives = 2;
+        Format format = Format.PGN;
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+            switch (args[i]) {
+                case "-t" -> nrOfThreads = Integer.parseInt(args[i + 1]);
+                case "-a" -> nrOfAlternatives = Integer.parseInt(args[i + 1]);
+                case "-f" -> format = Format.valueOf(args[i + 1].toUpperCase());
+                default -> i = args.length;
+            }
+        }
+        if (args.length - i != 2) {
+            System.out.println("Usage: GameAnnotator [-t nrOfThreads] [-a nrOfAlternatives] [-f pgn|tsv] "
+                               + "<games.pgn> <outFile>");
+            exit(3);
+        }
+        try (Writer out = new BufferedWriter(new FileWriter(args[i + 1], StandardCharsets.UTF_8))) {
+            long nrOfGames = new GameAnnotator(nrOfThreads, nrOfAlternatives, format).annotate(Path.of(args[i]), out);
+            System.out.println("Annotated " + nrOfGames + " games.");
+        }
+    }
+
+    /**
+     * annotates all games of the file and writes them to out
+     * @return nr of games
+     */
+    public long annotate(Path file, Writer out) throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(nrOfThreads);
+        // results in input order, at most a few per thread are waiting to be written
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        long nrOfGames = 0;
+        try (PgnGameReader reader = new PgnGameReader(file)) {
+            if (format == Format.TSV)
+                out.write(tsvHeader());
+            while (reader.hasNext()) {
+                final PgnGameReader.Game game = reader.next();
+                final long gameNr = ++nrOfGames;
+                pending.add(workers.submit(() -> annotateGame(game, gameNr)));
+                if (pending.size() > nrOfThreads * 4)
+                    out.write(resultOf(pending.poll()));
+            }
+            while (!pending.isEmpty())
+                out.write(resultOf(pending.poll()));
+        } finally {
+            workers.shutdownNow();
+        }
+        return nrOfGames;
+    }
+
+    private static String resultOf(Future<String> annotatedGame) throws InterruptedException {
+        try {
+            return annotatedGame.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Annotation failed", e.getCause());
+        }
+    }
+
+    private static String tsvHeader() {
+        StringBuilder h = new StringBuilder("game\tply\tmove\tbestMove\talternatives");
+        for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++)
+            h.append("\teval").append(i);
+        return h.append('\n').toString();
+    }
+
+    /**
+     * @return the annotated game in the output format
+     */
+    String annotateGame(PgnGameReader.Game game, long gameNr) {
+        Map<String,String> tags = game.getTags();
+        String fen = tags.getOrDefault("FEN", FENPOS_STARTPOS);
+        ChessBoard board = new ChessBoard("Game " + gameNr, fen, false);   // the games already run in parallel
+        StringBuilder s = new StringBuilder();
+        if (format == Format.PGN) {
+            for (Map.Entry<String,String> tag : tags.entrySet())
+                s.append('[').append(tag.getKey()).append(" \"").append(tag.getValue()).append("\"]\n");
+            s.append('\n');
+        }
+        int[] evals = new int[EVAL_INSIGHT_LEVELS];
+        for (int ply = 0; ply < game.getNrOfMoves(); ply++) {
+            final String move = game.getMove(ply);
+            final boolean whiteMoves = isWhite(board.getTurnCol());
+            final int moveNr = board.getFullMoves();
+            // the engine's choice in the position before the move
+            List<EvaluatedMove> bestMoves = board.getBestMoves(nrOfAlternatives + 1);
+            String bestMove = bestMoves.isEmpty() ? "-" : new Move(bestMoves.get(0)).toString();
+            StringBuilder alternatives = new StringBuilder();
+            for (int i = 1; i < bestMoves.size(); i++)
+                alternatives.append(i > 1 ? " " : "").append(new Move(bestMoves.get(i)))
+                        .append(format == Format.PGN
+                                ? " (" + pawns(board.boardEvaluationWithMove(bestMoves.get(i))) + ")" : "");
+            if (!board.doMove(move)) {
+                if (format == Format.PGN)
+                    s.append(ply == 0 ? "" : " ").append("{ annotation stopped: cannot play ").append(move)
+                     .append(" }");
+                break;
+            }
+            // the position after the move
+            for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++)
+                evals[i] = board.boardEvaluation(i);
+            if (format == Format.TSV) {
+                s.append(gameNr).append('\t').append(ply + 1).append('\t').append(move).append('\t')
+                 .append(bestMove).append('\t').append(alternatives);
+                for (int eval : evals)
+                    s.append('\t').append(eval);
+                s.append('\n');
+                continue;
+            }
+            if (whiteMoves)
+                s.append(ply == 0 ? "" : " ").append(moveNr).append(". ");
+            else if (ply == 0)
+                s.append(moveNr).append("... ");
+            else
+                s.append(' ');
+            s.append(move).append(" { [%eval ").append(pawns(board.boardEvaluation())).append("] [%evals");
+            for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++)
+                s.append(i == 0 ? " " : ",").append(evals[i]);
+            s.append("] best: ").append(bestMove);
+            if (alternatives.length() > 0)
+                s.append(", alternatives: ").append(alternatives);
+            s.append(" }");
+        }
+        if (format == Format.PGN)
+            s.append(' ').append(tags.getOrDefault("Result", "*")).append("\n\n");
+        return s.toString();
+    }
+
+    /**
+     * @return eval in centipawns as pawns with 2 decimals, like in [%eval ...]
+     */
+    private static String pawns(int eval) {
+        return String.format(Locale.ROOT, "%.2f", eval / 100.0);
+    }
+}
@@ -23,6 +23,10 @@ import static java.lang.System.*;
 public class Main {
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("bench")) {
+            Bench.run(out);
+            exit(0);
+        }
         ChessBoard board = new ChessBoard();
         exit(0);
     }
@@ -98,6 +98,27 @@ public class Move {
     }
 
 
+    /**
+     * makes this Move like a fresh new Move(from, to) - for recycled Moves
+     */
+    protected void reinitMove(int from, int to) {
+        this.from = from;
+        this.to = to;
+        this.promotesTo = EMPTY;
+        this.isBasicallyLegal = false;
+    }
+
+    /**
+     * makes this Move a copy of origin - like the copy constructor, but for recycled Moves
+     * @param origin Move to copy from
+     */
+    protected void reinitMoveFrom(Move origin) {
+        this.from = origin.from;
+        this.to = origin.to;
+        this.promotesTo = origin.promotesTo;
+        this.isBasicallyLegal = origin.isBasicallyLegal;
+    }
+
     //// getter + simple information
 
     public int from() {
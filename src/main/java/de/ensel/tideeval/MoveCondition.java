@@ -23,24 +23,57 @@ import java.util.Objects;
 import static de.ensel.tideeval.ChessBasics.*;
 
 /**
- * provides storage and calculation regarding conditions for distances to be(come) valid
+ * provides storage and calculation regarding conditions for distances to be(come) valid.
+ * MoveConditions are immutable and interned: all possible (from, to, color) combinations are created once
+ * and then shared - use the factory methods of(...) instead of constructors.
  */
 class MoveCondition extends Move {
     public final int colIndexCond;
 
-    MoveCondition(final int fromCond, final int toCond) {
-        super(fromCond, toCond);
-        colIndexCond = ANYWHERE;
+    /** all conditions, indexed by [from+1][to+1][colIndexCond+1], so that ANYWHERE maps to index 0 */
+    private static final MoveCondition[][][] internedConditions = new MoveCondition[NR_SQUARES+1][NR_SQUARES+1][3];
+    static {
+        for (int f = ANYWHERE; f < NR_SQUARES; f++)
+            for (int t = ANYWHERE; t < NR_SQUARES; t++)
+                for (int ci = ANYWHERE; ci <= 1; ci++)
+                    internedConditions[f+1][t+1][ci+1] = new MoveCondition(f, t, ci);
     }
 
-    MoveCondition(final int fromCond, final int toCond, final boolean colorCond) {
+    private MoveCondition(final int fromCond, final int toCond, final int colIndexCond) {
         super(fromCond, toCond);
-        this.colIndexCond = colorIndex(colorCond);
+        this.colIndexCond = colIndexCond;
+    }
+
+    static MoveCondition of(final int fromCond, final int toCond) {
+        return of(fromCond, toCond, ANYWHERE);
+    }
+
+    static MoveCondition of(final int fromCond, final int toCond, final boolean colorCond) {
+        return of(fromCond, toCond, colorIndex(colorCond));
+    }
+
+    private static MoveCondition of(final int fromCond, final int toCond, final int colIndexCond) {
+        if (fromCond < ANYWHERE || fromCond >= NR_SQUARES
+                || toCond < ANYWHERE || toCond >= NR_SQUARES)
+            return new MoveCondition(fromCond, toCond, colIndexCond);  // should not happen, but stay safe
+        return internedConditions[fromCond+1][toCond+1][colIndexCond+1];
     }
 
-    MoveCondition(final MoveCondition baseCondition) {
-        super(baseCondition.from(), baseCondition.to());
-        this.colIndexCond = baseCondition.colIndexCond;
+    //// interned instances are shared, so they must never change
+
+    @Override
+    public void setFrom(int from) {
+        throw new UnsupportedOperationException("MoveConditions are immutable");
+    }
+
+    @Override
+    public void setTo(int to) {
+        throw new UnsupportedOperationException("MoveConditions are immutable");
+    }
+
+    @Override
+    public void setPromotesTo(int pceType) {
+        throw new UnsupportedOperationException("MoveConditions are immutable");
     }
 
     @Override
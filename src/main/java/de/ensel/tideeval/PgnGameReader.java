@@ -0,0 +1,493 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static de.ensel.tideeval.ChessBasics.*;
+
+/**
+ * Streaming reader for large game files: PGN (header tags, SAN moves, [%eval ...] comments) or the .cts format
+ * of ChessGameReader (one game per line, each move followed by its eval).
+ * The file is memory-mapped window by window and tokenized directly in the mapped bytes. Per game only the
+ * positions of its moves and their evals are collected, Strings are only created when getMove() or getTag() is
+ * called. So games are yielded lazily and files of several GB can be read.
+ * For parallel consumers, splitAtGameBoundaries() divides a file into ranges, each of which can be read by its
+ * own reader.
+ */
+public class PgnGameReader implements Iterator<PgnGameReader.Game>, Closeable {
+    static final long DEFAULT_WINDOW_BYTES = 1L << 30;
+    static final int MAX_GAME_BYTES = 1 << 20;      // a game must fit into this, otherwise it is cut off
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long rangeEnd;     // games that start before this offset are read
+    private final long windowBytes;
+    private final boolean isPgn;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long pos;                // file offset of the next byte to read
+    private Game nextGame = null;
+
+    /**
+     * reads all games of the file
+     */
+    public PgnGameReader(Path file) throws IOException {
+        this(file, 0, Long.MAX_VALUE, DEFAULT_WINDOW_BYTES);
+    }
+
+    /**
+     * reads the games of the file, that start in the range [from, to), see splitAtGameBoundaries()
+     */
+    public PgnGameReader(Path file, long from, long to) throws IOException {
+        this(file, from, to, DEFAULT_WINDOW_BYTES);
+    }
+
+    PgnGameReader(Path file, long from, long to, long windowBytes) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        fileSize = channel.size();
+        rangeEnd = Math.min(to, fileSize);
+        this.windowBytes = windowBytes;
+        mapWindow(0);
+        isPgn = firstNonBlankByte() == '[';
+        pos = from;
+        if (from > 0) {
+            mapWindow(Math.max(0, from - MAX_GAME_BYTES));   // incl. the line before from
+            pos = nextGameStart(from);
+        }
+    }
+
+    /**
+     * divides the file into nrOfParts ranges of about the same size, each starting at the beginning of a game
+     * @return nrOfParts+1 ascending file offsets, part i are the games starting in [offsets[i], offsets[i+1])
+     */
+    public static long[] splitAtGameBoundaries(Path file, int nrOfParts) throws IOException {
+        long[] offsets = new long[nrOfParts + 1];
+        try (PgnGameReader reader = new PgnGameReader(file)) {
+            for (int i = 1; i < nrOfParts; i++) {
+                long approx = reader.fileSize * i / nrOfParts;
+                if (approx <= offsets[i - 1]) {
+                    offsets[i] = offsets[i - 1];
+                    continue;
+                }
+                reader.mapWindow(Math.max(0, approx - MAX_GAME_BYTES));
+                offsets[i] = Math.max(offsets[i - 1], reader.nextGameStart(approx));
+            }
+            offsets[nrOfParts] = reader.fileSize;
+        }
+        return offsets;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextGame == null)
+            nextGame = readGame();
+        return nextGame != null;
+    }
+
+    @Override
+    public Game next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Game g = nextGame;
+        nextGame = null;
+        return g;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    //// the mapped windows
+
+    private void mapWindow(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(fileSize - start, windowBytes + MAX_GAME_BYTES));
+    }
+
+    /**
+     * @return byte at file offset p or -1 outside the current window
+     */
+    private int byteAt(long p) {
+        long i = p - windowStart;
+        return i >= 0 && i < window.limit() ? window.get((int) i) : -1;
+    }
+
+    private int firstNonBlankByte() {
+        for (long p = windowStart; ; p++) {
+            int c = byteAt(p);
+            if (c < 0 || !isBlank(c))
+                return c;
+        }
+    }
+
+    private static boolean isBlank(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private boolean isLineStart(long p) {
+        return p == 0 || byteAt(p - 1) == '\n';
+    }
+
+    /**
+     * @return file offset of the first game starting at or after p (in the current window), i.e. for .cts the
+     * next line and for PGN a tag line that does not follow another tag line.
+     */
+    private long nextGameStart(long p) {
+        // to the next line start
+        while (!isLineStart(p) && byteAt(p) >= 0)
+            p++;
+        if (!isPgn)
+            return byteAt(p) < 0 ? windowStart + window.limit() : p;
+        boolean prevLineIsTag = p > 0 && lineStartOf(p - 1) >= windowStart && byteAt(lineStartOf(p - 1)) == '[';
+        while (byteAt(p) >= 0) {
+            boolean isTag = byteAt(p) == '[';
+            if (isTag && !prevLineIsTag)
+                return p;
+            if (!isEmptyLine(p))
+                prevLineIsTag = isTag;
+            while (byteAt(p) >= 0 && byteAt(p) != '\n')
+                p++;
+            if (byteAt(p) >= 0)
+                p++;
+        }
+        return p;
+    }
+
+    private long lineStartOf(long p) {
+        while (p > windowStart && byteAt(p - 1) != '\n')
+            p--;
+        return p;
+    }
+
+    private boolean isEmptyLine(long p) {
+        int c;
+        while ((c = byteAt(p)) == ' ' || c == '\t' || c == '\r')
+            p++;
+        return c == '\n' || c < 0;
+    }
+
+    //// parsing
+
+    private Game readGame() {
+        try {
+            // skip blank lines
+            while (pos < rangeEnd) {
+                if (pos - windowStart >= windowBytes)
+                    mapWindow(pos);
+                int c = byteAt(pos);
+                if (c < 0)
+                    return null;
+                if (!isBlank(c))
+                    break;
+                pos++;
+            }
+            if (pos >= rangeEnd)
+                return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot map " + pos + " of game file", e);
+        }
+        Game g = new Game(window, windowStart, pos);
+        if (isPgn)
+            pos = readTags(g, pos);
+        pos = readMoves(g, pos);
+        return g;
+    }
+
+    private long readTags(Game g, long p) {
+        g.tagsStart = p;
+        while (byteAt(p) == '[' || (byteAt(p) >= 0 && isBlank(byteAt(p)) && !isPgnMoveTextAhead(p))) {
+            while (byteAt(p) >= 0 && byteAt(p) != '\n')
+                p++;
+            if (byteAt(p) >= 0)
+                p++;
+        }
+        g.tagsEnd = p;
+        return p;
+    }
+
+    /**
+     * @return true if the first non-blank byte from p on does not start a tag
+     */
+    private boolean isPgnMoveTextAhead(long p) {
+        int c;
+        while ((c = byteAt(p)) >= 0 && isBlank(c))
+            p++;
+        return c != '[';
+    }
+
+    private long readMoves(Game g, long p) {
+        int c;
+        while ((c = byteAt(p)) >= 0) {
+            if (c == '\n') {
+                p++;
+                if (!isPgn)
+                    break;   // one game per line
+                continue;
+            }
+            if (isBlank(c)) {
+                p++;
+                continue;
+            }
+            if (isPgn && c == '[' && isLineStart(p))
+                break;   // next game without result
+            if (c == '{') {
+                long end = p + 1;
+                while (byteAt(end) >= 0 && byteAt(end) != '}')
+                    end++;
+                if (isPgn)
+                    parseEvalComment(g, p + 1, end);
+                else if (g.nrOfMoves > 0 && g.evals[g.nrOfMoves - 1] == NOT_EVALUATED)
+                    g.evals[g.nrOfMoves - 1] = OPPONENT_IS_CHECKMATE;  // like ChessGameReader: game ends after this move
+                p = byteAt(end) >= 0 ? end + 1 : end;
+                continue;
+            }
+            if (c == ';') {
+                while (byteAt(p) >= 0 && byteAt(p) != '\n')
+                    p++;
+                continue;
+            }
+            if (c == '(') {
+                p = skipVariation(p);
+                continue;
+            }
+            long end = p;
+            while ((c = byteAt(end)) >= 0 && !isBlank(c) && c != '{' && c != '(' && c != ')' && c != ';')
+                end++;
+            if (isResult(p, end)) {
+                p = end;
+                if (isPgn)
+                    break;
+                continue;
+            }
+            if (byteAt(p) == '$' || byteAt(p) == ')') {
+                p = Math.max(end, p + 1);   // NAG or stray bracket
+                continue;
+            }
+            long t = p;
+            if (isDigit(byteAt(t))) {
+                while (isDigit(byteAt(t)))
+                    t++;
+                if (byteAt(t) == '.' && !isDigit(byteAt(t + 1))) {
+                    // move number, maybe directly followed by the move
+                    while (byteAt(t) == '.')
+                        t++;
+                    if (t < end)
+                        g.addMove(t, end);
+                    p = end;
+                    continue;
+                }
+            }
+            if (isDigit(byteAt(p)) || byteAt(p) == '-' || byteAt(p) == '+' || byteAt(p) == '#') {
+                // an eval (of the .cts format)
+                if (g.nrOfMoves > 0)
+                    g.evals[g.nrOfMoves - 1] = parseEval(p, end);
+            }
+            else
+                g.addMove(p, end);
+            p = end;
+        }
+        return p;
+    }
+
+    private long skipVariation(long p) {
+        int depth = 0;
+        int c;
+        while ((c = byteAt(p)) >= 0) {
+            p++;
+            if (c == '{') {
+                while (byteAt(p) >= 0 && byteAt(p) != '}')
+                    p++;
+                p++;
+            }
+            else if (c == '(')
+                depth++;
+            else if (c == ')' && --depth == 0)
+                break;
+        }
+        return p;
+    }
+
+    private boolean isResult(long p, long end) {
+        return matches(p, end, "1-0") || matches(p, end, "0-1") || matches(p, end, "1/2-1/2") || matches(p, end, "*");
+    }
+
+    private boolean matches(long p, long end, String s) {
+        if (end - p != s.length())
+            return false;
+        for (int i = 0; i < s.length(); i++)
+            if (byteAt(p + i) != s.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * looks for [%eval x] in the comment [p, end) and sets it as eval of the last move
+     */
+    private void parseEvalComment(Game g, long p, long end) {
+        for (; p + 6 < end; p++) {
+            if (byteAt(p) == '[' && byteAt(p + 1) == '%' && matches(p + 2, p + 6, "eval")) {
+                long v = p + 6;
+                while (v < end && isBlank(byteAt(v)))
+                    v++;
+                long vEnd = v;
+                while (vEnd < end && byteAt(vEnd) != ']' && byteAt(vEnd) != ',' && !isBlank(byteAt(vEnd)))
+                    vEnd++;
+                if (g.nrOfMoves > 0 && vEnd > v)
+                    g.evals[g.nrOfMoves - 1] = parseEval(v, vEnd);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return eval in centipawns of a pawn value like "-1.37" or a mate in n like "#-3", see ChessGameReader
+     */
+    private int parseEval(long p, long end) {
+        boolean mate = byteAt(p) == '#';
+        if (mate)
+            p++;
+        boolean negative = byteAt(p) == '-';
+        if (negative || byteAt(p) == '+')
+            p++;
+        int units = 0;
+        while (p < end && isDigit(byteAt(p)))
+            units = units * 10 + byteAt(p++) - '0';
+        if (mate)
+            return negative ? WHITE_IS_CHECKMATE + units * CHECK_IN_N_DELTA
+                            : BLACK_IS_CHECKMATE - units * CHECK_IN_N_DELTA;
+        int cents = 0;
+        if (p < end && byteAt(p) == '.') {
+            p++;
+            for (int i = 0; i < 2; i++)
+                cents = cents * 10 + (p < end && isDigit(byteAt(p)) ? byteAt(p++) - '0' : 0);
+        }
+        int eval = units * 100 + cents;
+        return negative ? -eval : eval;
+    }
+
+    /**
+     * One game of the file. Its moves and tags are only decoded to Strings when asked for.
+     */
+    public static final class Game {
+        private final MappedByteBuffer window;
+        private final long windowStart;
+        private final long offset;
+        private long tagsStart;
+        private long tagsEnd;
+        private int nrOfMoves = 0;
+        private int[] moveStarts = new int[100];   // relative to the window, with the move length in moveLengths
+        private byte[] moveLengths = new byte[100];
+        private int[] evals = new int[100];
+
+        private Game(MappedByteBuffer window, long windowStart, long offset) {
+            this.window = window;
+            this.windowStart = windowStart;
+            this.offset = offset;
+            tagsStart = offset;   // no tags, unless readTags() finds some (never in .cts files)
+            tagsEnd = offset;
+        }
+
+        private void addMove(long start, long end) {
+            // annotations like "?!" are not part of the move
+            while (end > start && (window.get((int) (end - 1 - windowStart)) == '?'
+                                   || window.get((int) (end - 1 - windowStart)) == '!'))
+                end--;
+            if (end == start)
+                return;
+            if (nrOfMoves == moveStarts.length) {
+                moveStarts = Arrays.copyOf(moveStarts, nrOfMoves * 2);
+                moveLengths = Arrays.copyOf(moveLengths, nrOfMoves * 2);
+                evals = Arrays.copyOf(evals, nrOfMoves * 2);
+            }
+            moveStarts[nrOfMoves] = (int) (start - windowStart);
+            moveLengths[nrOfMoves] = (byte) Math.min(end - start, Byte.MAX_VALUE);
+            evals[nrOfMoves] = NOT_EVALUATED;
+            nrOfMoves++;
+        }
+
+        /**
+         * @return file offset where the game starts
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getNrOfMoves() {
+            return nrOfMoves;
+        }
+
+        /**
+         * @return i-th move (half move, starting with 0) in SAN, like written in the file
+         */
+        public String getMove(int i) {
+            return string(moveStarts[i], moveLengths[i]);
+        }
+
+        /**
+         * @return eval in centipawns given after the i-th move or NOT_EVALUATED
+         */
+        public int getEval(int i) {
+            return evals[i];
+        }
+
+        /**
+         * @return value of the header tag or null if there is none (always for .cts games)
+         */
+        public String getTag(String name) {
+            return getTags().get(name);
+        }
+
+        public Map<String,String> getTags() {
+            Map<String,String> tags = new LinkedHashMap<>();
+            String section = string((int) (tagsStart - windowStart), (int) (tagsEnd - tagsStart));
+            for (String line : section.split("\n")) {
+                line = line.trim();
+                int quote = line.indexOf('"');
+                if (line.startsWith("[") && quote > 1)
+                    tags.put(line.substring(1, quote).trim(),
+                             line.substring(quote + 1, Math.max(quote + 1, line.lastIndexOf('"'))));
+            }
+            return tags;
+        }
+
+        private String string(int start, int length) {
+            byte[] bytes = new byte[length];
+            window.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of the results of move selection per position (best move, top moves and legal move counts - the
+ * board evaluation follows from them), so that positions that are seen again (a GUI re-querying the same position,
+ * repetitions, same openings in the next game...) do not need a new calcBestMove().
+ * Entries are found by a 64-bit key (ChessBoard.positionCacheKey(getPositionCacheDescription())), but also carry the full
+ * position description, so a key collision can never return the result of a different position.
+ * Eviction follows the CLOCK algorithm: entries that were used since the clock hand last passed them get a
+ * second chance. Used by the boards it is given to (see ChessBoard.setPositionCache()), e.g. all boards of one
+ * ChessBoardController incl. its pondering copies, so it is synchronized.
+ */
+final class PositionCache {
+
+    /**
+     * immutable (by convention - do not change the moves) cached result for one position
+     */
+    static final class Entry {
+        final long key;
+        final String position;
+        final EvaluatedMove bestMove;
+        final List<EvaluatedMove> topMoves;
+        final List<EvaluatedMove> opponentMoves;
+        final int nrOfLegalMovesWhite;
+        final int nrOfLegalMovesBlack;
+
+        Entry(final long key, final String position,
+              final EvaluatedMove bestMove, final List<EvaluatedMove> topMoves,
+              final List<EvaluatedMove> opponentMoves,
+              final int nrOfLegalMovesWhite, final int nrOfLegalMovesBlack) {
+            this.key = key;
+            this.position = position;
+            this.bestMove = bestMove;
+            this.topMoves = Collections.unmodifiableList(topMoves);
+            this.opponentMoves = Collections.unmodifiableList(opponentMoves);
+            this.nrOfLegalMovesWhite = nrOfLegalMovesWhite;
+            this.nrOfLegalMovesBlack = nrOfLegalMovesBlack;
+        }
+    }
+
+    private final Entry[] slots;
+    private final boolean[] referenced;
+    private final Map<Long, Integer> slotOfKey;
+    private int clockHand = 0;
+    private int size = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long collisions = 0;
+    private long evictions = 0;
+
+    PositionCache(final int capacity) {
+        slots = new Entry[capacity];
+        referenced = new boolean[capacity];
+        slotOfKey = new HashMap<>(capacity + (capacity >> 1));
+    }
+
+    /**
+     * @return the cached entry for this position or null if unknown
+     */
+    synchronized Entry get(final long key, final String position) {
+        Integer slot = slotOfKey.get(key);
+        if (slot == null) {
+            misses++;
+            return null;
+        }
+        Entry e = slots[slot];
+        if (!e.position.equals(position)) {
+            collisions++;
+            misses++;
+            return null;
+        }
+        referenced[slot] = true;
+        hits++;
+        return e;
+    }
+
+    synchronized void put(final Entry e) {
+        Integer slot = slotOfKey.get(e.key);
+        if (slot == null) {
+            if (size < slots.length) {
+                slot = size++;
+            } else {
+                // CLOCK: pass by all recently used entries (taking away their second chance) and replace the first unused
+                while (referenced[clockHand]) {
+                    referenced[clockHand] = false;
+                    clockHand = (clockHand + 1) % slots.length;
+                }
+                slot = clockHand;
+                clockHand = (clockHand + 1) % slots.length;
+                slotOfKey.remove(slots[slot].key);
+                evictions++;
+            }
+            slotOfKey.put(e.key, slot);
+        }
+        slots[slot] = e;
+        referenced[slot] = false;
+    }
+
+    synchronized void clear() {
+        Arrays.fill(slots, null);
+        Arrays.fill(referenced, false);
+        slotOfKey.clear();
+        clockHand = 0;
+        size = 0;
+        hits = 0;
+        misses = 0;
+        collisions = 0;
+        evictions = 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getCollisions() {
+        return collisions;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return "PositionCache " + size + "/" + slots.length
+                + " hits=" + hits + " misses=" + misses
+                + " (" + (lookups == 0 ? 0 : hits * 100 / lookups) + "%)"
+                + " collisions=" + collisions + " evictions=" + evictions;
+    }
+}
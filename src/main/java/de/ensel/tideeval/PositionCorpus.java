@@ -0,0 +1,706 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static java.lang.System.exit;
+
+/**
+ * A compact binary corpus of test positions, so benchmarks and regression runs do not have to parse puzzle CSV
+ * or game files each time.
+ * The file consists of a header, fixed size records (one per position: packed board, side to move, castling
+ * rights, en passant file, move counters, a move to do first, the expected move, the expected eval, a rating and
+ * the id of the position in its source, i.e. the puzzle id resp. the nr of the game in the game file)
+ * and an offset index of the first record of each game. It is memory-mapped and the records are read directly
+ * from the mapped bytes, see get().
+ * convertPuzzles() and convertGames() create corpora from lichess puzzle CSV files resp. from .cts or PGN game
+ * files, for the latter the SAN moves are replayed once on a light PackedPosition (without any evaluation).
+ */
+public class PositionCorpus implements Iterable<PositionCorpus.Position>, Closeable {
+    static final long MAGIC = 0x5469646543727032L;  // "TideCrp2"
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 56;
+    static final int ID_BYTES = 8;                   // longer ids are cut
+    static final short NO_MOVE = 0;                  // a1a1 is not a move
+
+    // record layout
+    private static final int R_BOARD = 0;            // 64 nibbles in the order of the board positions (a8 first)
+    private static final int R_FLAGS = 32;           // bit 0: black to move, bits 1-4: castling KQkq
+    private static final int R_EP_FILE = 33;         // -1 if none
+    private static final int R_BORING_MOVES = 34;
+    private static final int R_FULL_MOVES = 36;
+    private static final int R_PRE_MOVE = 38;        // move to do before the position is to be evaluated
+    private static final int R_EXPECTED_MOVE = 40;
+    private static final int R_EVAL = 42;
+    private static final int R_RATING = 46;
+    private static final int R_ID = 48;              // ASCII, padded with 0 bytes
+
+    private static final int[] NIBBLE2PCETYPE = { EMPTY, KING, QUEEN, ROOK, BISHOP, KNIGHT, PAWN, EMPTY,
+            EMPTY, KING_BLACK, QUEEN_BLACK, ROOK_BLACK, BISHOP_BLACK, KNIGHT_BLACK, PAWN_BLACK, EMPTY };
+    private static final int[] PROMOTION_TYPES = { EMPTY, QUEEN, ROOK, BISHOP, KNIGHT };
+
+    private final FileChannel channel;
+    private final long nrOfRecords;
+    private final long nrOfGames;
+    private final MappedByteBuffer[] recordWindows;
+    private final long recordsPerWindow;
+    private final MappedByteBuffer index;
+
+    public PositionCorpus(Path file) throws IOException {
+        this(file, Integer.MAX_VALUE / RECORD_BYTES);
+    }
+
+    PositionCorpus(Path file, long recordsPerWindow) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if (header.getLong(0) != MAGIC || header.getInt(8) != RECORD_BYTES) {
+            channel.close();
+            throw new IOException("Not a position corpus: " + file);
+        }
+        nrOfRecords = header.getLong(16);
+        nrOfGames = header.getLong(24);
+        this.recordsPerWindow = recordsPerWindow;
+        recordWindows = new MappedByteBuffer[(int) ((nrOfRecords + recordsPerWindow - 1) / recordsPerWindow)];
+        for (int w = 0; w < recordWindows.length; w++) {
+            long first = w * recordsPerWindow;
+            recordWindows[w] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * RECORD_BYTES,
+                    Math.min(recordsPerWindow, nrOfRecords - first) * RECORD_BYTES);
+        }
+        index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + nrOfRecords * RECORD_BYTES,
+                nrOfGames * Long.BYTES);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: PositionCorpus <puzzles.csv|games.cts|games.pgn> <outFile>");
+            exit(3);
+        }
+        Path in = Path.of(args[0]);
+        Path out = Path.of(args[1]);
+        long nrOfRecords = args[0].endsWith(".csv") ? convertPuzzles(in, out) : convertGames(in, out);
+        System.out.println("Wrote " + nrOfRecords + " positions to " + out + ".");
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public long size() {
+        return nrOfRecords;
+    }
+
+    /**
+     * @return nr of games (each puzzle is a game with one position)
+     */
+    public long getNrOfGames() {
+        return nrOfGames;
+    }
+
+    /**
+     * @return record nr of the first position of game g
+     */
+    public long getFirstPositionOfGame(long g) {
+        return index.getLong((int) (g * Long.BYTES));
+    }
+
+    /**
+     * @return a view on the i-th record, reading directly from the mapped file
+     */
+    public Position get(long i) {
+        if (i < 0 || i >= nrOfRecords)
+            throw new IndexOutOfBoundsException("Position " + i + " of " + nrOfRecords);
+        return new Position(recordWindows[(int) (i / recordsPerWindow)],
+                            (int) ((i % recordsPerWindow) * RECORD_BYTES));
+    }
+
+    @Override
+    public Iterator<Position> iterator() {
+        return new Iterator<>() {
+            private long next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < nrOfRecords;
+            }
+
+            @Override
+            public Position next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * One record of the corpus, all getters read from the mapped bytes.
+     */
+    public static final class Position {
+        private final ByteBuffer records;
+        private final int at;
+
+        private Position(ByteBuffer records, int at) {
+            this.records = records;
+            this.at = at;
+        }
+
+        public int getPieceTypeAt(int pos) {
+            int b = records.get(at + R_BOARD + (pos >> 1));
+            return NIBBLE2PCETYPE[(pos & 1) == 0 ? (b >> 4) & 15 : b & 15];
+        }
+
+        public boolean getTurnCol() {
+            return (records.get(at + R_FLAGS) & 1) == 0 ? WHITE : BLACK;
+        }
+
+        /**
+         * @return the move to do on this position first (like the opponent's move of a puzzle) or null
+         */
+        public Move getPreMove() {
+            return decodeMove(records.getShort(at + R_PRE_MOVE));
+        }
+
+        /**
+         * @return expected (best resp. played) move or null
+         */
+        public Move getExpectedMove() {
+            return decodeMove(records.getShort(at + R_EXPECTED_MOVE));
+        }
+
+        /**
+         * @return expected eval in centipawns or NOT_EVALUATED
+         */
+        public int getEval() {
+            return records.getInt(at + R_EVAL);
+        }
+
+        public int getRating() {
+            return records.getShort(at + R_RATING) & 0xffff;
+        }
+
+        /**
+         * @return id of the position in its source: the puzzle id resp. the nr of the game in the game file
+         */
+        public String getId() {
+            int len = 0;
+            while (len < ID_BYTES && records.get(at + R_ID + len) != 0)
+                len++;
+            byte[] id = new byte[len];
+            records.get(at + R_ID, id);
+            return new String(id, StandardCharsets.US_ASCII);
+        }
+
+        /**
+         * @return the position as FEN string, e.g. for new ChessBoard() or updateBoardFromFEN()
+         */
+        public String getFEN() {
+            StringBuilder fen = new StringBuilder(90);
+            for (int rank = 0; rank < NR_RANKS; rank++) {
+                if (rank > 0)
+                    fen.append('/');
+                int spaceCounter = 0;
+                for (int file = 0; file < NR_FILES; file++) {
+                    int pceType = getPieceTypeAt(rank * NR_FILES + file);
+                    if (pceType == EMPTY) {
+                        spaceCounter++;
+                        continue;
+                    }
+                    if (spaceCounter > 0)
+                        fen.append(spaceCounter);
+                    spaceCounter = 0;
+                    fen.append(fenCharFromPceType(pceType));
+                }
+                if (spaceCounter > 0)
+                    fen.append(spaceCounter);
+            }
+            final int flags = records.get(at + R_FLAGS);
+            fen.append((flags & 1) == 0 ? " w " : " b ");
+            if ((flags & 0x1e) == 0)
+                fen.append('-');
+            for (int c = 0; c < 4; c++)
+                if ((flags & (2 << c)) != 0)
+                    fen.append("KQkq".charAt(c));
+            final int epFile = records.get(at + R_EP_FILE);
+            fen.append(' ').append(epFile < 0 ? "-" : (char) ('a' + epFile) + ((flags & 1) == 0 ? "6" : "3"));
+            return fen.append(' ').append(records.getShort(at + R_BORING_MOVES))
+                      .append(' ').append(records.getShort(at + R_FULL_MOVES)).toString();
+        }
+    }
+
+    static short encodeMove(int from, int to, int promotesTo) {
+        int p = 0;
+        while (p < PROMOTION_TYPES.length && PROMOTION_TYPES[p] != colorlessPieceType(promotesTo))
+            p++;
+        return (short) (from | to << 6 | (p % PROMOTION_TYPES.length) << 12);
+    }
+
+    static Move decodeMove(short m) {
+        if (m == NO_MOVE)
+            return null;
+        return new Move(m & 63, (m >> 6) & 63, PROMOTION_TYPES[(m >> 12) & 7]);
+    }
+
+    //// conversion
+
+    /**
+     * converts a lichess puzzle CSV file (PuzzleId,FEN,Moves,Rating,...): each puzzle is one position with the
+     * opponent's first move as pre move and the solution's first move as expected move
+     * @return nr of positions written
+     */
+    public static long convertPuzzles(Path csvFile, Path corpusFile) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(csvFile.toFile(), StandardCharsets.UTF_8));
+             CorpusWriter out = new CorpusWriter(corpusFile)) {
+            PackedPosition p = new PackedPosition();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",", -1);
+                if (fields.length < 3 || fields[1].equals("FEN") || !p.setFromFEN(fields[1]))
+                    continue;   // header, empty or broken line
+                String[] moves = fields[2].trim().split(" ");
+                Move pre = moves.length > 1 ? new Move(moves[0]) : null;
+                Move expected = new Move(moves[moves.length > 1 ? 1 : 0]);
+                int rating = 0;
+                try {
+                    rating = fields.length > 3 ? Integer.parseInt(fields[3].trim()) : 0;
+                } catch (NumberFormatException e) {
+                    // no rating
+                }
+                out.startGame();
+                out.write(p, pre == null ? NO_MOVE : encodeMove(pre.from(), pre.to(), pre.promotesTo),
+                          expected.isMove() ? encodeMove(expected.from(), expected.to(), expected.promotesTo)
+                                            : NO_MOVE,
+                          NOT_EVALUATED, rating, fields[0].trim());
+            }
+            return out.nrOfRecords;
+        }
+    }
+
+    /**
+     * converts a .cts or PGN game file: one position after each move, with the eval given after the move and
+     * the next move of the game as expected move. A game ends at its first move that cannot be played.
+     * @return nr of positions written
+     */
+    public static long convertGames(Path gamesFile, Path corpusFile) throws IOException {
+        try (PgnGameReader reader = new PgnGameReader(gamesFile);
+             CorpusWriter out = new CorpusWriter(corpusFile)) {
+            PackedPosition p = new PackedPosition();
+            PackedPosition previous = new PackedPosition();
+            long gameNr = 0;
+            while (reader.hasNext()) {
+                PgnGameReader.Game game = reader.next();
+                final String id = Long.toString(gameNr++);
+                String fen = game.getTag("FEN");
+                if (!p.setFromFEN(fen == null ? FENPOS_STARTPOS : fen))
+                    continue;
+                out.startGame();
+                int prevEval = NOT_EVALUATED;
+                for (int m = 0; m < game.getNrOfMoves(); m++) {
+                    previous.setFrom(p);
+                    short move = p.doMove(game.getMove(m));
+                    if (move == NO_MOVE) {
+                        if (m > 0)
+                            out.write(p, NO_MOVE, NO_MOVE, prevEval, 0, id);
+                        break;
+                    }
+                    if (m > 0)
+                        out.write(previous, NO_MOVE, move, prevEval, 0, id);
+                    prevEval = game.getEval(m);
+                    if (m == game.getNrOfMoves() - 1)
+                        out.write(p, NO_MOVE, NO_MOVE, prevEval, 0, id);
+                }
+            }
+            return out.nrOfRecords;
+        }
+    }
+
+    private static final class CorpusWriter implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+        private long[] gameStarts = new long[1024];
+        private long nrOfGames = 0;
+        private long nrOfRecords = 0;
+
+        CorpusWriter(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                       StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_BYTES);
+        }
+
+        void startGame() {
+            if (nrOfGames == gameStarts.length)
+                gameStarts = Arrays.copyOf(gameStarts, gameStarts.length * 2);
+            gameStarts[(int) nrOfGames++] = nrOfRecords;
+        }
+
+        void write(PackedPosition p, short preMove, short expectedMove, int eval, int rating, String id)
+                throws IOException {
+            if (!buffer.hasRemaining())
+                flush();
+            p.writeTo(buffer);
+            buffer.putShort(preMove).putShort(expectedMove).putInt(eval).putShort((short) rating);
+            byte[] idBytes = id.getBytes(StandardCharsets.US_ASCII);
+            for (int b = 0; b < ID_BYTES; b++)
+                buffer.put(b < idBytes.length ? idBytes[b] : 0);
+            nrOfRecords++;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer index = ByteBuffer.allocate((int) nrOfGames * Long.BYTES);
+                for (int g = 0; g < nrOfGames; g++)
+                    index.putLong(gameStarts[g]);
+                index.flip();
+                while (index.hasRemaining())
+                    channel.write(index);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putLong(MAGIC).putInt(RECORD_BYTES).putInt(0).putLong(nrOfRecords).putLong(nrOfGames);
+                header.flip();
+                channel.write(header, 0);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Minimal board for the conversion: pieces, side to move, castling rights, en passant file and move
+     * counters. It can play SAN or coordinate moves, but evaluates nothing.
+     */
+    static final class PackedPosition {
+        private static final int[][] KNIGHT_STEPS = { {1,2}, {2,1}, {2,-1}, {1,-2}, {-1,-2}, {-2,-1}, {-2,1}, {-1,2} };
+        private static final int[][] KING_STEPS = { {1,0}, {1,1}, {0,1}, {-1,1}, {-1,0}, {-1,-1}, {0,-1}, {1,-1} };
+        private static final int[][] ROOK_STEPS = { {1,0}, {0,1}, {-1,0}, {0,-1} };
+        private static final int[][] BISHOP_STEPS = { {1,1}, {-1,1}, {-1,-1}, {1,-1} };
+        // corners of the rooks for the castling flags K, Q, k, q
+        private static final int[] CASTLING_ROOK_POS = { fileRank2Pos(7, 0), fileRank2Pos(0, 0),
+                                                         fileRank2Pos(7, 7), fileRank2Pos(0, 7) };
+
+        private final int[] pieces = new int[NR_SQUARES];
+        private boolean turn;
+        private int castling;    // bits 0-3: KQkq
+        private int epFile;
+        private int boringMoves;
+        private int fullMoves;
+
+        void setFrom(PackedPosition o) {
+            System.arraycopy(o.pieces, 0, pieces, 0, NR_SQUARES);
+            turn = o.turn;
+            castling = o.castling;
+            epFile = o.epFile;
+            boringMoves = o.boringMoves;
+            fullMoves = o.fullMoves;
+        }
+
+        /**
+         * @return false if the FEN string could not be read
+         */
+        boolean setFromFEN(String fen) {
+            String[] parts = fen.trim().split(" +");
+            Arrays.fill(pieces, EMPTY);
+            int pos = 0;
+            for (char c : parts[0].toCharArray()) {
+                if (c == '/')
+                    continue;
+                if (c >= '1' && c <= '8')
+                    pos += c - '0';
+                else if (pos < NR_SQUARES)
+                    pieces[pos++] = pceTypeFromPieceSymbol(c);
+            }
+            if (pos != NR_SQUARES)
+                return false;
+            turn = parts.length < 2 || !parts[1].equals("b") ? WHITE : BLACK;
+            castling = 0;
+            if (parts.length > 2)
+                for (int c = 0; c < 4; c++)
+                    if (parts[2].indexOf("KQkq".charAt(c)) >= 0)
+                        castling |= 1 << c;
+            epFile = parts.length > 3 && isFileChar(parts[3].charAt(0)) ? parts[3].charAt(0) - 'a' : -1;
+            try {
+                boringMoves = parts.length > 4 ? Integer.parseInt(parts[4]) : 0;
+                fullMoves = parts.length > 5 ? Integer.parseInt(parts[5]) : 1;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return true;
+        }
+
+        void writeTo(ByteBuffer b) {
+            for (int pos = 0; pos < NR_SQUARES; pos += 2)
+                b.put((byte) (nibble(pieces[pos]) << 4 | nibble(pieces[pos + 1])));
+            b.put((byte) ((isWhite(turn) ? 0 : 1) | castling << 1));
+            b.put((byte) epFile);
+            b.putShort((short) boringMoves);
+            b.putShort((short) fullMoves);
+        }
+
+        private static int nibble(int pceType) {
+            if (pceType == EMPTY)
+                return 0;
+            int n = switch (colorlessPieceType(pceType)) {
+                case KING -> 1;
+                case QUEEN -> 2;
+                case ROOK -> 3;
+                case BISHOP -> 4;
+                case KNIGHT -> 5;
+                default -> 6;
+            };
+            return isPieceTypeWhite(pceType) ? n : n + 8;
+        }
+
+        private boolean isOwn(int pos) {
+            return pieces[pos] != EMPTY && colorOfPieceType(pieces[pos]) == turn;
+        }
+
+        private static int pos(int file, int rank) {
+            return file < 0 || file >= NR_FILES || rank < 0 || rank >= NR_RANKS ? -1 : fileRank2Pos(file, rank);
+        }
+
+        /**
+         * @return true if a piece of color col attacks pos
+         */
+        private boolean isAttackedBy(int target, boolean col) {
+            final int f = fileOf(target);
+            final int r = rankOf(target);
+            final int black = isWhite(col) ? 0 : BLACK_PIECE;
+            for (int[] s : KNIGHT_STEPS) {
+                int p = pos(f + s[0], r + s[1]);
+                if (p >= 0 && pieces[p] == KNIGHT + black)
+                    return true;
+            }
+            for (int[] s : KING_STEPS) {
+                int p = pos(f + s[0], r + s[1]);
+                if (p >= 0 && pieces[p] == KING + black)
+                    return true;
+            }
+            final int pawnRank = r + (isWhite(col) ? -1 : 1);
+            for (int df = -1; df <= 1; df += 2) {
+                int p = pos(f + df, pawnRank);
+                if (p >= 0 && pieces[p] == PAWN + black)
+                    return true;
+            }
+            return isAttackedSliding(f, r, ROOK_STEPS, ROOK + black, QUEEN + black)
+                   || isAttackedSliding(f, r, BISHOP_STEPS, BISHOP + black, QUEEN + black);
+        }
+
+        private boolean isAttackedSliding(int f, int r, int[][] steps, int pceType, int queenType) {
+            for (int[] s : steps) {
+                int p;
+                for (int i = 1; (p = pos(f + i * s[0], r + i * s[1])) >= 0; i++) {
+                    if (pieces[p] == pceType || pieces[p] == queenType)
+                        return true;
+                    if (pieces[p] != EMPTY)
+                        break;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if the piece on from could move there (ignoring pins and checks)
+         */
+        private boolean canReach(int from, int to) {
+            final int df = fileOf(to) - fileOf(from);
+            final int dr = rankOf(to) - rankOf(from);
+            if (from == to || isOwn(to))
+                return false;
+            switch (colorlessPieceType(pieces[from])) {
+                case KNIGHT:
+                    return Math.abs(df * dr) == 2;
+                case KING:
+                    return Math.abs(df) <= 1 && Math.abs(dr) <= 1;
+                case ROOK:
+                    return (df == 0 || dr == 0) && isPathFree(from, df, dr);
+                case BISHOP:
+                    return Math.abs(df) == Math.abs(dr) && isPathFree(from, df, dr);
+                case QUEEN:
+                    return (df == 0 || dr == 0 || Math.abs(df) == Math.abs(dr)) && isPathFree(from, df, dr);
+                case PAWN:
+                    final int forward = isWhite(turn) ? 1 : -1;
+                    if (df == 0)
+                        return pieces[to] == EMPTY
+                               && (dr == forward
+                                   || dr == 2 * forward && rankOf(from) == (isWhite(turn) ? 1 : 6)
+                                      && pieces[pos(fileOf(from), rankOf(from) + forward)] == EMPTY);
+                    return Math.abs(df) == 1 && dr == forward
+                           && (pieces[to] != EMPTY
+                               || fileOf(to) == epFile && rankOf(to) == (isWhite(turn) ? 5 : 2));
+                default:
+                    return false;
+            }
+        }
+
+        private boolean isPathFree(int from, int df, int dr) {
+            final int steps = Math.max(Math.abs(df), Math.abs(dr));
+            for (int i = 1; i < steps; i++)
+                if (pieces[pos(fileOf(from) + i * Integer.signum(df), rankOf(from) + i * Integer.signum(dr))]
+                    != EMPTY)
+                    return false;
+            return true;
+        }
+
+        /**
+         * plays a move in SAN (like "Nbd7", "exd5", "e8=Q+", "O-O") or coordinate notation (like "e7e8q")
+         * @return the move encoded like in the records or NO_MOVE if it is not a legal move here
+         */
+        short doMove(String move) {
+            String m = move.replace("x", "").replace("=", "").replace("-", "");
+            while (!m.isEmpty() && "+#!?".indexOf(m.charAt(m.length() - 1)) >= 0)
+                m = m.substring(0, m.length() - 1);
+            final int kingRank = isWhite(turn) ? 0 : 7;
+            if (m.equals("OO") || m.equals("00"))
+                return doLegalMove(fileRank2Pos(4, kingRank), fileRank2Pos(6, kingRank), EMPTY);
+            if (m.equals("OOO") || m.equals("000"))
+                return doLegalMove(fileRank2Pos(4, kingRank), fileRank2Pos(2, kingRank), EMPTY);
+            Move coordinateMove = new Move(m);
+            if (coordinateMove.isMove())
+                return isOwn(coordinateMove.from())
+                       ? doLegalMove(coordinateMove.from(), coordinateMove.to(), coordinateMove.promotesTo)
+                       : NO_MOVE;
+            if (m.length() < 2)
+                return NO_MOVE;
+            // SAN
+            int pceType = PAWN;
+            int start = 0;
+            if ("KQRBN".indexOf(m.charAt(0)) >= 0) {
+                pceType = pceTypeFromPieceSymbol(m.charAt(0));
+                start = 1;
+            }
+            int end = m.length();
+            int promotesTo = EMPTY;
+            if ("QRBNqrbn".indexOf(m.charAt(end - 1)) >= 0 && pceType == PAWN) {
+                promotesTo = getPceTypeFromPromoteChar(m.charAt(end - 1));
+                end--;
+            }
+            if (end - start < 2 || !isFileChar(m.charAt(end - 2)) || !isRankChar(m.charAt(end - 1)))
+                return NO_MOVE;
+            final int to = coordinateString2Pos(m, end - 2);
+            int fromFile = -1;
+            int fromRank = -1;
+            for (int i = start; i < end - 2; i++) {
+                if (isFileChar(m.charAt(i)))
+                    fromFile = m.charAt(i) - 'a';
+                else if (isRankChar(m.charAt(i)))
+                    fromRank = m.charAt(i) - '1';
+            }
+            final int ownType = isWhite(turn) ? pceType : pceType + BLACK_PIECE;
+            int from = -1;
+            for (int p = 0; p < NR_SQUARES; p++) {
+                if (pieces[p] != ownType
+                    || fromFile >= 0 && fileOf(p) != fromFile || fromRank >= 0 && rankOf(p) != fromRank
+                    || !canReach(p, to) || !isLegal(p, to))
+                    continue;
+                if (from >= 0)
+                    return NO_MOVE;   // ambiguous
+                from = p;
+            }
+            return from < 0 ? NO_MOVE : doLegalMove(from, to, promotesTo);
+        }
+
+        /**
+         * @return true if the own king is not in check after the (reachable) move
+         */
+        private boolean isLegal(int from, int to) {
+            final int[] saved = pieces.clone();
+            applyPieces(from, to, EMPTY);
+            int king = -1;
+            for (int p = 0; p < NR_SQUARES && king < 0; p++)
+                if (pieces[p] == (isWhite(turn) ? KING : KING_BLACK))
+                    king = p;
+            final boolean legal = king < 0 || !isAttackedBy(king, opponentColor(turn));
+            System.arraycopy(saved, 0, pieces, 0, NR_SQUARES);
+            return legal;
+        }
+
+        private short doLegalMove(int from, int to, int promotesTo) {
+            if (!isOwn(from))
+                return NO_MOVE;
+            final boolean isKing = colorlessPieceType(pieces[from]) == KING;
+            final boolean isCastling = isKing && Math.abs(fileOf(to) - fileOf(from)) == 2 && rankOf(to) == rankOf(from);
+            if (isCastling) {
+                final int flag = (isWhite(turn) ? 0 : 2) + (fileOf(to) > fileOf(from) ? 0 : 1);
+                final int rookPos = CASTLING_ROOK_POS[flag];
+                if ((castling & 1 << flag) == 0 || !isPathFree(from, fileOf(rookPos) - fileOf(from), 0)
+                    || isAttackedBy(from, opponentColor(turn))
+                    || isAttackedBy((from + to) / 2, opponentColor(turn)) || !isLegal(from, to))
+                    return NO_MOVE;
+            }
+            else if (!canReach(from, to) || !isLegal(from, to))
+                return NO_MOVE;
+            final boolean isPawn = colorlessPieceType(pieces[from]) == PAWN;
+            if (isPawn && (rankOf(to) == 0 || rankOf(to) == 7)) {
+                if (promotesTo == EMPTY)
+                    promotesTo = QUEEN;
+            }
+            else
+                promotesTo = EMPTY;
+            final boolean isCapture = pieces[to] != EMPTY;
+            applyPieces(from, to, promotesTo);
+            // castling rights: king or rook moved, or rook captured
+            for (int c = 0; c < 4; c++)
+                if (from == CASTLING_ROOK_POS[c] || to == CASTLING_ROOK_POS[c])
+                    castling &= ~(1 << c);
+            if (isKing)
+                castling &= isWhite(turn) ? ~3 : ~12;
+            epFile = isPawn && Math.abs(rankOf(to) - rankOf(from)) == 2 ? fileOf(from) : -1;
+            boringMoves = isPawn || isCapture ? 0 : boringMoves + 1;
+            if (isBlack(turn))
+                fullMoves++;
+            turn = opponentColor(turn);
+            return encodeMove(from, to, promotesTo);
+        }
+
+        /**
+         * moves the pieces incl. the rook when castling, the pawn captured en passant and promotions
+         */
+        private void applyPieces(int from, int to, int promotesTo) {
+            final int pceType = pieces[from];
+            if (colorlessPieceType(pceType) == PAWN && fileOf(from) != fileOf(to) && pieces[to] == EMPTY)
+                pieces[fileRank2Pos(fileOf(to), rankOf(from))] = EMPTY;    // en passant
+            if (colorlessPieceType(pceType) == KING && Math.abs(fileOf(to) - fileOf(from)) == 2) {
+                final int rookFrom = fileRank2Pos(fileOf(to) > fileOf(from) ? 7 : 0, rankOf(from));
+                pieces[(from + to) / 2] = pieces[rookFrom];
+                pieces[rookFrom] = EMPTY;
+            }
+            pieces[to] = promotesTo == EMPTY ? pceType
+                                             : (isPieceTypeWhite(pceType) ? promotesTo : promotesTo + BLACK_PIECE);
+            pieces[from] = EMPTY;
+        }
+    }
+}
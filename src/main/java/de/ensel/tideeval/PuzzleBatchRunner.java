@@ -0,0 +1,216 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.System.exit;
+
+/**
+ * Runs all puzzles of a lichess puzzle CSV file (PuzzleId,FEN,Moves,Rating,...,Themes,...) on a pool of worker
+ * threads, each reusing one ChessBoard. A puzzle is solved like in ChessBoardTest.doAndTestPuzzle(): the first
+ * of the Moves is done on the FEN position, then the engine's best move must be the second one.
+ * The file is streamed, so it can be the complete lichess puzzle database. Alternatively the puzzles can be read
+ * from a PositionCorpus converted from such a file.
+ * Writes one line per puzzle (id,ok|FAIL,chosen move,expected move,rating,latency in ms - in order of completion)
+ * and finally throughput and latency percentiles.
+ */
+public class PuzzleBatchRunner {
+    private static final int MAX_LATENCY_MS = 60000;    // latencies above are counted in the last bucket
+
+    private final int nrOfThreads;
+    private final PrintWriter out;
+    private final ThreadLocal<ChessBoard> boards = new ThreadLocal<>();
+    private final AtomicLong nrOfPuzzles = new AtomicLong();
+    private final AtomicLong nrOfSolved = new AtomicLong();
+    private final AtomicLong nrOfErrors = new AtomicLong();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(MAX_LATENCY_MS + 1);   // per ms
+    private long startNanos;
+    private long endNanos;
+
+    public PuzzleBatchRunner(int nrOfThreads, PrintWriter out) {
+        this.nrOfThreads = nrOfThreads;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("Usage: PuzzleBatchRunner <puzzles.csv|puzzle corpus> [nrOfThreads] [resultFile]");
+            exit(3);
+        }
+        int nrOfThreads = args.length >= 2 ? Integer.parseInt(args[1])
+                                           : Runtime.getRuntime().availableProcessors();
+        try (PrintWriter out = args.length == 3
+                                ? new PrintWriter(new BufferedWriter(new FileWriter(args[2], StandardCharsets.UTF_8)))
+                                : new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)))) {
+            PuzzleBatchRunner runner = new PuzzleBatchRunner(nrOfThreads, out);
+            if (args[0].endsWith(".csv")) {
+                try (BufferedReader in = new BufferedReader(new FileReader(args[0], StandardCharsets.UTF_8))) {
+                    runner.run(in);
+                }
+            }
+            else {
+                try (PositionCorpus corpus = new PositionCorpus(Path.of(args[0]))) {
+                    runner.run(corpus);
+                }
+            }
+            out.flush();
+            System.out.println(runner.summary());
+        }
+    }
+
+    /**
+     * solves all puzzles from the puzzle CSV lines in, the results are written to out
+     */
+    public void run(BufferedReader in) throws IOException, InterruptedException {
+        ThreadPoolExecutor workers = startWorkers();
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final String[] fields = line.split(",", -1);
+                if (fields.length < 3 || fields[1].equals("FEN"))
+                    continue;   // header or empty line
+                final String[] moves = fields[2].trim().split(" ");
+                workers.execute(() -> solve(fields[0], fields[1], moves.length > 1 ? moves[0] : null,
+                                            moves.length > 1 ? moves[1] : moves[0],
+                                            fields.length > 3 ? fields[3] : ""));
+            }
+        } finally {
+            stopWorkers(workers);
+        }
+    }
+
+    /**
+     * solves all puzzles of the corpus, the results are written to out
+     */
+    public void run(PositionCorpus corpus) throws InterruptedException {
+        ThreadPoolExecutor workers = startWorkers();
+        try {
+            for (PositionCorpus.Position p : corpus) {
+                final String puzzleId = p.getId();
+                final String fen = p.getFEN();
+                final Move preMove = p.getPreMove();
+                final Move expectedMove = p.getExpectedMove();
+                final String rating = Integer.toString(p.getRating());
+                workers.execute(() -> solve(puzzleId, fen, preMove == null ? null : preMove.toString(),
+                                            expectedMove == null ? "-" : expectedMove.toString(), rating));
+            }
+        } finally {
+            stopWorkers(workers);
+        }
+    }
+
+    private ThreadPoolExecutor startWorkers() {
+        startNanos = System.nanoTime();
+        // bounded queue: the reader waits for the workers instead of reading the whole file into memory
+        return new ThreadPoolExecutor(nrOfThreads, nrOfThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(nrOfThreads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private void stopWorkers(ThreadPoolExecutor workers) throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * @param preMove the opponent's move to do first or null
+     */
+    private void solve(final String puzzleId, final String fen, final String preMove, String expectedMove,
+                       final String rating) {
+        final long t0 = System.nanoTime();
+        String chosenMove;
+        boolean solved;
+        try {
+            ChessBoard board = boards.get();
+            if (board == null) {
+                // the workers already run in parallel, so each board does its move reevaluation in its own thread
+                board = new ChessBoard(puzzleId, fen, false);
+                boards.set(board);
+            }
+            else {
+                // like new ChessBoard(), incl. its move selection
+                board.updateBoardFromFEN(fen);
+                board.getBestMove();
+            }
+            if (preMove != null)
+                board.doMove(preMove);
+            Move bestMove = board.getBestMove();
+            chosenMove = bestMove == null ? "-" : bestMove.toString();
+            if (expectedMove.length() > 4)
+                expectedMove = new Move(expectedMove.substring(0, 5).trim()).toString();
+            solved = expectedMove.equalsIgnoreCase(chosenMove);
+        } catch (RuntimeException e) {
+            // a broken board must not be reused
+            boards.remove();
+            nrOfErrors.incrementAndGet();
+            chosenMove = "error:" + e.getClass().getSimpleName();
+            solved = false;
+        }
+        final long latencyMs = (System.nanoTime() - t0) / 1000000;
+        latencyHistogram.incrementAndGet((int) Math.min(latencyMs, MAX_LATENCY_MS));
+        nrOfPuzzles.incrementAndGet();
+        if (solved)
+            nrOfSolved.incrementAndGet();
+        synchronized (out) {
+            out.println(puzzleId + "," + (solved ? "ok" : "FAIL") + "," + chosenMove + "," + expectedMove
+                        + "," + rating + "," + latencyMs);
+        }
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return latency in ms, that percentile of all puzzles did not exceed
+     */
+    long latencyPercentile(double percentile) {
+        final long n = nrOfPuzzles.get();
+        if (n == 0)
+            return 0;
+        final long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long count = 0;
+        for (int ms = 0; ms <= MAX_LATENCY_MS; ms++) {
+            count += latencyHistogram.get(ms);
+            if (count >= rank)
+                return ms;
+        }
+        return MAX_LATENCY_MS;
+    }
+
+    long getNrOfPuzzles() {
+        return nrOfPuzzles.get();
+    }
+
+    long getNrOfSolved() {
+        return nrOfSolved.get();
+    }
+
+    public String summary() {
+        final long n = nrOfPuzzles.get();
+        final double seconds = (endNanos - startNanos) / 1e9;
+        return String.format("%d puzzles, %d solved (%.1f%%), %d errors, %d threads: %.1f s, %.2f puzzles/s, "
+                             + "latency p50 %d ms, p99 %d ms",
+                n, nrOfSolved.get(), n == 0 ? 0.0 : 100.0 * nrOfSolved.get() / n, nrOfErrors.get(), nrOfThreads,
+                seconds, seconds > 0 ? n / seconds : 0.0, latencyPercentile(50), latencyPercentile(99));
+    }
+}
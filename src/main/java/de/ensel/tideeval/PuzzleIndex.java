@@ -0,0 +1,378 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static java.lang.System.exit;
+
+/**
+ * Index over a (complete) lichess puzzle CSV file (PuzzleId,FEN,Moves,Rating,RatingDeviation,Popularity,NbPlays,
+ * Themes,...), so subsets like the lichess_db_puzzle_230601_*.csv test files can be selected in milliseconds.
+ * build() reads the CSV file once and writes the index file: the theme names, a table of rating buckets and
+ * per puzzle (sorted by rating) its byte range in the CSV file, rating, popularity and themes as bitset.
+ * select() only scans the index entries of the rating buckets in question, writePuzzles() then reads just the
+ * byte ranges of the selected puzzles from the CSV file.
+ */
+public class PuzzleIndex implements Closeable {
+    static final long MAGIC = 0x546964655078316CL;  // "TidePx1l"
+    static final int RATING_BUCKET_WIDTH = 50;
+    static final int MAX_RATING = 4000;             // higher ratings are put into the last bucket
+    static final int NR_OF_BUCKETS = MAX_RATING / RATING_BUCKET_WIDTH + 1;
+    static final int MAX_THEMES = 128;
+    static final int ENTRY_BYTES = 32;
+
+    // entry layout
+    private static final int E_OFFSET = 0;
+    private static final int E_LENGTH = 8;
+    private static final int E_RATING = 12;
+    private static final int E_POPULARITY = 14;
+    private static final int E_THEMES = 16;          // 2 longs
+
+    private final FileChannel csv;
+    private final FileChannel indexChannel;
+    private final List<String> themeNames = new ArrayList<>();
+    private final int[] bucketStarts = new int[NR_OF_BUCKETS + 1];  // first entry of each bucket
+    private final int nrOfPuzzles;
+    private final MappedByteBuffer entries;
+
+    public PuzzleIndex(Path csvFile, Path indexFile) throws IOException {
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ);
+        MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        if (index.getLong() != MAGIC) {
+            indexChannel.close();
+            throw new IOException("Not a puzzle index: " + indexFile);
+        }
+        nrOfPuzzles = index.getInt();
+        int nrOfThemes = index.getInt();
+        for (int t = 0; t < nrOfThemes; t++) {
+            byte[] name = new byte[index.get() & 0xff];
+            index.get(name);
+            themeNames.add(new String(name, StandardCharsets.UTF_8));
+        }
+        for (int b = 0; b <= NR_OF_BUCKETS; b++)
+            bucketStarts[b] = index.getInt();
+        entries = indexChannel.map(FileChannel.MapMode.READ_ONLY, index.position(),
+                                   (long) nrOfPuzzles * ENTRY_BYTES);
+        csv = FileChannel.open(csvFile, StandardOpenOption.READ);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("build")) {
+            int n = build(Path.of(args[1]), Path.of(args[2]));
+            System.out.println("Indexed " + n + " puzzles.");
+            return;
+        }
+        if (args.length < 5 || !args[0].equals("query")) {
+            System.out.println("Usage: PuzzleIndex build <puzzles.csv> <indexFile>\n"
+                    + "       PuzzleIndex query <puzzles.csv> <indexFile> <minRating> <maxRating> "
+                    + "[theme,!excludedTheme,...] [-p minPopularity] [-n nrOfSamples] [-s seed]\n"
+                    + "       (the selected puzzles are written to stdout)");
+            exit(3);
+        }
+        Set<String> themes = new HashSet<>();
+        Set<String> excludedThemes = new HashSet<>();
+        int minPopularity = -100;
+        int nrOfSamples = Integer.MAX_VALUE;
+        long seed = 0;
+        for (int i = 5; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p" -> minPopularity = Integer.parseInt(args[++i]);
+                case "-n" -> nrOfSamples = Integer.parseInt(args[++i]);
+                case "-s" -> seed = Long.parseLong(args[++i]);
+                default -> {
+                    for (String theme : args[i].split(","))
+                        if (theme.startsWith("!"))
+                            excludedThemes.add(theme.substring(1));
+                        else if (!theme.isEmpty())
+                            themes.add(theme);
+                }
+            }
+        }
+        long t0 = System.nanoTime();
+        try (PuzzleIndex index = new PuzzleIndex(Path.of(args[1]), Path.of(args[2]));
+             Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            int[] selected = index.select(Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+                                          themes, excludedThemes, minPopularity);
+            selected = sample(selected, nrOfSamples, seed);
+            index.writePuzzles(selected, out);
+            out.flush();
+            System.err.printf("Selected %d of %d puzzles in %.1f ms.%n",
+                              selected.length, index.getNrOfPuzzles(), (System.nanoTime() - t0) / 1e6);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        csv.close();
+        indexChannel.close();
+    }
+
+    public int getNrOfPuzzles() {
+        return nrOfPuzzles;
+    }
+
+    public List<String> getThemeNames() {
+        return Collections.unmodifiableList(themeNames);
+    }
+
+    //// building the index
+
+    /**
+     * reads the puzzle CSV file once and writes its index
+     * @return nr of indexed puzzles
+     */
+    public static int build(Path csvFile, Path indexFile) throws IOException {
+        Map<String,Integer> themeNrs = new LinkedHashMap<>();
+        int n = 0;
+        long[] offsets = new long[1 << 16];
+        int[] lengths = new int[offsets.length];
+        short[] ratings = new short[offsets.length];
+        byte[] popularities = new byte[offsets.length];
+        long[] themeBits = new long[offsets.length * 2];
+        try (InputStream in = new FileInputStream(csvFile.toFile())) {
+            byte[] chunk = new byte[1 << 16];
+            byte[] line = new byte[1024];
+            long offset = 0;     // of the line
+            int len = 0;
+            int chunkLen;
+            do {
+                chunkLen = in.read(chunk);
+                for (int k = 0; k < chunkLen || chunkLen < 0 && len > 0; k++) {
+                    if (chunkLen >= 0 && chunk[k] != '\n') {
+                        if (len == line.length)
+                            line = Arrays.copyOf(line, len * 2);
+                        line[len++] = chunk[k];
+                        continue;
+                    }
+                    final int contentLen = len > 0 && line[len - 1] == '\r' ? len - 1 : len;
+                    String[] fields = new String(line, 0, contentLen, StandardCharsets.UTF_8).split(",", -1);
+                    if (fields.length >= 8 && !fields[1].equals("FEN")) {
+                        if (n == offsets.length) {
+                            offsets = Arrays.copyOf(offsets, n * 2);
+                            lengths = Arrays.copyOf(lengths, n * 2);
+                            ratings = Arrays.copyOf(ratings, n * 2);
+                            popularities = Arrays.copyOf(popularities, n * 2);
+                            themeBits = Arrays.copyOf(themeBits, n * 4);
+                        }
+                        offsets[n] = offset;
+                        lengths[n] = contentLen;
+                        ratings[n] = (short) parseInt(fields[3], 0);
+                        popularities[n] = (byte) Math.max(-100, Math.min(100, parseInt(fields[5], 0)));
+                        for (String theme : fields[7].trim().split(" ")) {
+                            if (theme.isEmpty())
+                                continue;
+                            Integer t = themeNrs.get(theme);
+                            if (t == null) {
+                                if (themeNrs.size() == MAX_THEMES)
+                                    throw new IOException("More than " + MAX_THEMES + " themes in " + csvFile);
+                                t = themeNrs.size();
+                                themeNrs.put(theme, t);
+                            }
+                            themeBits[2 * n + (t >> 6)] |= 1L << (t & 63);
+                        }
+                        n++;
+                    }
+                    offset += len + 1;
+                    len = 0;
+                }
+            } while (chunkLen >= 0);
+        }
+        // entries sorted by rating bucket, within a bucket in the order of the file
+        int[] bucketStarts = new int[NR_OF_BUCKETS + 1];
+        for (int i = 0; i < n; i++)
+            bucketStarts[bucketOf(ratings[i]) + 1]++;
+        for (int b = 0; b < NR_OF_BUCKETS; b++)
+            bucketStarts[b + 1] += bucketStarts[b];
+        int[] order = new int[n];
+        int[] next = Arrays.copyOf(bucketStarts, NR_OF_BUCKETS);
+        for (int i = 0; i < n; i++)
+            order[next[bucketOf(ratings[i])]++] = i;
+
+        try (FileChannel out = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(16 + themeNrs.size() * 256 + (NR_OF_BUCKETS + 1) * 4);
+            header.putLong(MAGIC).putInt(n).putInt(themeNrs.size());
+            for (String theme : themeNrs.keySet()) {
+                byte[] name = theme.getBytes(StandardCharsets.UTF_8);
+                header.put((byte) Math.min(name.length, 255)).put(name, 0, Math.min(name.length, 255));
+            }
+            for (int start : bucketStarts)
+                header.putInt(start);
+            writeFully(out, header.flip());
+            ByteBuffer buffer = ByteBuffer.allocate(ENTRY_BYTES * 4096);
+            for (int k = 0; k < n; k++) {
+                final int i = order[k];
+                if (!buffer.hasRemaining())
+                    writeFully(out, buffer.flip()).clear();
+                buffer.putLong(offsets[i]).putInt(lengths[i]).putShort(ratings[i]).put(popularities[i]).put((byte) 0)
+                      .putLong(themeBits[2 * i]).putLong(themeBits[2 * i + 1]);
+            }
+            writeFully(out, buffer.flip());
+        }
+        return n;
+    }
+
+    private static ByteBuffer writeFully(FileChannel out, ByteBuffer b) throws IOException {
+        while (b.hasRemaining())
+            out.write(b);
+        return b;
+    }
+
+    private static int parseInt(String s, int dflt) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            return dflt;
+        }
+    }
+
+    private static int bucketOf(int rating) {
+        return Math.max(0, Math.min(rating, MAX_RATING)) / RATING_BUCKET_WIDTH;
+    }
+
+    //// queries
+
+    /**
+     * @param themes all of these themes are required
+     * @param excludedThemes none of these themes may be present
+     * @return the matching puzzles (index entries, sorted by rating, within the same rating bucket in the order
+     *         of the CSV file)
+     */
+    public int[] select(int minRating, int maxRating, Collection<String> themes, Collection<String> excludedThemes,
+                        int minPopularity) {
+        long[] required = themeMask(themes);
+        long[] excluded = themeMask(excludedThemes);
+        if (required == null)
+            return new int[0];    // an unknown theme is required
+        if (excluded == null)
+            excluded = new long[2];
+        int[] selected = new int[64];
+        int n = 0;
+        final int end = bucketStarts[bucketOf(maxRating) + 1];
+        for (int e = bucketStarts[bucketOf(minRating)]; e < end; e++) {
+            final int at = e * ENTRY_BYTES;
+            final int rating = entries.getShort(at + E_RATING);
+            if (rating < minRating || rating > maxRating || entries.get(at + E_POPULARITY) < minPopularity)
+                continue;
+            final long t0 = entries.getLong(at + E_THEMES);
+            final long t1 = entries.getLong(at + E_THEMES + 8);
+            if ((t0 & required[0]) != required[0] || (t1 & required[1]) != required[1]
+                || (t0 & excluded[0]) != 0 || (t1 & excluded[1]) != 0)
+                continue;
+            if (n == selected.length)
+                selected = Arrays.copyOf(selected, n * 2);
+            selected[n++] = e;
+        }
+        return Arrays.copyOf(selected, n);
+    }
+
+    /**
+     * @return theme bits or null if one of the themes is not known
+     */
+    private long[] themeMask(Collection<String> themes) {
+        long[] mask = new long[2];
+        for (String theme : themes) {
+            int t = themeNames.indexOf(theme);
+            if (t < 0)
+                return null;
+            mask[t >> 6] |= 1L << (t & 63);
+        }
+        return mask;
+    }
+
+    /**
+     * @return nrOfSamples of the selected puzzles chosen at random (reproducible by seed), or all if there are
+     *         not more
+     */
+    public static int[] sample(int[] selected, int nrOfSamples, long seed) {
+        if (selected.length <= nrOfSamples)
+            return selected;
+        int[] s = selected.clone();
+        Random random = new Random(seed);
+        for (int i = 0; i < nrOfSamples; i++) {
+            int j = i + random.nextInt(s.length - i);
+            int t = s[i];
+            s[i] = s[j];
+            s[j] = t;
+        }
+        return Arrays.copyOf(s, nrOfSamples);
+    }
+
+    public int getRating(int entry) {
+        return entries.getShort(entry * ENTRY_BYTES + E_RATING);
+    }
+
+    /**
+     * @return the CSV line of the puzzle (without line break)
+     */
+    public String getPuzzle(int entry) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(entries.getInt(entry * ENTRY_BYTES + E_LENGTH));
+        readFully(entries.getLong(entry * ENTRY_BYTES + E_OFFSET), b);
+        return new String(b.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * writes the CSV lines of the puzzles to out, in the order of the CSV file. Only their byte ranges are read,
+     * neighbouring ones together.
+     */
+    public void writePuzzles(int[] selected, Writer out) throws IOException {
+        long[] ranges = new long[selected.length];    // offset << 20 | length, to sort by offset
+        for (int i = 0; i < selected.length; i++) {
+            final int at = selected[i] * ENTRY_BYTES;
+            ranges[i] = entries.getLong(at + E_OFFSET) << 20 | Math.min(entries.getInt(at + E_LENGTH), (1 << 20) - 1);
+        }
+        Arrays.sort(ranges);
+        ByteBuffer b = ByteBuffer.allocate(1 << 16);
+        int i = 0;
+        while (i < ranges.length) {
+            final long from = ranges[i] >>> 20;
+            long to = from + (ranges[i] & ((1 << 20) - 1));
+            int j = i + 1;
+            // read close puzzles with one read, as long as they fit into the buffer
+            while (j < ranges.length && (ranges[j] >>> 20) - to < 4096
+                   && (ranges[j] >>> 20) + (ranges[j] & ((1 << 20) - 1)) - from <= b.capacity())
+                to = (ranges[j] >>> 20) + (ranges[j++] & ((1 << 20) - 1));
+            if (to - from > b.capacity())
+                b = ByteBuffer.allocate((int) (to - from));
+            b.clear().limit((int) (to - from));
+            readFully(from, b);
+            for (int k = i; k < j; k++) {
+                final int start = (int) ((ranges[k] >>> 20) - from);
+                out.write(new String(b.array(), start, (int) (ranges[k] & ((1 << 20) - 1)), StandardCharsets.UTF_8));
+                out.write('\n');
+            }
+            i = j;
+        }
+    }
+
+    private void readFully(long offset, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            if (csv.read(b, offset + b.position()) < 0)
+                throw new EOFException("Puzzle file is shorter than its index");
+        }
+    }
+}
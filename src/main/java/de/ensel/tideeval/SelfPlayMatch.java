@@ -0,0 +1,471 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static java.lang.System.exit;
+
+/**
+ * Self-play match between two engine configurations (engineP1, MAX_INTERESTING_NROF_HOPS and
+ * EVALPARAM_CP_PER_MOBILITYSQUARE), with many games running at the same time in one JVM.
+ * Every opening FEN is played twice, with swapped colors. Games end by mate, stalemate, 3-fold repetition,
+ * the 50 moves rule or adjudication: a win if the evaluations of both engines agree on more than resignCp
+ * for some moves in a row, a draw at the move limit. After each game the SPRT for elo0 against elo1 is updated,
+ * the match stops early when it is decided.
+ * The engine parameters are static for the whole JVM, so the two configurations cannot calculate at the same
+ * time: the games move in lock-step phases, first all games where A is to move calculate in parallel with A's
+ * parameters, then those where B is to move with B's. Each game therefore keeps one board per configuration,
+ * which only ever calculates with its configuration's parameters and catches up with the opponent's moves when
+ * it is its turn.
+ */
+public class SelfPlayMatch {
+
+    /**
+     * one engine configuration
+     */
+    public static final class Config {
+        final String name;
+        final int engineP1;
+        final int nrOfHops;
+        final int cpPerMobilitySquare;
+
+        Config(String name, int engineP1, int nrOfHops, int cpPerMobilitySquare) {
+            this.name = name;
+            this.engineP1 = engineP1;
+            this.nrOfHops = nrOfHops;
+            this.cpPerMobilitySquare = cpPerMobilitySquare;
+        }
+
+        /**
+         * @return the configuration currently set in ChessBoard
+         */
+        static Config current(String name) {
+            return new Config(name, ChessBoard.engineP1(), ChessBoard.getMAX_INTERESTING_NROF_HOPS(),
+                              ChessBoard.getEVALPARAM_CP_PER_MOBILITYSQUARE());
+        }
+
+        /**
+         * @param spec like "p1=3,hops=5,mob=4", parameters not mentioned keep the current values
+         */
+        static Config parse(String name, String spec) {
+            Config c = current(name);
+            int engineP1 = c.engineP1;
+            int nrOfHops = c.nrOfHops;
+            int cpPerMobilitySquare = c.cpPerMobilitySquare;
+            for (String param : spec.split(",")) {
+                if (param.isBlank())
+                    continue;
+                String[] kv = param.split("=", 2);
+                if (kv.length != 2)
+                    throw new IllegalArgumentException("Parameter must be name=value: " + param);
+                int value = Integer.parseInt(kv[1].trim());
+                switch (kv[0].trim().toLowerCase(Locale.ROOT)) {
+                    case "p1", "enginep1" -> engineP1 = value;
+                    case "hops", "nrofhops" -> nrOfHops = value;
+                    case "mob", "mobility" -> cpPerMobilitySquare = value;
+                    default -> throw new IllegalArgumentException("Unknown parameter: " + kv[0]);
+                }
+            }
+            return new Config(name, engineP1, nrOfHops, cpPerMobilitySquare);
+        }
+
+        void apply() {
+            ChessBoard.setEngineP1(engineP1);
+            ChessBoard.setMAX_INTERESTING_NROF_HOPS(nrOfHops);
+            ChessBoard.setEVALPARAM_CP_PER_MOBILITYSQUARE(cpPerMobilitySquare);
+        }
+
+        @Override
+        public String toString() {
+            return name + "(p1=" + engineP1 + ",hops=" + nrOfHops + ",mob=" + cpPerMobilitySquare + ")";
+        }
+    }
+
+    /**
+     * the standings of a match, from the view of configuration A
+     */
+    public static final class Result {
+        int wins;
+        int draws;
+        int losses;
+        long millis;
+
+        int getNrOfGames() {
+            return wins + draws + losses;
+        }
+
+        double getScore() {
+            final int n = getNrOfGames();
+            return n == 0 ? 0.5 : (wins + 0.5 * draws) / n;
+        }
+
+        /**
+         * @return elo difference A-B estimated from the score
+         */
+        double getElo() {
+            return scoreToElo(getScore());
+        }
+
+        /**
+         * @return the half width of the 95% confidence interval of getElo()
+         */
+        double getEloError() {
+            final int n = getNrOfGames();
+            if (n == 0)
+                return Double.POSITIVE_INFINITY;
+            final double s = getScore();
+            final double deviation = Math.sqrt(variance() / n);
+            return (scoreToElo(Math.max(0.001, Math.min(s + 1.96 * deviation, 0.999)))
+                    - scoreToElo(Math.max(0.001, Math.min(s - 1.96 * deviation, 0.999)))) / 2;
+        }
+
+        private double variance() {
+            final int n = getNrOfGames();
+            final double s = getScore();
+            return (wins * (1 - s) * (1 - s) + draws * (0.5 - s) * (0.5 - s) + losses * s * s) / n;
+        }
+
+        /**
+         * log-likelihood ratio of the hypotheses "A is elo1 stronger" against "A is elo0 stronger",
+         * with the normal approximation of the trinomial game results
+         */
+        double llr(double elo0, double elo1) {
+            final int n = getNrOfGames();
+            if (n == 0 || wins + draws == 0 || draws + losses == 0)
+                return 0.0;   // no variance yet
+            final double var = variance();
+            if (var <= 0)
+                return 0.0;
+            final double s0 = eloToScore(elo0);
+            final double s1 = eloToScore(elo1);
+            return n * (s1 - s0) * (2 * getScore() - s0 - s1) / (2 * var);
+        }
+
+        double gamesPerSecond() {
+            return millis > 0 ? getNrOfGames() * 1000.0 / millis : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d games: +%d =%d -%d, score %.1f%%, elo %+.1f +- %.1f, %.2f games/sec",
+                    getNrOfGames(), wins, draws, losses, getScore() * 100, getElo(), getEloError(), gamesPerSecond());
+        }
+    }
+
+    static double eloToScore(double elo) {
+        return 1.0 / (1.0 + Math.pow(10.0, -elo / 400.0));
+    }
+
+    static double scoreToElo(double score) {
+        if (score <= 0)
+            return Double.NEGATIVE_INFINITY;
+        if (score >= 1)
+            return Double.POSITIVE_INFINITY;
+        return -400.0 * Math.log10(1.0 / score - 1.0);
+    }
+
+    private final Config[] configs;
+    private final int nrOfThreads;
+    private int maxFullMoves = 150;
+    private int resignCp = 800;
+    private int resignMoves = 3;
+    private double elo0 = 0;
+    private double elo1 = 10;
+    private double alpha = 0.05;
+    private double beta = 0.05;
+
+    public SelfPlayMatch(Config a, Config b, int nrOfThreads) {
+        this.configs = new Config[] { a, b };
+        this.nrOfThreads = nrOfThreads;
+    }
+
+    void setAdjudication(int maxFullMoves, int resignCp, int resignMoves) {
+        this.maxFullMoves = maxFullMoves;
+        this.resignCp = resignCp;
+        this.resignMoves = resignMoves;
+    }
+
+    void setSprt(double elo0, double elo1, double alpha, double beta) {
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    double llrLowerBound() {
+        return Math.log(beta / (1 - alpha));
+    }
+
+    double llrUpperBound() {
+        return Math.log((1 - beta) / alpha);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int nrOfThreads = Runtime.getRuntime().availableProcessors();
+        int nrOfGames = 1000;
+        int maxFullMoves = 150;
+        double elo0 = 0;
+        double elo1 = 10;
+        String openingsFile = null;
+        int i = 0;
+        for (; i + 1 < args.length && args[i].startsWith("-"); i += 2) {
+            switch (args[i]) {
+                case "-t" -> nrOfThreads = Integer.parseInt(args[i + 1]);
+                case "-g" -> nrOfGames = Integer.parseInt(args[i + 1]);
+                case "-m" -> maxFullMoves = Integer.parseInt(args[i + 1]);
+                case "-o" -> openingsFile = args[i + 1];
+                case "-e0" -> elo0 = Double.parseDouble(args[i + 1]);
+                case "-e1" -> elo1 = Double.parseDouble(args[i + 1]);
+                default -> i = args.length;
+            }
+        }
+        if (args.length - i != 2) {
+            System.out.println("Usage: SelfPlayMatch [-t nrOfThreads] [-g nrOfGames] [-m maxFullMoves] "
+                               + "[-o openings.fen] [-e0 elo0] [-e1 elo1] <configA> <configB>\n"
+                               + "  config like p1=3,hops=5,mob=4 - parameters not mentioned keep their defaults");
+            exit(3);
+        }
+        List<String> openings = openingsFile == null ? List.of(FENPOS_STARTPOS) : readOpenings(Path.of(openingsFile));
+        SelfPlayMatch match = new SelfPlayMatch(Config.parse("A", args[i]), Config.parse("B", args[i + 1]),
+                                                nrOfThreads);
+        match.setAdjudication(maxFullMoves, match.resignCp, match.resignMoves);
+        match.setSprt(elo0, elo1, match.alpha, match.beta);
+        match.play(openings, nrOfGames, System.out);
+    }
+
+    /**
+     * @return the FENs of the file, one per line, empty lines and lines starting with # are skipped
+     */
+    static List<String> readOpenings(Path file) throws IOException {
+        List<String> openings = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#"))
+                openings.add(line);
+        }
+        return openings;
+    }
+
+    /**
+     * plays up to nrOfGames games (pairs of games per opening, the openings are repeated if necessary) or until
+     * the SPRT is decided
+     * @param out progress is printed here after each game, may be null
+     * @return the standings from the view of configuration A
+     */
+    public Result play(List<String> openings, int nrOfGames, PrintStream out) throws InterruptedException {
+        final Config original = Config.current("original");
+        ExecutorService workers = Executors.newFixedThreadPool(nrOfThreads);
+        // with the lock-step phases, more games than threads keep all threads busy
+        final int maxRunningGames = Math.max(2, nrOfThreads * 4);
+        Result result = new Result();
+        List<Game> running = new ArrayList<>();
+        int nrOfStartedGames = 0;
+        boolean decided = false;
+        final long startNanos = System.nanoTime();
+        if (out != null)
+            out.println("Match " + configs[0] + " vs. " + configs[1] + String.format(Locale.ROOT,
+                    ", SPRT elo0=%.1f elo1=%.1f alpha=%.2f beta=%.2f", elo0, elo1, alpha, beta));
+        try {
+            while (true) {
+                while (!decided && nrOfStartedGames < nrOfGames && running.size() < maxRunningGames) {
+                    // game 2k and 2k+1 play the same opening with swapped colors
+                    running.add(new Game(nrOfStartedGames + 1, openings.get((nrOfStartedGames / 2) % openings.size()),
+                                         nrOfStartedGames % 2 == 0));
+                    nrOfStartedGames++;
+                }
+                if (running.isEmpty())
+                    break;
+                for (int c = 0; c < 2; c++) {
+                    configs[c].apply();
+                    List<Callable<Void>> moves = new ArrayList<>();
+                    for (Game game : running) {
+                        if (!game.isOver() && game.configToMove() == c) {
+                            final int configIndex = c;
+                            moves.add(() -> {
+                                game.move(configIndex);
+                                return null;
+                            });
+                        }
+                    }
+                    for (Future<Void> move : workers.invokeAll(moves)) {
+                        try {
+                            move.get();
+                        } catch (ExecutionException e) {
+                            throw new IllegalStateException("Self-play game failed", e.getCause());
+                        }
+                    }
+                }
+                for (Iterator<Game> it = running.iterator(); it.hasNext(); ) {
+                    Game game = it.next();
+                    if (!game.isOver())
+                        continue;
+                    it.remove();
+                    final int scoreForA = game.aIsWhite ? game.whiteScore : -game.whiteScore;
+                    if (scoreForA > 0)
+                        result.wins++;
+                    else if (scoreForA < 0)
+                        result.losses++;
+                    else
+                        result.draws++;
+                    result.millis = (System.nanoTime() - startNanos) / 1000000;
+                    final double llr = result.llr(elo0, elo1);
+                    if (llr <= llrLowerBound() || llr >= llrUpperBound())
+                        decided = true;
+                    if (out != null)
+                        out.println(game + "\n  " + result + String.format(Locale.ROOT, ", LLR %.2f [%.2f,%.2f]",
+                                llr, llrLowerBound(), llrUpperBound()));
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            original.apply();
+        }
+        result.millis = (System.nanoTime() - startNanos) / 1000000;
+        if (out != null) {
+            final double llr = result.llr(elo0, elo1);
+            out.println("Result " + configs[0].name + " vs. " + configs[1].name + ": " + result
+                        + String.format(Locale.ROOT, ", LLR %.2f", llr)
+                        + (llr >= llrUpperBound() ? " - H1 accepted (" + configs[0].name + " is stronger)"
+                           : llr <= llrLowerBound() ? " - H0 accepted" : " - undecided"));
+        }
+        return result;
+    }
+
+    /**
+     * one game between the two configurations, with one board per configuration
+     */
+    final class Game {
+        final int gameNr;
+        final String fen;
+        final boolean aIsWhite;
+        private final boolean whiteStarts;
+        private final ChessBoard[] boards = new ChessBoard[2];
+        private final int[] nrOfAppliedMoves = new int[2];
+        private final List<String> moves = new ArrayList<>();
+        private int adjudicationStreak = 0;   // consecutive plies with an eval beyond resignCp, pos. pro white
+        private boolean over = false;
+        int whiteScore = 0;
+        String reason = "";
+
+        Game(int gameNr, String fen, boolean aIsWhite) {
+            this.gameNr = gameNr;
+            this.fen = fen;
+            this.aIsWhite = aIsWhite;
+            String[] fenParts = fen.trim().split(" +");
+            this.whiteStarts = fenParts.length < 2 || !fenParts[1].equals("b");
+        }
+
+        boolean isOver() {
+            return over;
+        }
+
+        /**
+         * @return index of the configuration to move
+         */
+        int configToMove() {
+            final boolean whiteToMove = whiteStarts == (moves.size() % 2 == 0);
+            return whiteToMove == aIsWhite ? 0 : 1;
+        }
+
+        /**
+         * calculates and plays the move of configuration c, must only run while c's parameters are set
+         */
+        void move(final int c) {
+            ChessBoard board = boards[c];
+            if (board == null) {
+                // the games already run in parallel
+                board = new ChessBoard("Game " + gameNr + " " + configs[c].name, fen, false);
+                boards[c] = board;
+            }
+            // catch up with the opponent's moves
+            while (nrOfAppliedMoves[c] < moves.size()) {
+                if (!board.doMove(moves.get(nrOfAppliedMoves[c])))
+                    throw new IllegalStateException("Board of " + configs[c].name + " cannot replay "
+                                                    + moves.get(nrOfAppliedMoves[c]) + " in game " + gameNr);
+                nrOfAppliedMoves[c]++;
+            }
+            final boolean col = board.getTurnCol();
+            Move bestMove = board.getBestMove();
+            if (bestMove == null || !bestMove.isMove()) {
+                if (board.isCheck(col))
+                    end(isWhite(col) ? -1 : 1, "mate");
+                else
+                    end(0, "stalemate");
+                return;
+            }
+            final String move = bestMove.toString();
+            if (!board.doMove(move)) {
+                end(isWhite(col) ? -1 : 1, "illegal move " + move);
+                return;
+            }
+            moves.add(move);
+            nrOfAppliedMoves[c]++;
+            if (board.getRepetitions() >= 2)
+                end(0, "3-fold repetition");
+            else if (board.getCountBoringMoves() >= 100)
+                end(0, "50 moves rule");
+            else {
+                final int eval = board.boardEvaluation();
+                if (eval >= resignCp)
+                    adjudicationStreak = Math.max(0, adjudicationStreak) + 1;
+                else if (eval <= -resignCp)
+                    adjudicationStreak = Math.min(0, adjudicationStreak) - 1;
+                else
+                    adjudicationStreak = 0;
+                // both engines took part in the streak, as they move alternately
+                if (Math.abs(adjudicationStreak) >= 2 * resignMoves)
+                    end(Integer.signum(adjudicationStreak), "adjudication");
+                else if (moves.size() >= 2 * maxFullMoves)
+                    end(0, "move limit");
+            }
+        }
+
+        private void end(int whiteScore, String reason) {
+            this.whiteScore = whiteScore;
+            this.reason = reason;
+            this.over = true;
+            boards[0] = null;   // no longer needed
+            boards[1] = null;
+        }
+
+        List<String> getMoves() {
+            return moves;
+        }
+
+        @Override
+        public String toString() {
+            final Config white = configs[aIsWhite ? 0 : 1];
+            final Config black = configs[aIsWhite ? 1 : 0];
+            return "Game " + gameNr + " " + white.name + "-" + black.name + " "
+                   + (whiteScore > 0 ? "1-0" : whiteScore < 0 ? "0-1" : "1/2-1/2")
+                   + " (" + reason + ", " + moves.size() + " plies)";
+        }
+    }
+}
@@ -32,6 +32,20 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static java.lang.Math.max;
 
 public class Square {
+    // results of pure clash simulations, shared by all squares of all boards calculated on the same thread - one
+    // cache per thread, so that boards calculated in parallel do not wait for each other
+    static final int CLASH_RESULT_CACHE_CAPACITY = 1<<14;
+    private static final ThreadLocal<ClashResultCache> clashResultCaches =
+            ThreadLocal.withInitial(() -> new ClashResultCache(CLASH_RESULT_CACHE_CAPACITY));
+    static long debug_clashEvalCounter = 0;     // clash evaluations, incl. the ones found in the cache
+
+    /**
+     * @return the clash result cache of the current thread
+     */
+    static ClashResultCache clashResultCache() {
+        return clashResultCaches.get();
+    }
+
     private static final int MAX_LOOKAHEAD_FOR2NDROW_CANDIDATES = 4;
     final ChessBoard board;
     private final int myPos; // mainly for debugging and output
@@ -50,6 +64,11 @@ public class Square {
      * HOPCOUNT==1 is hopcount 1 in 2nd row. all following n are n...
      */
     List<List<List<VirtualPieceOnSquare>>> coverageOfColorPerHops;
+    // preallocated scratch structures for updateClashResultAndRelEvals(), reused for every call on this square
+    private final List<List<VirtualPieceOnSquare>> clashCandidates = new ArrayList<>(2);
+    private final List<List<VirtualPieceOnSquare>> clash2ndRow = new ArrayList<>(2);  // those "in second row" (Queen behind a rook, bishop behind a pawn, etc.)
+    private final VirtualPieceOnSquare[] specialFirstVisitor = new VirtualPieceOnSquare[2];
+    private final int[] clashResultIfTaken = new int[MAX_PIECES+2];
     boolean[] blocksCheckFor = new boolean[2];  // tells if a piece here can block a check here (for king with colorindex) by taking a checker of moving in the way
     private final boolean[] extraCoverageOfKingPinnedPiece  = new boolean[2];  // extra coverage of this square by a king-pinned piece - this does not count for clashes, but still prevents the king to take back or go there...
 
@@ -66,10 +85,58 @@ public class Square {
             coverageOfColorPerHops.get(h).add(new ArrayList<>()); // for white
             coverageOfColorPerHops.get(h).add(new ArrayList<>()); // for black
         }
+        for (int ci = 0; ci <= 1; ci++) {
+            clashCandidates.add(new ArrayList<>(MAX_PIECES>>1));
+            clash2ndRow.add(new ArrayList<>(MAX_PIECES>>2));
+        }
+    }
+
+    /**
+     * copy constructor for ChessBoard.copy(): copies the values and creates copies of all vPces here.
+     * References to other vPces follow in copyReferencesFrom(), once all Squares of the copied board exist.
+     */
+    Square(ChessBoard myChessBoard, Square o) {
+        this(myChessBoard, o.myPos);
+        myPieceID = o.myPieceID;
+        for (VirtualPieceOnSquare vPce : o.vPieces)
+            vPieces.add(vPce == null ? null : VirtualPieceOnSquare.copyOf(myChessBoard, vPce));
+        clashEvalResult = o.clashEvalResult;
+        if (o.clashMoves != null) {
+            clashMoves = new ArrayList<>(o.clashMoves.size());
+            for (Move m : o.clashMoves)
+                clashMoves.add(m == null ? null : new Move(m));
+        }
+        futureClashResults = o.futureClashResults == null ? null : o.futureClashResults.clone();
+        clashResultsLastUpdate = o.clashResultsLastUpdate;
+        System.arraycopy(o.clashResultIfTaken, 0, clashResultIfTaken, 0, clashResultIfTaken.length);
+        blocksCheckFor = o.blocksCheckFor.clone();
+        System.arraycopy(o.extraCoverageOfKingPinnedPiece, 0, extraCoverageOfKingPinnedPiece, 0, 2);
+    }
+
+    /**
+     * second step of ChessBoard.copy(): lets all vPces here take over their references, and
+     * re-targets the coverage lists to the vPces of the copied board.
+     */
+    void copyReferencesFrom(Square o, Map<ConditionalDistance, ConditionalDistance> copiedDistances) {
+        for (int pid = 0; pid < vPieces.size(); pid++) {
+            if (vPieces.get(pid) != null)
+                vPieces.get(pid).copyReferencesFrom(o.vPieces.get(pid), copiedDistances);
+        }
+        for (int h = 0; h < o.coverageOfColorPerHops.size(); h++) {
+            for (int ci = 0; ci <= 1; ci++) {
+                List<VirtualPieceOnSquare> coverage = coverageOfColorPerHops.get(h).get(ci);
+                for (VirtualPieceOnSquare vPce : o.coverageOfColorPerHops.get(h).get(ci))
+                    coverage.add(board.copiedVPce(vPce));
+            }
+        }
     }
 
     void prepareNewPiece(int newPceID) {
-        vPieces.add(newPceID, VirtualPieceOnSquare.generateNew(board, newPceID, getMyPos() ));
+        VirtualPieceOnSquare vPce = VirtualPieceOnSquare.generateNew(board, newPceID, getMyPos());
+        if (newPceID < vPieces.size())
+            vPieces.set(newPceID, vPce);   // a pieceID that is used again (see ChessBoard.undoMove())
+        else
+            vPieces.add(newPceID, vPce);
     }
 
     void spawnPiece(int pid) {
@@ -276,6 +343,70 @@ public class Square {
                                                     final List<VirtualPieceOnSquare> whiteOthers,
                                                     final List<VirtualPieceOnSquare> blackOthers,
                                                     List<Move> moves
+    ) {
+        debug_clashEvalCounter++;
+        // without 2nd row pieces the moves do not matter and the result only depends on the values in the lists
+        // -> it can be looked up in the clash cache
+        if ( !USE_CLASH_RESULT_CACHE
+                || (whiteOthers!=null && !whiteOthers.isEmpty())
+                || (blackOthers!=null && !blackOthers.isEmpty()) )
+            return simulateClashExcludingOne(turn, vPceOnSquare, whites, blacks,
+                                             excludeVPce1, excludeVPce2, whiteOthers, blackOthers, moves);
+        ClashResultCache.Signature signature = clashSignature(turn, vPceOnSquare, whites, blacks,
+                                                              excludeVPce1, excludeVPce2);
+        final ClashResultCache clashResultCache = clashResultCaches.get();
+        Integer cachedResult = clashResultCache.get(signature);
+        if (cachedResult != null)
+            return cachedResult;
+        int result = simulateClashExcludingOne(turn, vPceOnSquare, whites, blacks,
+                                               excludeVPce1, excludeVPce2, whiteOthers, blackOthers, moves);
+        clashResultCache.put(signature, result);
+        return result;
+    }
+
+    /**
+     * builds the key for the clash cache. It contains everything simulateClashExcludingOne() depends on,
+     * if there are no 2nd row pieces: the value of the piece on the square, who's turn it is, the king pin flags
+     * and then per white and black piece its value and if it is a king or excluded.
+     */
+    private ClashResultCache.Signature clashSignature(final boolean turn,
+                                                      final VirtualPieceOnSquare vPceOnSquare,
+                                                      final List<VirtualPieceOnSquare> whites,
+                                                      final List<VirtualPieceOnSquare> blacks,
+                                                      final VirtualPieceOnSquare excludeVPce1,
+                                                      final VirtualPieceOnSquare excludeVPce2) {
+        int[] content = new int[2 + whites.size() + blacks.size()];
+        content[0] = (vPceOnSquare.getValue() << 3)
+                | (isWhite(turn) ? 4 : 0)
+                | (extraCoverageOfKingPinnedPiece[CIWHITE] ? 2 : 0)
+                | (extraCoverageOfKingPinnedPiece[CIBLACK] ? 1 : 0);
+        content[1] = whites.size();
+        int i = 2;
+        for (VirtualPieceOnSquare vPce : whites)
+            content[i++] = clashSignatureEntry(vPce, excludeVPce1, excludeVPce2);
+        for (VirtualPieceOnSquare vPce : blacks)
+            content[i++] = clashSignatureEntry(vPce, excludeVPce1, excludeVPce2);
+        return new ClashResultCache.Signature(content);
+    }
+
+    private static int clashSignatureEntry(final VirtualPieceOnSquare vPce,
+                                           final VirtualPieceOnSquare excludeVPce1,
+                                           final VirtualPieceOnSquare excludeVPce2) {
+        return (vPce.getValue() << 3)
+                | (isKing(vPce.getPieceType()) ? 4 : 0)
+                | (vPce == excludeVPce1 ? 2 : 0)
+                | (vPce == excludeVPce2 ? 1 : 0);
+    }
+
+    private int simulateClashExcludingOne( final boolean turn,
+                                                  final VirtualPieceOnSquare vPceOnSquare,
+                                                  List<VirtualPieceOnSquare> whites,
+                                                  List<VirtualPieceOnSquare> blacks,
+                                                  final VirtualPieceOnSquare excludeVPce1,
+                                                  final VirtualPieceOnSquare excludeVPce2,
+                                                  final List<VirtualPieceOnSquare> whiteOthers,
+                                                  final List<VirtualPieceOnSquare> blackOthers,
+                                                  List<Move> moves
     ) {
         boolean whitesIsCopy = false;
         boolean blacksIsCopy = false;
@@ -366,7 +497,7 @@ public class Square {
                 vPceOnSquare.getMyPos()));  // ToDo: Make+use getter for myPos
         //// filling up whites and blacks from 2nd row, was originally implemented here, but in cases where the 1st row is empty from the beginning, this was not working.
 
-        resultIfTaken += calcClashResultExcludingOne(
+        resultIfTaken += simulateClashExcludingOne(
                 !turn,assassin,
                 whites, blacks,
                 excludeVPce1,
@@ -394,14 +525,11 @@ public class Square {
         // run over all vPieces on this square and correctly build the pre-ordered vPce-Lists
         // (that are later used to calculate the clashes)
         // at the same time find clash candidates, that will be sorted into the two above during clash evaluation
-        List<List<VirtualPieceOnSquare>> clashCandidates = new ArrayList<>(2);
-        //clash2ndRow those "in second row" (Queen behind a rook, bishop behind a pawn, etc.)
-        List<List<VirtualPieceOnSquare>> clash2ndRow = new ArrayList<>(2);
-        List<VirtualPieceOnSquare> specialFirstVisitor = new ArrayList<>(2);
+        // (all three are kept sorted by inserting at the right place, so no sorting is needed later)
         for (int ci = 0; ci <= 1; ci++) {
-            clashCandidates.add(new ArrayList<>());
-            clash2ndRow.add(new ArrayList<>());
-            specialFirstVisitor.add(null);
+            clashCandidates.get(ci).clear();
+            clash2ndRow.get(ci).clear();
+            specialFirstVisitor[ci] = null;
         }
         if (DEBUGMSG_CLASH_CALCULATION) {
             debugPrintln(DEBUGMSG_CLASH_CALCULATION, "");
@@ -418,8 +546,7 @@ public class Square {
                 if (d == 1) {
                     debugPrint(DEBUGMSG_CLASH_CALCULATION, " +adding direct clash candidate:");
                     putVPceIntoCoverageList(vPce, 0);
-                    clashCandidates.get(colorIndex(vPce.color()))
-                            .add(vPce);
+                    addSortedByValue(clashCandidates.get(colorIndex(vPce.color())), vPce);
                 }
                 // fill 2nd row clash candidates
                 else if (d <= MAX_LOOKAHEAD_FOR2NDROW_CANDIDATES    // we only look max 4 hops ahead. enough for a queen behind a rook and another rook - we neglect e.g. having 2 queens and 2 rooks in a row... - now 4 as 3 is not enough if bishop behind pawn, where pawn cannot move easily (and is 1+3+1==4...)
@@ -454,12 +581,9 @@ public class Square {
                 ) {
                     // a straight pawn that cannot take part in the clash, but move there first...
                     // we need to remember this special case
-                    specialFirstVisitor.set( colorIndex(vPce.color()), vPce);
+                    specialFirstVisitor[colorIndex(vPce.color())] = vPce;
                 }
             }
-        for (int ci = 0; ci <= 1; ci++) {
-            clashCandidates.get(ci).sort(VirtualPieceOnSquare::compareTo);
-        }
 
         // simulate the clash!
         // instead of recursion (prev. implementation) now we loop down to integrate the 2nd row candidates at the
@@ -474,9 +598,10 @@ public class Square {
             //TODO do not skip=continue here for same color as piece on square, but calc if was useful, if an own piece would come closer
             int turnCI = firstTurnCI;  // we alternate, which color makes the 1st move ... and the 3rd, 5th,...
             int exchangeCnt = 0;
-            int[] resultIfTaken = new int[clashCandidates.get(0).size() + clashCandidates.get(1).size()
+            final int[] resultIfTaken = clashResultIfTaken;
+            Arrays.fill(resultIfTaken, 0, clashCandidates.get(0).size() + clashCandidates.get(1).size()
                     + clash2ndRow.get(0).size() + clash2ndRow.get(1).size() + 1
-                    + (specialFirstVisitor.get(0) != null || specialFirstVisitor.get(1) != null ? 1 : 0)];
+                    + (specialFirstVisitor[0] != null || specialFirstVisitor[1] != null ? 1 : 0), 0);
             resultIfTaken[0] = (isEmpty() || (colorlessPieceType(myPiece().getPieceType())==KING)
                     ? 0   // treat king like empty square - it will never be beaten directly, but move away before
                     : -getvPiece(getPieceID()).getValue());
@@ -508,8 +633,8 @@ public class Square {
             for (int ci = 0; ci <= 1; ci++)
                 clashCandidatesWorklist.add(clashCandidates.get(ci).subList(0, clashCandidates.get(ci).size()));
             VirtualPieceOnSquare firstAssassin = null;
-            if (specialFirstVisitor.get(turnCI) != null) {
-                firstAssassin = specialFirstVisitor.get(turnCI);
+            if (specialFirstVisitor[turnCI] != null) {
+                firstAssassin = specialFirstVisitor[turnCI];
                 // push into worklist
                 clashCandidatesWorklist.get(turnCI).add(0, firstAssassin);
             }
@@ -597,10 +722,7 @@ public class Square {
                     }
                     //TODO!: bug here: pces from 2nd row list, which are actually in "3rd row" are hre incorrectly sorted into later lists, although they are 2nd row still
                 }
-            for(int h=0; h<MAX_INTERESTING_NROF_HOPS; h++) {
-                coverageOfColorPerHops.get(h).get(CIWHITE).sort(VirtualPieceOnSquare::compareTo); // for white
-                coverageOfColorPerHops.get(h).get(CIBLACK).sort(VirtualPieceOnSquare::compareTo); // for black
-            }
+            // (no sorting of coverageOfColorPerHops needed here any more, putVPceIntoCoverageList() keeps them sorted)
             // if nothing happened - i.e. no direct piece of firstTurnCI is there
             if (exchangeCnt==0) { // nothing happened - original piece stays untouched,
                 for (VirtualPieceOnSquare vPce : vPieces) {
@@ -736,8 +858,8 @@ public class Square {
                                     clashCandidates.get(CIWHITE),
                                     clashCandidates.get(CIBLACK),
                                     vPce,
-                                    new ArrayList<VirtualPieceOnSquare>(0),
-                                    new ArrayList<VirtualPieceOnSquare>(0),
+                                    Collections.emptyList(),
+                                    Collections.emptyList(),
                                     null);  //Todo: Check if a first move needs to be added, as it could already fulful conditions!
                             clashContrib = clashEvalResult - clashResultWithoutVPce;
                         }
@@ -868,10 +990,24 @@ public class Square {
     private void putVPceIntoCoverageList(VirtualPieceOnSquare vPce, int d) {
         // add this piece to the list of attackers/defenders
         debugPrint(DEBUGMSG_CLASH_CALCULATION, " +adding " + vPce + " at d=" + d + " ");
-        coverageOfColorPerHops
+        List<VirtualPieceOnSquare> coverageList = coverageOfColorPerHops
                 .get(d)
-                .get(colorIndex(vPce.color()))
-                .add(vPce);
+                .get(colorIndex(vPce.color()));
+        if (d < MAX_INTERESTING_NROF_HOPS)
+            addSortedByValue(coverageList, vPce);
+        else
+            coverageList.add(vPce);  // the last list has never been sorted (nor cleared) - keep it like that for now
+    }
+
+    /**
+     * inserts vPce into an already sorted list behind all equal ones - so the result is the same as an add()
+     * followed by a (stable) sort(VirtualPieceOnSquare::compareTo), but without re-sorting all the time.
+     */
+    private static void addSortedByValue(List<VirtualPieceOnSquare> sortedList, VirtualPieceOnSquare vPce) {
+        int i = sortedList.size();
+        while (i > 0 && sortedList.get(i-1).compareTo(vPce) > 0)
+            i--;
+        sortedList.add(i, vPce);
     }
 
 
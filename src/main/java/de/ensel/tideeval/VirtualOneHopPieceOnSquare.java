@@ -38,6 +38,18 @@ public class VirtualOneHopPieceOnSquare extends VirtualPieceOnSquare {
         singleNeighbours = new ArrayList<>(MAXMAINDIRS);
     }
 
+    public VirtualOneHopPieceOnSquare(ChessBoard myChessBoard, VirtualOneHopPieceOnSquare o) {
+        super(myChessBoard, o);
+        singleNeighbours = new ArrayList<>(MAXMAINDIRS);
+    }
+
+    @Override
+    void copyReferencesFrom(VirtualPieceOnSquare o, Map<ConditionalDistance, ConditionalDistance> copiedDistances) {
+        super.copyReferencesFrom(o, copiedDistances);
+        for (VirtualOneHopPieceOnSquare n : ((VirtualOneHopPieceOnSquare)o).singleNeighbours)
+            singleNeighbours.add((VirtualOneHopPieceOnSquare)board.copiedVPce(n));
+    }
+
     @Override
     protected List<VirtualPieceOnSquare> getNeighbours() {
         return Collections.unmodifiableList(singleNeighbours);
@@ -102,7 +114,7 @@ public class VirtualOneHopPieceOnSquare extends VirtualPieceOnSquare {
     protected void quePropagateDistanceChangeToAllOneHopNeighbours() {    // final int minDist, final int maxDist) {
         myPiece().quePropagation(
                 minDistanceSuggestionTo1HopNeighbour().dist(),
-                this::doNowPropagateDistanceChangeToAllOneHopNeighbours);
+                this, VirtualOneHopPieceOnSquare::doNowPropagateDistanceChangeToAllOneHopNeighbours);
     }
 
     private void doNowPropagateDistanceChangeToUninformedNeighbours() {
@@ -117,7 +129,7 @@ public class VirtualOneHopPieceOnSquare extends VirtualPieceOnSquare {
     protected void quePropagateDistanceChangeToUninformedNeighbours() {
         myPiece().quePropagation(
                 minDistanceSuggestionTo1HopNeighbour().dist(),
-                this::doNowPropagateDistanceChangeToUninformedNeighbours);
+                this, VirtualOneHopPieceOnSquare::doNowPropagateDistanceChangeToUninformedNeighbours);
     }
 
     @Override
@@ -216,7 +228,7 @@ public class VirtualOneHopPieceOnSquare extends VirtualPieceOnSquare {
             //propagateDistanceChangeToAllOneHopNeighbours();
             myPiece().quePropagation(
                     0,
-                    this::recalcRawMinDistanceFromNeighboursAndPropagate);
+                    this, VirtualOneHopPieceOnSquare::recalcRawMinDistanceFromNeighboursAndPropagate);
             return;
         }
         // propagate on
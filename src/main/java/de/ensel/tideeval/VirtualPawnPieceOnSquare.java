@@ -33,6 +33,11 @@ public class VirtualPawnPieceOnSquare extends VirtualOneHopPieceOnSquare {
         super(myChessBoard, newPceID, pceType, myPos);
     }
 
+    public VirtualPawnPieceOnSquare(ChessBoard myChessBoard, VirtualPawnPieceOnSquare o) {
+        super(myChessBoard, o);
+        updatesOpenFromPos = o.updatesOpenFromPos;
+    }
+
 
     @Override
     protected void resetMovepathBackTo(int frompos) {
@@ -89,7 +94,7 @@ public class VirtualPawnPieceOnSquare extends VirtualOneHopPieceOnSquare {
                 quePriority=0;  // resets/unreachables must be propagated immediately
             myPiece().quePropagation(
                     quePriority,
-                    this::doPropagatePawnDistanceToNeighbours);
+                    this, VirtualPawnPieceOnSquare::doPropagatePawnDistanceToNeighbours);
         }
     }
 
@@ -97,6 +97,59 @@ public abstract class VirtualPieceOnSquare implements Comparable<VirtualPieceOnS
         return new VirtualOneHopPieceOnSquare(myChessBoard,newPceID, pceType, myPos);
     }
 
+    /**
+     * copy constructor for ChessBoard.copy(): copies all values, but not yet the references to other vPces.
+     * Those can only be re-targeted by copyReferencesFrom() after all vPces of the copied board exist.
+     */
+    protected VirtualPieceOnSquare(ChessBoard myChessBoard, VirtualPieceOnSquare o) {
+        this.board = myChessBoard;
+        this.myPceType = o.myPceType;
+        this.myPos = o.myPos;
+        myPceID = o.myPceID;
+        relEval = o.relEval;
+        relClashContrib = o.relClashContrib;
+        latestChange = o.latestChange;
+        chances = o.chances == null ? null : new EvalPerTargetAggregation(o.chances);
+        moveAwayChances = o.moveAwayChances == null ? null : new EvalPerTargetAggregation(o.moveAwayChances);
+        futureChances = o.futureChances == null ? null : new EvalPerTargetAggregation(o.futureChances);
+        forkingChance = o.forkingChance;
+        isCheckGiving = o.isCheckGiving;
+        if (o.firstMovesWithReasonableShortestWayToHere != null) {
+            firstMovesWithReasonableShortestWayToHere = new HashSet<>(o.firstMovesWithReasonableShortestWayToHere.size());
+            for (Move m : o.firstMovesWithReasonableShortestWayToHere)
+                firstMovesWithReasonableShortestWayToHere.add(new Move(m));
+        }
+        mobilityFromHere = o.mobilityFromHere;
+        mobilityMapFromHere = o.mobilityMapFromHere;
+        priceToKill = o.priceToKill;
+        killable = o.killable;
+    }
+
+    public static VirtualPieceOnSquare copyOf(ChessBoard myChessBoard, VirtualPieceOnSquare o) {
+        if (o instanceof VirtualSlidingPieceOnSquare)
+            return new VirtualSlidingPieceOnSquare(myChessBoard, (VirtualSlidingPieceOnSquare)o);
+        if (o instanceof VirtualPawnPieceOnSquare)
+            return new VirtualPawnPieceOnSquare(myChessBoard, (VirtualPawnPieceOnSquare)o);
+        return new VirtualOneHopPieceOnSquare(myChessBoard, (VirtualOneHopPieceOnSquare)o);
+    }
+
+    /**
+     * second step of ChessBoard.copy(): takes over all references of the original o to vPces and distances,
+     * re-targeted to the corresponding ones on this board.
+     * @param o the original vPce this one was copied from
+     * @param copiedDistances originals -> copies of the ConditionalDistances, see ConditionalDistance.copyFor()
+     */
+    void copyReferencesFrom(VirtualPieceOnSquare o, Map<ConditionalDistance, ConditionalDistance> copiedDistances) {
+        rawMinDistance = ConditionalDistance.copyFor(o.rawMinDistance, board, copiedDistances);
+        minDistance = ConditionalDistance.copyFor(o.minDistance, board, copiedDistances);
+        suggestionTo1HopNeighbour = ConditionalDistance.copyFor(o.suggestionTo1HopNeighbour, board, copiedDistances);
+        abzugChecker = board.copiedVPce(o.abzugChecker);
+        predecessors = board.copiedVPces(o.predecessors);
+        directAttackVPcs = board.copiedVPces(o.directAttackVPcs);
+        shortestReasonableUnconditionedPredecessors = board.copiedVPces(o.shortestReasonableUnconditionedPredecessors);
+        shortestReasonablePredecessors = board.copiedVPces(o.shortestReasonablePredecessors);
+    }
+
     int addBetterChance(int benefit, int futureLevel, int relEval, int relEvalFL) {
         if (relEvalFL < futureLevel) {
             if (relEval != 0)
@@ -791,6 +844,14 @@ public abstract class VirtualPieceOnSquare implements Comparable<VirtualPieceOnS
         return myPiece().getValue();
     }
 
+    /**
+     * equality stays identity, but the hash only depends on piece and square, so that HashSets of vPces
+     * iterate in the same order on every run and on a ChessBoard.copy()
+     */
+    @Override
+    public int hashCode() {
+        return myPceID * NR_SQUARES + myPos;
+    }
 
 /*    @Override
     public boolean equals(Object o) {
@@ -1579,7 +1640,7 @@ public abstract class VirtualPieceOnSquare implements Comparable<VirtualPieceOnS
             ) {
                 myPiece().quePropagation(
                         0,
-                        this::propagateResetIfUSWToAllNeighbours);
+                        this, VirtualPieceOnSquare::propagateResetIfUSWToAllNeighbours);
             }
             quePropagateDistanceChangeToAllNeighbours();
         }
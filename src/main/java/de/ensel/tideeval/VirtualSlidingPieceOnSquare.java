@@ -49,6 +49,28 @@ public class VirtualSlidingPieceOnSquare extends VirtualPieceOnSquare {
         resetSlidingDistances();
     }
 
+    public VirtualSlidingPieceOnSquare(ChessBoard myChessBoard, VirtualSlidingPieceOnSquare o) {
+        super(myChessBoard, o);
+        slidingNeighbours = new VirtualSlidingPieceOnSquare[MAXMAINDIRS];
+        uniqueShortestWayDirIndex = o.uniqueShortestWayDirIndex;
+        System.arraycopy(o.latestUpdateFromSlidingNeighbour, 0, latestUpdateFromSlidingNeighbour, 0, MAXMAINDIRS);
+    }
+
+    @Override
+    void copyReferencesFrom(VirtualPieceOnSquare o, Map<ConditionalDistance, ConditionalDistance> copiedDistances) {
+        super.copyReferencesFrom(o, copiedDistances);
+        VirtualSlidingPieceOnSquare so = (VirtualSlidingPieceOnSquare)o;
+        for (int i = 0; i < MAXMAINDIRS; i++) {
+            slidingNeighbours[i] = (VirtualSlidingPieceOnSquare)board.copiedVPce(so.slidingNeighbours[i]);
+            suggDistFromSlidingNeighbours[i] = ConditionalDistance.copyFor(so.suggDistFromSlidingNeighbours[i], board, copiedDistances);
+        }
+        if (so.allNeighbours != null) {
+            allNeighbours = new ArrayList<>(so.allNeighbours.size());
+            for (VirtualPieceOnSquare n : so.allNeighbours)
+                allNeighbours.add(board.copiedVPce(n));
+        }
+    }
+
     protected void resetSlidingDistances() {
         for (int i = 0; i < MAXMAINDIRS; i++) {
             if (suggDistFromSlidingNeighbours[i]==null)
@@ -84,7 +106,7 @@ public class VirtualSlidingPieceOnSquare extends VirtualPieceOnSquare {
                 int finalDirIndex = dirIndex;
                 myPiece().quePropagation(
                         suggestion.dist(),
-                        () -> doNowPropagateDistanceChangeToOneUninformedNeighbours(finalDirIndex));
+                        this, vPce -> vPce.doNowPropagateDistanceChangeToOneUninformedNeighbours(finalDirIndex));
             }
         }
     }
@@ -310,7 +332,7 @@ public class VirtualSlidingPieceOnSquare extends VirtualPieceOnSquare {
             ConditionalDistance suggestion = getSuggestionToPassthroughIndex(passingThroughInDirIndex);
             myPiece().quePropagation( min(suggestion.dist(),   // que at either the correct new distance - or (if smaller) the previous, smaller dist, to be sure to update it in time!  //Todo!!: Check if same is necessary for other Piece-Types! probably yes!
                                       n.suggDistFromSlidingNeighbours[oppositeDirIndex(passingThroughInDirIndex)].dist() ) ,
-                        ()-> doNowPropagateDistanceChangeToSlidingNeighbourInDirExceptFresherThan(
+                        this, vPce -> vPce.doNowPropagateDistanceChangeToSlidingNeighbourInDirExceptFresherThan(
                                 passingThroughInDirIndex, updateAgeLimit));
         }
     }
@@ -330,7 +352,7 @@ public class VirtualSlidingPieceOnSquare extends VirtualPieceOnSquare {
         if (slidingNeighbours[passingThroughInDirIndex] != null) {
             myPiece().quePropagation(
                     getSuggestionToPassthroughIndex(passingThroughInDirIndex).dist(),
-                    ()->doNowPropagateIncreasingDistanceChangeToSlidingNeighbourInDir(passingThroughInDirIndex));
+                    this, vPce -> vPce.doNowPropagateIncreasingDistanceChangeToSlidingNeighbourInDir(passingThroughInDirIndex));
         }
     }
 
@@ -783,7 +805,7 @@ public class VirtualSlidingPieceOnSquare extends VirtualPieceOnSquare {
             // instead we need to get update from best neighbour (but not now, only later with breadth propagation.
             myPiece().quePropagation(
                     0,
-                    this::recalcRawMinDistanceFromNeighboursAndPropagate);
+                    this, VirtualSlidingPieceOnSquare::recalcRawMinDistanceFromNeighboursAndPropagate);
         }
     }
 
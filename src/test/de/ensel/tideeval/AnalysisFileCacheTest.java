@@ -0,0 +1,91 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisFileCacheTest {
+
+    private static String tempCacheFileName() throws IOException {
+        File f = File.createTempFile("tideeval-analysis", ".cache");
+        f.deleteOnExit();
+        assertTrue(f.delete());   // the cache creates it itself
+        return f.getPath();
+    }
+
+    @Test
+    void putAndGetAcrossInstances_Test() throws IOException {
+        String fileName = tempCacheFileName();
+        AnalysisFileCache cache = new AnalysisFileCache(fileName, 1000, 1);
+        assertEquals(1024, cache.getNrOfSlots());
+        assertEquals(0L, cache.get(4711L));
+        cache.put(4711L, new Move("e7e8n"));
+        cache.put(4711L + 1024, new Move("a2a4"));   // same home slot
+        // a second instance (as in another process) sees the same table
+        AnalysisFileCache other = new AnalysisFileCache(fileName, 64, 1);
+        assertEquals(1024, other.getNrOfSlots());
+        long data = other.get(4711L);
+        assertEquals("e7e8n", AnalysisFileCache.moveOf(data).toString());
+        assertEquals("a2a4", AnalysisFileCache.moveOf(other.get(4711L + 1024)).toString());
+        // results of other engine versions are not used
+        assertEquals(0L, new AnalysisFileCache(fileName, 64, 2).get(4711L));
+    }
+
+    @Test
+    void createConcurrently_Test() throws IOException, InterruptedException, ExecutionException {
+        String fileName = tempCacheFileName();
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<AnalysisFileCache>> caches = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                caches.add(workers.submit(() -> new AnalysisFileCache(fileName, 1000, 1)));
+            // nobody sees the file before its header is complete
+            for (Future<AnalysisFileCache> cache : caches)
+                assertEquals(1024, cache.get().getNrOfSlots());
+            caches.get(0).get().put(4711L, new Move("e2e4"));
+            assertEquals("e2e4", AnalysisFileCache.moveOf(caches.get(7).get().get(4711L)).toString());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    void controllerUsesAnalysisFileCache_Test() throws IOException {
+        String fileName = tempCacheFileName();
+        String fen = "r2q1rk1/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2Q1RK1 w - - 6 8";
+        ChessBoardController first = new ChessBoardController();
+        assertTrue(first.setParam("analysisCache", fileName));
+        first.setBoard(fen);
+        String move = first.getMove();
+        ChessBoardController second = new ChessBoardController();
+        assertTrue(second.setParam("analysisCache", fileName));
+        second.setBoard(fen);
+        assertEquals(move, second.getMove());
+        assertTrue(second.getBoardInfo().get("Analysis file cache:").contains("hits=1"));
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BenchTest {
+
+    @Test
+    void run_Test() {
+        String[] fens = { Bench.BENCH_POSITIONS[7], Bench.BENCH_POSITIONS[11] };
+        Bench.Result first = Bench.run(fens, null);
+        // the same counts and signature each time, also if the positions were calculated before
+        Bench.Result second = Bench.run(fens, null);
+        assertEquals(2, first.nrOfPositions);
+        assertTrue(first.propagations > 0);
+        assertTrue(first.clashEvals > 0);
+        assertEquals(first.propagations, second.propagations);
+        assertEquals(first.clashEvals, second.clashEvals);
+        assertEquals(first.signature, second.signature);
+        assertTrue(second.toString().contains("signature " + first.signature));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static de.ensel.tideeval.ChessBasics.ANYWHERE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CalcArenaTest {
+
+    @Test
+    void recycling_Test() {
+        CalcArena arena = new CalcArena();
+        Evaluation e1 = arena.evaluation(10);
+        e1.addEval(100, 0);
+        EvaluatedMove em1 = arena.evaluatedMove(8, 16);
+        em1.addEval(50, 1);
+        em1.setIsCheckGiving();
+        List<EvaluatedMove> l1 = arena.evaluatedMoveList();
+        l1.add(em1);
+        assertEquals(3, arena.getNrOfHandedOutObjects());
+
+        arena.reset();
+        assertEquals(0, arena.getNrOfHandedOutObjects());
+        assertEquals(3, arena.getNrOfPooledObjects());
+        // same objects are handed out again, but fresh as new
+        Evaluation e2 = arena.evaluation(ANYWHERE);
+        assertSame(e1, e2);
+        assertEquals(0, e2.getEvalAt(0));
+        assertEquals(ANYWHERE, e2.getTarget());
+        EvaluatedMove em2 = arena.evaluatedMove(1, 2);
+        assertSame(em1, em2);
+        assertEquals(0, em2.getEvalAt(1));
+        assertFalse(em2.isCheckGiving());
+        assertEquals(2, em2.to());
+        assertEquals(2, em2.eval().getTarget());
+        List<EvaluatedMove> l2 = arena.evaluatedMoveList();
+        assertSame(l1, l2);
+        assertTrue(l2.isEmpty());
+
+        // copies
+        EvaluatedMove orig = new EvaluatedMove(3, 4);
+        orig.addEval(-30, 2);
+        EvaluatedMove copy = arena.evaluatedMoveCopyOf(orig);
+        assertNotSame(orig, copy);
+        assertEquals(orig, copy);
+        assertEquals(-30, copy.getEvalAt(2));
+        assertEquals(orig.eval(), arena.evaluationCopyOf(orig.eval()));
+    }
+
+    @Test
+    void useAfterReset_Test() {
+        boolean oldDebugSetting = ChessBoard.DEBUG_CALCARENA_USE_AFTER_RESET;
+        ChessBoard.DEBUG_CALCARENA_USE_AFTER_RESET = true;
+        try {
+            CalcArena arena = new CalcArena();
+            Evaluation e = arena.evaluation(10);
+            EvaluatedMove em = arena.evaluatedMove(8, 16);
+            e.addEval(5, 0);
+            arena.reset();
+            assertThrows(IllegalStateException.class, () -> e.getEvalAt(0));
+            assertThrows(IllegalStateException.class, () -> em.addEval(1, 0));
+            // nothing is recycled in debug mode
+            assertNotSame(e, arena.evaluation(10));
+        } finally {
+            ChessBoard.DEBUG_CALCARENA_USE_AFTER_RESET = oldDebugSetting;
+        }
+    }
+}
@@ -22,10 +22,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static de.ensel.tideeval.ChessBasics.*;
 import static de.ensel.tideeval.ChessBoard.*;
@@ -429,6 +432,233 @@ class ChessBoardTest {
 
 
 
+    @Test
+    void kingPinMap_Test() {
+        ChessBoard board = new ChessBoard("TestBoard", "4r1k1/8/8/8/8/8/4B3/4K3 w - - 0 1");
+        ChessPiece bishop = board.getPieceAt(coordinateString2Pos("e2"));
+        assertTrue(board.isPiecePinnedToPos(bishop, coordinateString2Pos("e1")));
+        assertFalse(board.moveIsNotBlockedByKingPin(bishop, coordinateString2Pos("d3")));
+        board = new ChessBoard("TestBoard", "4r1k1/8/8/8/8/8/4R3/4K3 w - - 0 1");
+        ChessPiece rook = board.getPieceAt(coordinateString2Pos("e2"));
+        assertTrue(board.moveIsNotBlockedByKingPin(rook, coordinateString2Pos("e5")));
+        assertTrue(board.moveIsNotBlockedByKingPin(rook, coordinateString2Pos("e8")));
+        assertFalse(board.moveIsNotBlockedByKingPin(rook, coordinateString2Pos("d2")));
+        // after moving the king out of the pin, the rook is free
+        board.doMove("e1d1");
+        board.doMove("g8h8");
+        rook = board.getPieceAt(coordinateString2Pos("e2"));
+        assertFalse(board.isPiecePinnedToPos(rook, coordinateString2Pos("d1")));
+        assertTrue(board.moveIsNotBlockedByKingPin(rook, coordinateString2Pos("d2")));
+    }
+
+    @Test
+    void parallelMoveReevaluation_Test() {
+        String[] fens = {
+                FENPOS_STARTPOS,
+                "r2q1rk1/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2Q1RK1 w - - 6 8",
+                "r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/3P1N2/PPP2PPP/RNBQK2R b KQkq - 0 5" };
+        for (String fen : fens) {
+            ChessBoard serialBoard = new ChessBoard("serial", fen, false);
+            String serialMove = serialBoard.getMove();
+            ChessBoard parallelBoard = new ChessBoard("parallel", fen, true);
+            assertEquals(serialMove, parallelBoard.getMove());
+            assertEquals(serialBoard.getBestMove().toString(), parallelBoard.getBestMove().toString());
+            // a copy keeps the setting
+            assertFalse(serialBoard.copy().isParallelMoveReevaluation());
+        }
+    }
+
+    @Test
+    void pruneHopelessRestMoves_Test() {
+        String[] fens = {
+                "r2q1rk1/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2Q1RK1 w - - 6 8",
+                "r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/3P1N2/PPP2PPP/RNBQK2R b KQkq - 0 5",
+                "r4rk1/1b1nbppp/1pq1pn2/p1p5/3P1B2/P1NQ1NP1/1P2PPBP/R2R2K1 w - - 4 16" };
+        boolean wasPruning = PRUNE_HOPELESS_REST_MOVES;
+        long skipped = 0;
+        long parallelSkipped = 0;
+        try {
+            for (String fen : fens) {
+                PRUNE_HOPELESS_REST_MOVES = false;
+                ChessBoard fullBoard = new ChessBoard("full", fen);
+                String fullMove = fullBoard.getMove();
+                assertEquals(0, fullBoard.getNrOfSkippedRestMoves());
+                PRUNE_HOPELESS_REST_MOVES = true;
+                ChessBoard prunedBoard = new ChessBoard("pruned", fen);
+                assertEquals(fullMove, prunedBoard.getMove());
+                assertEquals(fullBoard.getBestMove().toString(), prunedBoard.getBestMove().toString());
+                assertEquals(fullBoard.getNrOfReevaluatedRestMoves(),
+                        prunedBoard.getNrOfReevaluatedRestMoves() + prunedBoard.getNrOfSkippedRestMoves());
+                skipped += prunedBoard.getNrOfSkippedRestMoves();
+                // each move of a chunk of the parallel reevaluation can be skipped, too
+                ChessBoard parallelBoard = new ChessBoard("pruned parallel", fen, true);
+                assertEquals(fullMove, parallelBoard.getMove());
+                parallelSkipped += parallelBoard.getNrOfSkippedRestMoves();
+            }
+        } finally {
+            PRUNE_HOPELESS_REST_MOVES = wasPruning;
+        }
+        assertTrue(skipped > 0);
+        assertTrue(parallelSkipped > 0);
+    }
+
+    @Test
+    void boardEvaluationMemo_Test() {
+        ChessBoard board = new ChessBoard("TestBoard", "4k3/8/8/3p4/4P3/8/8/4K3 w - - 0 1");
+        int eval4 = board.boardEvaluation(4);
+        assertEquals(0, board.boardEvaluation(1));
+        assertEquals(eval4, board.boardEvaluation(4));
+        // the memo must not survive a move
+        assertTrue(board.doMove("e4d5"));
+        assertEquals(positivePieceBaseValue(PAWN), board.boardEvaluation(1));
+        assertTrue(board.doMove("e8d7"));
+        assertTrue(board.doMove("d5d6"));
+        assertTrue(board.doMove("d7d6"));
+        assertEquals(0, board.boardEvaluation(1));
+    }
+
+    @Test
+    void undoMove_Test() {
+        String[][] fensAndMoves = {
+                { FENPOS_STARTPOS, "e2e4" },
+                { "r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 3", "e5d4" },    // capture
+                { "r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/3P1N2/PPP2PPP/RNBQK2R w KQkq - 0 5", "e1g1" }, // castling
+                { "4k3/1P6/8/8/8/8/8/4K3 w - - 0 1", "b7b8q" },                                       // promotion
+                { "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 2", "e5d6" } };                                   // en passant
+        for (String[] fenAndMove : fensAndMoves) {
+            ChessBoard board = new ChessBoard("TestBoard", fenAndMove[0]);
+            String fen = board.getBoardFEN();
+            long hash = board.getBoardHash();
+            int eval1 = board.boardEvaluation(1);
+            assertFalse(board.undoMove());
+            assertTrue(board.doMove(fenAndMove[1]));
+            assertEquals(1, board.getNrOfUndoableMoves());
+            assertTrue(board.undoMove());
+            assertEquals(0, board.getNrOfUndoableMoves());
+            assertEquals(fen, board.getBoardFEN());
+            assertEquals(hash, board.getBoardHash());
+            assertEquals(eval1, board.boardEvaluation(1));
+            // the board is fully usable again
+            assertTrue(board.doMove(fenAndMove[1]));
+            ChessBoard moved = new ChessBoard("MovedBoard", fenAndMove[0] + " " + fenAndMove[1]);
+            assertEquals(moved.getBoardFEN(), board.getBoardFEN());
+        }
+    }
+
+    @Test
+    void undoMove_hashHistory_Test() {
+        // knights back and forth: the history grows with each move and is cut back by each undo
+        ChessBoard board = new ChessBoard("TestBoard", FENPOS_STARTPOS + " g1f3 g8f6 f3g1 f6g8");
+        String before = board.getPositionCacheDescription();
+        assertTrue(board.doMove("g1f3"));
+        assertEquals(1, board.getRepetitions());
+        assertTrue(board.doMove("e7e5"));     // irreversible: the history starts anew
+        assertTrue(board.undoMove());
+        assertEquals(1, board.getRepetitions());
+        assertTrue(board.undoMove());
+        assertEquals(before, board.getPositionCacheDescription());
+        assertTrue(board.doMove("g1f3"));
+        assertEquals(1, board.getRepetitions());
+    }
+
+    @Test
+    void updateBoardFromFEN_takeBack_Test() {
+        ChessBoard board = new ChessBoard("TestBoard", FENPOS_STARTPOS + " e2e4 e7e5 g1f3");
+        assertEquals(3, board.getNrOfUndoableMoves());
+        assertTrue(board.updateBoardFromFEN(FENPOS_STARTPOS + " e2e4"));
+        assertEquals(1, board.getNrOfUndoableMoves());
+        assertEquals(new ChessBoard("CmpBoard", FENPOS_STARTPOS + " e2e4").getBoardFEN(), board.getBoardFEN());
+        assertTrue(board.updateBoardFromFEN(FENPOS_STARTPOS + " e2e4 c7c5"));
+        assertEquals(new ChessBoard("CmpBoard", FENPOS_STARTPOS + " e2e4 c7c5").getBoardFEN(), board.getBoardFEN());
+    }
+
+    @Test
+    void copy_Test() {
+        String[][] fensAndMoves = {
+                { FENPOS_STARTPOS, "e2e4" },
+                { "r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 3", "e5d4" },    // capture
+                { "r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/3P1N2/PPP2PPP/RNBQK2R w KQkq - 0 5", "e1g1" }, // castling
+                { "4k3/1P6/8/8/8/8/8/4K3 w - - 0 1", "b7b8q" },                                       // promotion
+                { "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 2", "e5d6" } };                                   // en passant
+        for (String[] fenAndMove : fensAndMoves) {
+            ChessBoard board = new ChessBoard("TestBoard", fenAndMove[0]);
+            String fen = board.getBoardFEN();
+            String bestMove = board.getMove();
+            int eval = board.boardEvaluation();
+            ChessBoard copy = board.copy();
+            assertEquals(fen, copy.getBoardFEN());
+            assertEquals(board.getBoardHash(), copy.getBoardHash());
+            assertEquals(bestMove, copy.getMove());
+            assertEquals(eval, copy.boardEvaluation());
+            // moving on the copy leaves the original untouched
+            assertTrue(copy.doMove(fenAndMove[1]));
+            assertEquals(fen, board.getBoardFEN());
+            assertEquals(bestMove, board.getMove());
+            assertEquals(eval, board.boardEvaluation());
+            // and the copy continues exactly like the original would
+            assertTrue(board.doMove(fenAndMove[1]));
+            assertEquals(board.getBoardFEN(), copy.getBoardFEN());
+            assertEquals(board.getMove(), copy.getMove());
+            assertEquals(board.boardEvaluation(), copy.boardEvaluation());
+        }
+    }
+
+    @Test
+    void getBestMoves_Test() {
+        ChessBoard board = new ChessBoard("TestBoard", FENPOS_STARTPOS + " e2e4 e7e5");
+        List<EvaluatedMove> bestMoves = board.getBestMoves(NR_OF_RANKED_MOVES);
+        assertTrue(bestMoves.size() > 1 && bestMoves.size() <= NR_OF_RANKED_MOVES);
+        assertEquals(board.getMove(), new Move(bestMoves.get(0)).toString());
+        assertEquals(board.boardEvaluation(), board.boardEvaluationWithMove(bestMoves.get(0)));
+        assertEquals(bestMoves.subList(0, 2), board.getBestMoves(2));
+    }
+
+    @Test
+    void analyseProgressively_Test() {
+        String fen = "r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 3";
+        ChessBoard board = new ChessBoard("TestBoard", fen);
+        List<Integer> levels = new ArrayList<>();
+        ChessBoard analysed = ChessBoard.analyseProgressively("Analysis", fen, (level, provisionalBoard) -> {
+            levels.add(level);
+            assertNotEquals("-", provisionalBoard.getMove());
+            return true;
+        });
+        assertNotNull(analysed);
+        assertEquals(IntStream.rangeClosed(2, MAX_INTERESTING_NROF_HOPS).boxed().toList(), levels);
+        // finally the same as usual
+        assertEquals(board.getMove(), analysed.getMove());
+        assertEquals(board.boardEvaluation(), analysed.boardEvaluation());
+        // stopped early
+        levels.clear();
+        assertNull(ChessBoard.analyseProgressively("Analysis", fen, (level, provisionalBoard) -> {
+            levels.add(level);
+            return level < 3;
+        }));
+        assertEquals(List.of(2, 3), levels);
+    }
+
+    @Test
+    void getPredictedReplies_Test() {
+        String[] fens = {
+                FENPOS_STARTPOS,
+                "r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 3",
+                "4r1k1/5ppp/8/8/8/8/5PPP/4RBK1 w - - 0 1",
+                "r1bqk2r/pppp1ppp/2n2n2/2b1p3/2B1P3/3P1N2/PPP2PPP/RNBQK2R w KQkq - 0 5" };
+        for (String fen : fens) {
+            ChessBoard board = new ChessBoard("TestBoard", fen);
+            Move myMove = new Move(board.getMove());
+            List<Move> replies = board.getPredictedReplies(myMove, 3);
+            assertFalse(replies.isEmpty());
+            assertTrue(replies.size() <= 3);
+            // every reply can really be played after my move
+            for (Move reply : replies) {
+                ChessBoard afterMyMove = board.copy();
+                assertTrue(afterMyMove.doMove(myMove.toString()));
+                assertTrue(afterMyMove.doMove(reply.toString()), "reply " + reply + " to " + myMove + " in " + fen);
+            }
+        }
+    }
+
     @Test
     void chessBoard_VirtualPieceOnSquare_getShortestPredecessors_Test1() {
         ChessBoard board = new ChessBoard("TestBoard", "r4rk1/1b1nbppp/1pq1pn2/p1p5/3P1B2/P1NQ1NP1/1P2PPBP/R2R2K1 w - - 4 16");
@@ -0,0 +1,73 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+
+import static de.ensel.tideeval.ChessBasics.NR_SQUARES;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClashResultCacheTest {
+
+    @Test
+    void hitsAndEviction_Test() {
+        ClashResultCache cache = new ClashResultCache(2);
+        ClashResultCache.Signature s1 = new ClashResultCache.Signature(new int[]{ 800, 1, 100 });
+        ClashResultCache.Signature s2 = new ClashResultCache.Signature(new int[]{ 800, 1, 300 });
+        ClashResultCache.Signature s3 = new ClashResultCache.Signature(new int[]{ 800, 0, 300 });
+        assertNull(cache.get(s1));
+        cache.put(s1, -100);
+        cache.put(s2, 0);
+        assertEquals(-100, (int) cache.get(new ClashResultCache.Signature(new int[]{ 800, 1, 100 })));
+        // s1 was used last, so s2 is dropped
+        cache.put(s3, 50);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(s2));
+        assertEquals(50, (int) cache.get(s3));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(50, cache.getHitRatePercent());
+    }
+
+    @Test
+    void cachedEqualsUncached_Test() {
+        String[] fens = {
+                "r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 3",
+                "r2q1rk1/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2Q1RK1 w - - 6 8",
+                "8/5pk1/6p1/3R4/1r5P/6P1/5PK1/8 b - - 3 41" };
+        boolean wasUsed = ChessBoard.USE_CLASH_RESULT_CACHE;
+        try {
+            for (String fen : fens) {
+                ChessBoard.USE_CLASH_RESULT_CACHE = false;
+                ChessBoard uncached = new ChessBoard("uncached", fen);
+                ChessBoard.USE_CLASH_RESULT_CACHE = true;
+                ChessBoard cached = new ChessBoard("cached", fen);
+                for (int pos = 0; pos < NR_SQUARES; pos++)
+                    assertEquals(uncached.getBoardSquare(pos).clashEval(),
+                            cached.getBoardSquare(pos).clashEval(), "clash on " + pos + " in " + fen);
+                assertEquals(uncached.boardEvaluation(4), cached.boardEvaluation(4));
+                assertEquals(uncached.getMove(), cached.getMove());
+            }
+        } finally {
+            ChessBoard.USE_CLASH_RESULT_CACHE = wasUsed;
+        }
+        assertTrue(Square.clashResultCache().getHits() > 0);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static de.ensel.tideeval.ChessBoard.EVAL_INSIGHT_LEVELS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvalRegressionRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shardedRunEqualsSequential_Test() throws IOException, InterruptedException {
+        Path file = Files.writeString(tempDir.resolve("games.cts"),
+                  "1. d4 0.0 1... e6 0.21 2. c4 0.13 2... c6 0.48 3. e4 0.36 3... Nf6? 1.37 4. e5 0.94 4... Ne4 1.36 "
+                + "5. Bf4? 0.0 5... Qa5+?! 0.99 6. Nd2 0.61 6... Bb4? 1.8 7. Nf3 1.82 7... O-O? 2.93 { } 1-0\n"
+                + "1. e4 0.24 1... c5 0.32 2. Nf3 0.0 2... d6 0.44 3. d4 0.3 3... cxd4 0.3 4. Nxd4 0.33 4... Nf6 0.3 "
+                + "5. Nc3 0.3 5... a6 0.3 6. Be2 0.2 6... e5 0.3 7. Nb3 0.2 7... Be7 0.3\n");
+
+        // sequentially on one thread
+        EvalRegressionRunner.EvalStatistics expected = new EvalRegressionRunner.EvalStatistics();
+        try (PgnGameReader reader = new PgnGameReader(file)) {
+            while (reader.hasNext())
+                EvalRegressionRunner.evaluateGame(reader.next(), expected);
+        }
+        assertEquals(8, expected.nrOfPositions);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        EvalRegressionRunner.EvalStatistics result = new EvalRegressionRunner(2, new PrintStream(output))
+                .run(List.of(file));
+        assertEquals(expected.nrOfPositions, result.nrOfPositions);
+        for (int i = 0; i < EVAL_INSIGHT_LEVELS; i++) {
+            assertEquals(expected.evalDeltaSum[i], result.evalDeltaSum[i]);
+            assertEquals(expected.countEvalSame[i], result.countEvalSame[i]);
+            assertEquals(expected.countEvalWrongTendency[i], result.countEvalWrongTendency[i]);
+            assertEquals(expected.sumEvalRightTendency[i], result.sumEvalRightTendency[i]);
+        }
+        assertTrue(output.toString().contains("Finished test of 8 positions"));
+    }
+}
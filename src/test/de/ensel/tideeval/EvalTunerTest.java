@@ -0,0 +1,80 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static de.ensel.tideeval.ChessBoard.NR_OF_EVAL_TERMS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvalTunerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void extract_Test() throws IOException, InterruptedException {
+        Path games = Files.writeString(tempDir.resolve("games.pgn"),
+              "[Event \"Test\"]\n\n1. e4 { [%eval 0.3] } d5 { [%eval 0.4] } 2. exd5 { [%eval 0.2] } "
+            + "Qxd5 { [%eval 0.35] } 3. Nc3 1-0\n\n");
+        Path corpusFile = tempDir.resolve("games.tcp");
+        PositionCorpus.convertGames(games, corpusFile);
+        EvalTuner.Features f;
+        try (PositionCorpus corpus = new PositionCorpus(corpusFile)) {
+            f = EvalTuner.extract(corpus, 2);
+        }
+        // the position after 3. Nc3 has no reference eval
+        assertEquals(4, f.size());
+        assertArrayEquals(new int[] { 30, 40, 20, 35 }, f.targets);
+        assertEquals(0, f.terms[0]);                          // piece values after 1. e4
+        assertTrue(f.terms[2 * NR_OF_EVAL_TERMS] > 0);        // white is a pawn up after 2. exd5
+        // the cached matrix reads back the same
+        Path featureFile = tempDir.resolve("features.ttf");
+        f.write(featureFile);
+        EvalTuner.Features read = EvalTuner.Features.read(featureFile);
+        assertEquals(NR_OF_EVAL_TERMS, read.nrOfTerms);
+        assertArrayEquals(f.targets, read.targets);
+        assertArrayEquals(f.terms, read.terms);
+    }
+
+    @Test
+    void tune_Test() throws InterruptedException {
+        // reference evals made from known weights: piece values + half of the "max.clashes" term
+        final int n = 2000;
+        Random random = new Random(42);
+        int[] targets = new int[n];
+        int[] terms = new int[n * NR_OF_EVAL_TERMS];
+        for (int i = 0; i < n; i++) {
+            for (int t = 0; t < NR_OF_EVAL_TERMS; t++)
+                terms[i * NR_OF_EVAL_TERMS + t] = random.nextInt(601) - 300;
+            targets[i] = terms[i * NR_OF_EVAL_TERMS] + terms[i * NR_OF_EVAL_TERMS + 2] / 2;
+        }
+        EvalTuner tuner = new EvalTuner(new EvalTuner.Features(NR_OF_EVAL_TERMS, targets, terms), 2);
+        double[] w = tuner.tune(EvalTuner.currentWeights(), 100, null);
+        assertEquals(1.0, w[0], 0.05);
+        assertEquals(0.5, w[2], 0.05);
+        assertEquals(0.0, w[7], 0.05);
+    }
+}
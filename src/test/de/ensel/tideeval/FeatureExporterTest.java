@@ -0,0 +1,87 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static de.ensel.tideeval.ChessBoard.EVAL_INSIGHT_LEVELS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FeatureExporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void export_Test() throws IOException, InterruptedException {
+        Path csv = Files.writeString(tempDir.resolve("puzzles.csv"),
+              "001xl,8/4R1k1/p5pp/3B4/5q2/8/5P1P/6K1 b - - 5 40,g7f6 e7f7 f6e5 f7f4,1212,78,94,10421,advantage,,\n"
+            + "002IE,r3brk1/5pp1/p1nqpn1p/P2pN3/2pP4/2P1PN2/5PPP/RB1QK2R b KQ - 4 16,c6e5 d4e5 d6e7,1230,93,47,23,fork,,\n"
+            + "0048h,4r3/p5k1/2p2R1p/2Pp4/1P1pr1P1/P6P/8/3R3K w - - 1 35,f6c6 e4e1 d1e1,1240,90,91,38,long,,\n");
+        Path corpusFile = tempDir.resolve("puzzles.tcp");
+        PositionCorpus.convertPuzzles(csv, corpusFile);
+        Path features = tempDir.resolve("features.fea");
+        Path uncompressedFeatures = tempDir.resolve("uncompressed.fea");
+        try (PositionCorpus corpus = new PositionCorpus(corpusFile)) {
+            assertEquals(3, new FeatureExporter(2, 2, true, 1).export(corpus, features));
+            new FeatureExporter(1, 3, false, 0).export(corpus, uncompressedFeatures);
+
+            try (FeatureExporter.Reader reader = new FeatureExporter.Reader(features);
+                 FeatureExporter.Reader uncompressed = new FeatureExporter.Reader(uncompressedFeatures)) {
+                assertEquals(2, reader.getNrOfBlocks());
+                assertEquals(1, uncompressed.getNrOfBlocks());
+                assertTrue(uncompressed.getColumns().size() < reader.getColumns().size());
+                int i = 0;
+                for (int b = 0; b < reader.getNrOfBlocks(); b++) {
+                    FeatureExporter.Reader.Block block = reader.readBlock(b);
+                    FeatureExporter.Reader.Block uBlock = uncompressed.readBlock(0);
+                    for (int p = 0; p < block.getNrOfPositions(); p++, i++) {
+                        // same as on a new board
+                        PositionCorpus.Position pos = corpus.get(i);
+                        ChessBoard board = new ChessBoard("Cmp", pos.getFEN());
+                        board.doMove(pos.getPreMove().toString());
+                        for (int l = 0; l < EVAL_INSIGHT_LEVELS; l++)
+                            assertEquals(board.boardEvaluation(l), block.get("eval" + l, p, 0));
+                        assertEquals(board.getMove(),
+                                     PositionCorpus.decodeMove((short) block.get("bestMove", p, 0)).toString());
+                        assertEquals(pos.getExpectedMove(),
+                                     PositionCorpus.decodeMove((short) block.get("expectedMove", p, 0)));
+                        assertEquals(isWhite(board.getTurnCol()) ? 0 : 1, block.get("turn", p, 0));
+                        for (int sq = 0; sq < NR_SQUARES; sq++)
+                            assertEquals(board.getPieceTypeAt(sq), block.get("sqPiece", p, sq));
+                        ChessPiece king = board.getPiece(board.getKingId(WHITE));
+                        assertEquals(king.getPos(), block.get("pcPos", p, king.getPieceID()));
+                        // the king is where it is
+                        assertEquals(0, block.get("vpDistance", p, king.getPieceID() * NR_SQUARES + king.getPos()));
+                        // the uncompressed file without vPces has the same values
+                        assertEquals(block.get("eval2", p, 0), uBlock.get("eval2", i, 0));
+                        assertEquals(block.get("sqClashEval", p, 27), uBlock.get("sqClashEval", i, 27));
+                    }
+                }
+                assertEquals(3, i);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static de.ensel.tideeval.ChessBasics.FENPOS_STARTPOS;
+import static de.ensel.tideeval.ChessBoard.EVAL_INSIGHT_LEVELS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameAnnotatorTest {
+
+    private static final String GAMES =
+              "[Event \"Test\"]\n[Result \"1-0\"]\n\n1. e4 e5 2. Nf3 Nc6 1-0\n\n"
+            + "[Event \"Test2\"]\n"
+            + "[FEN \"r1bqkbnr/pppp1ppp/2n5/4p3/3PP3/5N2/PPP2PPP/RNBQKB1R b KQkq - 0 3\"]\n[Result \"*\"]\n\n"
+            + "3... exd4 4. Nxd4 *\n\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void annotatePgn_Test() throws IOException, InterruptedException {
+        Path games = Files.writeString(tempDir.resolve("games.pgn"), GAMES);
+        StringWriter out = new StringWriter();
+        assertEquals(2, new GameAnnotator(2, 2, GameAnnotator.Format.PGN).annotate(games, out));
+        // the annotated games can be read again, with the evals of the board after each move
+        Path annotated = Files.writeString(tempDir.resolve("annotated.pgn"), out.toString());
+        try (PgnGameReader reader = new PgnGameReader(annotated)) {
+            PgnGameReader.Game g = reader.next();
+            assertEquals("Test", g.getTag("Event"));
+            assertEquals(4, g.getNrOfMoves());
+            // like the annotator: move by move from the start position
+            ChessBoard board = new ChessBoard("Cmp", FENPOS_STARTPOS);
+            board.doMove("e4");
+            board.doMove("e5");
+            assertEquals(board.boardEvaluation(), g.getEval(1));
+            g = reader.next();
+            assertEquals("Nxd4", g.getMove(1));
+            assertFalse(reader.hasNext());
+        }
+        assertTrue(out.toString().contains("3... exd4 { [%eval "));
+    }
+
+    @Test
+    void annotateTsv_Test() throws IOException, InterruptedException {
+        Path games = Files.writeString(tempDir.resolve("games.pgn"), GAMES);
+        StringWriter out = new StringWriter();
+        new GameAnnotator(1, 1, GameAnnotator.Format.TSV).annotate(games, out);
+        String[] lines = out.toString().split("\n");
+        assertEquals(1 + 4 + 2, lines.length);
+        String[] firstPly = lines[1].split("\t");
+        assertEquals(5 + EVAL_INSIGHT_LEVELS, firstPly.length);
+        assertEquals("e4", firstPly[2]);
+        assertEquals(new ChessBoard("Cmp", FENPOS_STARTPOS).getMove(), firstPly[3]);
+        assertTrue(lines[6].startsWith("2\t2\tNxd4\t"));
+    }
+}
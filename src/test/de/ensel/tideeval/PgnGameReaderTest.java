@@ -0,0 +1,138 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PgnGameReaderTest {
+
+    private static final String PGN_GAME =
+              "[Event \"Rated Blitz game\"]\n"
+            + "[White \"Alice\"]\n"
+            + "[Black \"Bob\"]\n"
+            + "[Result \"0-1\"]\n"
+            + "\n"
+            + "1. e4 { [%eval 0.24] } 1... c5 { [%eval 0.32] [%clk 0:03:00] } 2.Nf3 $1 Nc6?! (2... d6 { a line } 3. d4)\n"
+            + "3. Bb5 { [%eval #-3] } Qa5+ 0-1\n"
+            + "\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readPgn_Test() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("games.pgn"), PGN_GAME + PGN_GAME.replace("Alice", "Carol"));
+        try (PgnGameReader reader = new PgnGameReader(file)) {
+            PgnGameReader.Game g = reader.next();
+            assertEquals("Alice", g.getTag("White"));
+            assertEquals("0-1", g.getTag("Result"));
+            assertEquals(0, g.getOffset());
+            assertEquals(6, g.getNrOfMoves());
+            String[] moves = { "e4", "c5", "Nf3", "Nc6", "Bb5", "Qa5+" };
+            for (int i = 0; i < moves.length; i++)
+                assertEquals(moves[i], g.getMove(i));
+            assertEquals(24, g.getEval(0));
+            assertEquals(32, g.getEval(1));
+            assertEquals(NOT_EVALUATED, g.getEval(2));
+            assertEquals(WHITE_IS_CHECKMATE + 3 * CHECK_IN_N_DELTA, g.getEval(4));
+            g = reader.next();
+            assertEquals("Carol", g.getTag("White"));
+            assertEquals(PGN_GAME.length(), g.getOffset());
+            assertEquals(6, g.getNrOfMoves());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    void readCts_Test() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("games.cts"),
+                                      "1. e4 0.24 1... c5 0.32 2. Nf3 0.0 2... Nf6? -0.44 { } 0-1\n"
+                                      + "1. d4 0.0 1... e6 #2\n");
+        try (PgnGameReader reader = new PgnGameReader(file)) {
+            PgnGameReader.Game g = reader.next();
+            assertNull(g.getTag("White"));
+            assertEquals(4, g.getNrOfMoves());
+            assertEquals("Nf6", g.getMove(3));
+            assertEquals(-44, g.getEval(3));
+            g = reader.next();
+            assertEquals("e6", g.getMove(1));
+            assertEquals(BLACK_IS_CHECKMATE - 2 * CHECK_IN_N_DELTA, g.getEval(1));
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    void splitCtsAtGameBoundaries_Test() throws IOException {
+        StringBuilder games = new StringBuilder();
+        for (int i = 0; i < 50; i++)
+            games.append("1. e4 0.24 1... c5 0.").append(10 + i).append(" 2. Nf3 0.0 2... Nf6? -0.44 { } 0-1\n");
+        Path file = Files.writeString(tempDir.resolve("games.cts"), games);
+        long[] offsets = PgnGameReader.splitAtGameBoundaries(file, 4);
+        int n = 0;
+        for (int part = 0; part < 4; part++) {
+            // later parts and tiny windows start behind the first window
+            try (PgnGameReader reader = new PgnGameReader(file, offsets[part], offsets[part + 1], 100)) {
+                while (reader.hasNext()) {
+                    PgnGameReader.Game g = reader.next();
+                    assertTrue(g.getTags().isEmpty());
+                    assertNull(g.getTag("FEN"));
+                    assertEquals(10 + n, g.getEval(1));
+                    n++;
+                }
+            }
+        }
+        assertEquals(50, n);
+    }
+
+    @Test
+    void splitAtGameBoundaries_Test() throws IOException {
+        StringBuilder games = new StringBuilder();
+        for (int i = 0; i < 50; i++)
+            games.append(PGN_GAME.replace("Alice", "Player" + i));
+        Path file = Files.writeString(tempDir.resolve("games.pgn"), games);
+        for (int nrOfParts : new int[] { 1, 2, 7, 100 }) {
+            long[] offsets = PgnGameReader.splitAtGameBoundaries(file, nrOfParts);
+            assertEquals(nrOfParts + 1, offsets.length);
+            List<String> white = new ArrayList<>();
+            for (int part = 0; part < nrOfParts; part++) {
+                // with tiny windows, to also cover the remapping
+                try (PgnGameReader reader = new PgnGameReader(file, offsets[part], offsets[part + 1], 100)) {
+                    while (reader.hasNext()) {
+                        PgnGameReader.Game g = reader.next();
+                        white.add(g.getTag("White"));
+                        assertEquals("Qa5+", g.getMove(5));
+                    }
+                }
+            }
+            assertEquals(50, white.size());
+            for (int i = 0; i < 50; i++)
+                assertEquals("Player" + i, white.get(i));
+        }
+    }
+}
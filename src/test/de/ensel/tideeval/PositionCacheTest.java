@@ -0,0 +1,84 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+
+import static de.ensel.tideeval.ChessBasics.NR_SQUARES;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionCacheTest {
+
+    private static PositionCache.Entry entry(long key, String position, int nrOfLegalMoves) {
+        return new PositionCache.Entry(key, position, null, new ArrayList<>(), new ArrayList<>(),
+                                       nrOfLegalMoves, nrOfLegalMoves);
+    }
+
+    @Test
+    void clockEviction_Test() {
+        PositionCache cache = new PositionCache(2);
+        cache.put(entry(1L, "p1", 10));
+        cache.put(entry(2L, "p2", 20));
+        assertEquals(10, cache.get(1L, "p1").nrOfLegalMovesWhite);
+        // p1 got its second chance by the hit, so p2 is replaced
+        cache.put(entry(3L, "p3", 30));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(2L, "p2"));
+        assertEquals(30, cache.get(3L, "p3").nrOfLegalMovesWhite);
+        assertEquals(10, cache.get(1L, "p1").nrOfLegalMovesWhite);
+        // same key, but other position -> no result
+        assertNull(cache.get(3L, "other"));
+        assertEquals(1, cache.getCollisions());
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void cachedEqualsCalculated_Test() {
+        String fen = "r2q1rk1/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2Q1RK1 w - - 6 8";
+        ChessBoard calculated = new ChessBoard("calculated", fen);
+        String move = calculated.getMove();
+        PositionCache cache = new PositionCache(16);
+        // the cache is used from the next calculation on, i.e. after the start position
+        ChessBoard first = new ChessBoard("first", ChessBasics.FENPOS_STARTPOS);
+        first.setPositionCache(cache);
+        first.updateBoardFromFEN(fen);
+        assertEquals(move, first.getMove());
+        assertFalse(first.isMoveSelectionFromCache());
+        ChessBoard second = new ChessBoard("second", ChessBasics.FENPOS_STARTPOS);
+        second.setPositionCache(cache);
+        second.updateBoardFromFEN(fen);
+        assertEquals(move, second.getMove());
+        assertEquals(1, cache.getHits());
+        assertTrue(second.isMoveSelectionFromCache());
+        assertEquals(calculated.boardEvaluation(), second.boardEvaluation());
+        assertEquals(calculated.nrOfLegalMoves(ChessBasics.WHITE), second.nrOfLegalMoves(ChessBasics.WHITE));
+        // the pieces' moves are only there after a recalculation
+        second.recalcMoveSelectionWithoutCache();
+        assertFalse(second.isMoveSelectionFromCache());
+        assertEquals(move, second.getMove());
+        assertEquals(1, cache.getHits());
+        // a different history (here: none) or other engine parameters make it another position
+        assertNotEquals(ChessBoard.positionCacheKey(second.getPositionCacheDescription()),
+                ChessBoard.positionCacheKey(second.getPositionCacheDescription() + "|1"));
+    }
+}
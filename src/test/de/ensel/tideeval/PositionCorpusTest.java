@@ -0,0 +1,101 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static de.ensel.tideeval.ChessBasics.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionCorpusTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void convertPuzzles_Test() throws IOException {
+        Path csv = Files.writeString(tempDir.resolve("puzzles.csv"),
+              "PuzzleId,FEN,Moves,Rating,RatingDeviation,Popularity,NbPlays,Themes,GameUrl,OpeningTags\n"
+            + "001xl,8/4R1k1/p5pp/3B4/5q2/8/5P1P/6K1 b - - 5 40,g7f6 e7f7 f6e5 f7f4,1212,78,94,10421,advantage,,\n"
+            + "002IE,r3brk1/5pp1/p1nqpn1p/P2pN3/2pP4/2P1PN2/5PPP/RB1QK2R b KQ - 4 16,c6e5 d4e5 d6e7,1230,93,47,23,fork,,\n"
+            + "00xxx,8/P7/8/8/8/8/8/k1K5 w - - 0 1,a7a8n,999,93,47,23,promotion,,\n");
+        Path corpusFile = tempDir.resolve("corpus.tcp");
+        assertEquals(3, PositionCorpus.convertPuzzles(csv, corpusFile));
+        try (PositionCorpus corpus = new PositionCorpus(corpusFile)) {
+            assertEquals(3, corpus.size());
+            assertEquals(3, corpus.getNrOfGames());
+            PositionCorpus.Position p = corpus.get(1);
+            assertEquals("r3brk1/5pp1/p1nqpn1p/P2pN3/2pP4/2P1PN2/5PPP/RB1QK2R b KQ - 4 16", p.getFEN());
+            assertEquals(BLACK, p.getTurnCol());
+            assertEquals(ROOK_BLACK, p.getPieceTypeAt(coordinateString2Pos("a8")));
+            assertEquals("c6e5", p.getPreMove().toString());
+            assertEquals("d4e5", p.getExpectedMove().toString());
+            assertEquals(NOT_EVALUATED, p.getEval());
+            assertEquals(1230, p.getRating());
+            assertEquals("002IE", p.getId());
+            p = corpus.get(2);
+            assertNull(p.getPreMove());
+            assertEquals("a7a8n", p.getExpectedMove().toString());
+        }
+    }
+
+    @Test
+    void convertGames_Test() throws IOException {
+        Path games = Files.writeString(tempDir.resolve("games.pgn"),
+              "[Event \"Test\"]\n\n1. e4 { [%eval 0.3] } d5 { [%eval 0.4] } 2. exd5 { [%eval 0.2] } "
+            + "Qxd5 { [%eval 0.35] } 3. Nc3 Qa5 4. d4 c6 5. Nf3 Bg4 6. Be2 Nd7 7. O-O O-O-O 1-0\n\n"
+            + "[Event \"Test2\"]\n[FEN \"4k3/8/8/8/3p4/8/4PK2/8 w - - 0 1\"]\n\n1. e4 dxe3 2. Kxe3?? Kd7 *\n\n");
+        Path corpusFile = tempDir.resolve("corpus.tcp");
+        assertEquals(14 + 4, PositionCorpus.convertGames(games, corpusFile));
+        // records in small windows, to also read across their borders
+        try (PositionCorpus corpus = new PositionCorpus(corpusFile, 5)) {
+            assertEquals(2, corpus.getNrOfGames());
+            assertEquals(0, corpus.getFirstPositionOfGame(0));
+            assertEquals(14, corpus.getFirstPositionOfGame(1));
+            PositionCorpus.Position p = corpus.get(0);
+            assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", p.getFEN());
+            assertEquals(30, p.getEval());
+            assertEquals("d7d5", p.getExpectedMove().toString());
+            // same position as on a ChessBoard
+            ChessBoard board = new ChessBoard("Cmp", FENPOS_STARTPOS
+                    + " moves e2e4 d7d5 e4d5 d8d5 b1c3 d5a5 d2d4 c7c6 g1f3 c8g4 f1e2 b8d7 e1g1 e8c8");
+            p = corpus.get(13);
+            for (int pos = 0; pos < NR_SQUARES; pos++)
+                assertEquals(board.getPieceTypeAt(pos), p.getPieceTypeAt(pos));
+            assertEquals("2kr1bnr/pp1npppp/2p5/q7/3P2b1/2N2N2/PPP1BPPP/R1BQ1RK1 w - - 6 8", p.getFEN());
+            assertNull(p.getExpectedMove());
+            // en passant and the last position of the second game
+            assertEquals("d4e3", corpus.get(14).getExpectedMove().toString());
+            assertEquals("0", corpus.get(13).getId());
+            assertEquals("1", corpus.get(14).getId());
+            assertEquals("8/3k4/8/8/8/4K3/8/8 w - - 1 3", corpus.get(17).getFEN());
+        }
+        int n = 0;
+        try (PositionCorpus corpus = new PositionCorpus(corpusFile)) {
+            for (PositionCorpus.Position ignored : corpus)
+                n++;
+        }
+        assertEquals(18, n);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PuzzleBatchRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void runPuzzles_Test() throws IOException, InterruptedException {
+        String puzzles = "PuzzleId,FEN,Moves,Rating,RatingDeviation,Popularity,NbPlays,Themes,GameUrl,OpeningTags\n"
+            + "001xl,8/4R1k1/p5pp/3B4/5q2/8/5P1P/6K1 b - - 5 40,g7f6 e7f7 f6e5 f7f4,1212,78,94,10421,advantage endgame,,\n"
+            + "002IE,r3brk1/5pp1/p1nqpn1p/P2pN3/2pP4/2P1PN2/5PPP/RB1QK2R b KQ - 4 16,c6e5 d4e5 d6e7 e5f6,1230,93,47,23,fork,,\n"
+            + "0048h,4r3/p5k1/2p2R1p/2Pp4/1P1pr1P1/P6P/8/3R3K w - - 1 35,f6c6 e4e1 d1e1 e8e1 h1g2 d4d3,1240,90,91,38,long,,\n";
+        StringWriter result = new StringWriter();
+        PuzzleBatchRunner runner = new PuzzleBatchRunner(2, new PrintWriter(result));
+        runner.run(new BufferedReader(new StringReader(puzzles)));
+        assertEquals(3, runner.getNrOfPuzzles());
+        List<String> lines = Arrays.asList(result.toString().trim().split("\\R"));
+        assertEquals(3, lines.size());
+        // each puzzle with the same result as a new board would have
+        for (String line : puzzles.split("\n")) {
+            String[] fields = line.split(",");
+            if (fields[1].equals("FEN"))
+                continue;
+            ChessBoard board = new ChessBoard(fields[0], fields[1]);
+            String[] moves = fields[2].split(" ");
+            board.doMove(moves[0]);
+            String expectedLine = fields[0] + "," + (board.getMove().equals(moves[1]) ? "ok" : "FAIL") + ","
+                    + board.getMove() + "," + moves[1] + "," + fields[3] + ",";
+            assertTrue(lines.stream().anyMatch(l -> l.startsWith(expectedLine)), expectedLine + " in " + lines);
+        }
+        assertEquals(lines.stream().filter(l -> l.contains(",ok,")).count(), runner.getNrOfSolved());
+        assertTrue(runner.latencyPercentile(50) <= runner.latencyPercentile(99));
+    }
+
+    @Test
+    void runCorpus_Test() throws IOException, InterruptedException {
+        Path csv = Files.writeString(tempDir.resolve("puzzles.csv"),
+              "PuzzleId,FEN,Moves,Rating,RatingDeviation,Popularity,NbPlays,Themes,GameUrl,OpeningTags\n"
+            + "001xl,8/4R1k1/p5pp/3B4/5q2/8/5P1P/6K1 b - - 5 40,g7f6 e7f7 f6e5 f7f4,1212,78,94,10421,advantage,,\n"
+            + "00xxx,8/P7/8/8/8/8/8/k1K5 w - - 0 1,a7a8q,999,93,47,23,promotion,,\n");
+        Path corpusFile = tempDir.resolve("puzzles.tcp");
+        PositionCorpus.convertPuzzles(csv, corpusFile);
+        StringWriter result = new StringWriter();
+        PuzzleBatchRunner runner = new PuzzleBatchRunner(2, new PrintWriter(result));
+        try (PositionCorpus corpus = new PositionCorpus(corpusFile)) {
+            runner.run(corpus);
+        }
+        assertEquals(2, runner.getNrOfPuzzles());
+        // reported with the puzzle ids, not the record nrs
+        List<String> lines = Arrays.asList(result.toString().trim().split("\\R"));
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("001xl,")), lines.toString());
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("00xxx,")), lines.toString());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PuzzleIndexTest {
+
+    private static final String[] PUZZLE_FILES = { "lichess_db_puzzle_230601_2k-12xx.csv",
+            "lichess_db_puzzle_230601_2k-16xx.csv", "lichess_db_puzzle_230601_410-499-NOTmateIn1.csv",
+            "lichess_db_puzzle_230601_410-499-mateIn1.csv" };
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * @return the lines of some of the puzzle test files, with header
+     */
+    private static List<String> puzzleLines() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("PuzzleId,FEN,Moves,Rating,RatingDeviation,Popularity,NbPlays,Themes,GameUrl,OpeningTags");
+        for (String name : PUZZLE_FILES)
+            try (Scanner in = new Scanner(Objects.requireNonNull(PuzzleIndexTest.class.getResourceAsStream(name)),
+                                          StandardCharsets.UTF_8)) {
+                while (in.hasNextLine())
+                    lines.add(in.nextLine());
+            }
+        return lines;
+    }
+
+    private static boolean matches(String line, int minRating, int maxRating, String theme, String excluded,
+                                   int minPopularity) {
+        String[] fields = line.split(",");
+        if (fields[1].equals("FEN"))
+            return false;
+        int rating = Integer.parseInt(fields[3]);
+        List<String> themes = Arrays.asList(fields[7].split(" "));
+        return rating >= minRating && rating <= maxRating && Integer.parseInt(fields[5]) >= minPopularity
+               && (theme == null || themes.contains(theme)) && (excluded == null || !themes.contains(excluded));
+    }
+
+    @Test
+    void select_Test() throws IOException {
+        List<String> lines = puzzleLines();
+        Path csv = Files.writeString(tempDir.resolve("puzzles.csv"), String.join("\n", lines) + "\n");
+        Path indexFile = tempDir.resolve("puzzles.idx");
+        assertEquals(lines.size() - 1, PuzzleIndex.build(csv, indexFile));
+
+        try (PuzzleIndex index = new PuzzleIndex(csv, indexFile)) {
+            assertTrue(index.getThemeNames().contains("fork"));
+            // like the hand cut files, compared to filtering all lines
+            int[] selected = index.select(1600, 1650, Set.of("fork"), Set.of(), 80);
+            StringWriter out = new StringWriter();
+            index.writePuzzles(selected, out);
+            List<String> expected = lines.stream().filter(l -> matches(l, 1600, 1650, "fork", null, 80))
+                                         .collect(Collectors.toList());
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, Arrays.asList(out.toString().split("\n")));
+            for (int e : selected)
+                assertTrue(index.getRating(e) >= 1600 && index.getRating(e) <= 1650);
+
+            selected = index.select(410, 499, Set.of(), Set.of("mateIn1"), -100);
+            assertEquals(lines.stream().filter(l -> matches(l, 410, 499, null, "mateIn1", -100)).count(),
+                         selected.length);
+            assertEquals(0, index.select(0, 4000, Set.of("noSuchTheme"), Set.of(), -100).length);
+
+            // samples
+            int[] all = index.select(0, 4000, Set.of(), Set.of(), -100);
+            assertEquals(lines.size() - 1, all.length);
+            int[] sample = PuzzleIndex.sample(all, 100, 42);
+            assertEquals(100, sample.length);
+            assertArrayEquals(sample, PuzzleIndex.sample(all, 100, 42));
+            assertEquals(100, Arrays.stream(sample).distinct().count());
+            assertTrue(lines.contains(index.getPuzzle(sample[0])));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *     TideEval - Wired New Chess Algorithm
+ *     Copyright (C) 2023 Christian Ensel
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package de.ensel.tideeval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SelfPlayMatchTest {
+
+    @Test
+    void play_Test() throws InterruptedException {
+        SelfPlayMatch.Config a = SelfPlayMatch.Config.parse("A", "");
+        SelfPlayMatch.Config b = SelfPlayMatch.Config.parse("B", "mob=6,p1=2");
+        final int mobility = ChessBoard.getEVALPARAM_CP_PER_MOBILITYSQUARE();
+        final int engineP1 = ChessBoard.engineP1();
+        SelfPlayMatch match = new SelfPlayMatch(a, b, 2);
+        match.setAdjudication(4, 800, 3);
+        // a mate in 1 for white, so each configuration wins the game where it has white
+        SelfPlayMatch.Result r = match.play(List.of("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1",
+                                                    "8/8/4k3/8/2K5/3P4/8/8 w - - 0 60"), 4, null);
+        assertEquals(4, r.getNrOfGames());
+        assertEquals(r.wins, r.losses);
+        // the parameters are restored afterwards
+        assertEquals(mobility, ChessBoard.getEVALPARAM_CP_PER_MOBILITYSQUARE());
+        assertEquals(engineP1, ChessBoard.engineP1());
+    }
+
+    @Test
+    void configParse_Test() {
+        SelfPlayMatch.Config c = SelfPlayMatch.Config.parse("X", "p1=3, hops=5");
+        assertEquals(3, c.engineP1);
+        assertEquals(5, c.nrOfHops);
+        assertEquals(ChessBoard.getEVALPARAM_CP_PER_MOBILITYSQUARE(), c.cpPerMobilitySquare);
+        assertThrows(IllegalArgumentException.class, () -> SelfPlayMatch.Config.parse("X", "depth=3"));
+    }
+
+    @Test
+    void sprt_Test() {
+        assertEquals(0.5, SelfPlayMatch.eloToScore(0), 1e-9);
+        assertEquals(100.0, SelfPlayMatch.scoreToElo(SelfPlayMatch.eloToScore(100)), 1e-9);
+        SelfPlayMatch.Result r = new SelfPlayMatch.Result();
+        r.wins = 300;
+        r.draws = 400;
+        r.losses = 200;
+        assertTrue(r.getElo() > 30 && r.getElo() < 45);
+        SelfPlayMatch match = new SelfPlayMatch(null, null, 1);
+        // clearly better than 0 elo: H1 (elo1=10) is accepted
+        assertTrue(r.llr(0, 10) > match.llrUpperBound());
+        r.wins = 200;
+        r.losses = 300;
+        assertTrue(r.llr(0, 10) < match.llrLowerBound());
+    }
+}